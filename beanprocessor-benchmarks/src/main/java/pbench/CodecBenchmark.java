@@ -0,0 +1,147 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.Position;
+import ptest.PositionJsonCodec;
+import ptest.PositionXmlCodec;
+
+/** Round trips of a Position through JAXB and the generated binary codec, and of 1,000 positions through the
+ * generated XML and JSON codecs, with a streaming JAXB read for comparison. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    static final XMLInputFactory INPUT = XMLInputFactory.newInstance();
+    static final XMLOutputFactory OUTPUT = XMLOutputFactory.newInstance();
+
+    Position position;
+    List<Position> positions;
+    Marshaller marshaller;
+    Unmarshaller unmarshaller;
+    ByteArrayOutputStream xml;
+    ByteBuffer buffer;
+    Position read;
+    String document;
+
+    @Setup
+    public void setup() throws Exception {
+        position = sample();
+        positions = new ArrayList<Position>();
+        for (int i = 0; i < 1000; i++)
+            positions.add(sample().symbol("S" + i).quantity(i));
+        JAXBContext context = JAXBContext.newInstance(Position.class);
+        marshaller = context.createMarshaller();
+        unmarshaller = context.createUnmarshaller();
+        xml = new ByteArrayOutputStream();
+        buffer = ByteBuffer.allocate(position.binarySize());
+        read = new Position();
+        document = xmlCodecWrite();
+    }
+
+    static Position sample() {
+        return new Position().account("ACC-1").symbol("IBM").quantity(1500).averagePrice(101.25).open(true)
+                .opened(new Date(1330000000000L)).tags(Arrays.asList("core", "hedge")).fills(Arrays.asList(100.5, 102.0));
+    }
+
+    @Benchmark
+    public Object jaxbRoundTrip() throws JAXBException {
+        xml.reset();
+        marshaller.marshal(position, xml);
+        return unmarshaller.unmarshal(new ByteArrayInputStream(xml.toByteArray()));
+    }
+
+    @Benchmark
+    public Position binaryRoundTrip() {
+        buffer.clear();
+        position.writeTo(buffer);
+        buffer.flip();
+        read.readFrom(buffer);
+        return read;
+    }
+
+    @Benchmark
+    public String xmlCodecWrite() throws XMLStreamException {
+        StringWriter text = new StringWriter();
+        XMLStreamWriter out = OUTPUT.createXMLStreamWriter(text);
+        PositionXmlCodec.writeAll(out, "positions", positions);
+        out.close();
+        return text.toString();
+    }
+
+    @Benchmark
+    public long xmlCodecRead() throws XMLStreamException {
+        long total = 0;
+        for (Iterator<Position> it = PositionXmlCodec.iterate(INPUT.createXMLStreamReader(new StringReader(document))); it.hasNext();)
+            total += it.next().getQuantity();
+        return total;
+    }
+
+    @Benchmark
+    public long jaxbStreamingRead() throws Exception {
+        XMLStreamReader in = INPUT.createXMLStreamReader(new StringReader(document));
+        in.nextTag();
+        in.nextTag();
+        long total = 0;
+        while (in.getEventType() == XMLStreamReader.START_ELEMENT)
+            total += unmarshaller.unmarshal(in, Position.class).getValue().getQuantity(); // leaves the reader on the next sibling
+        return total;
+    }
+
+    @Benchmark
+    public long jsonCodecRoundTrip() throws IOException {
+        StringBuilder json = new StringBuilder();
+        PositionJsonCodec.writeAll(json, positions);
+        long total = 0;
+        for (Iterator<Position> it = PositionJsonCodec.iterate(json); it.hasNext();)
+            total += it.next().getQuantity();
+        return total;
+    }
+}
@@ -0,0 +1,107 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.Feed;
+import ptest.FeedSnapshot;
+import ptest.Status;
+import ptest.TestJob;
+import ptest.Trade;
+
+/** Shared beans: atomic updates from four threads, snapshots taken while another thread writes, and the cost of
+ * MXBean counters on a setter and getter. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+
+    Status status;
+    Feed feed;
+
+    @Setup
+    public void setup() {
+        status = new Status();
+        feed = new Feed();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long atomicAdd() {
+        return status.getAndAddProcessed(1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int atomicAccumulate() {
+        return status.accumulateActive(1, Math::max);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    public FeedSnapshot snapshotReader() {
+        return feed.snapshot();
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    public Feed snapshotWriter(Counter counter) {
+        long n = ++counter.value;
+        feed.update(() -> {
+            feed.setStarted(n);
+            feed.setReceived(n);
+            feed.setRunning((n & 1) == 0);
+        });
+        return feed;
+    }
+
+    @Benchmark
+    public double countedSetAndGet(Beans beans) {
+        beans.job.setNumber(++beans.value);
+        return beans.job.getNumber();
+    }
+
+    @Benchmark
+    public double uncountedSetAndGet(Beans beans) {
+        beans.trade.setPrice(++beans.value);
+        return beans.trade.getPrice();
+    }
+
+    @State(Scope.Thread)
+    public static class Counter {
+        long value;
+    }
+
+    @State(Scope.Thread)
+    public static class Beans {
+        TestJob job = new TestJob();
+        Trade trade = new Trade();
+        int value;
+    }
+}
@@ -0,0 +1,73 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.TestJob;
+
+/** JAXB marshalling and unmarshalling of a TestJob. The context and the (single threaded) marshaller and
+ * unmarshaller are made once, as an application would. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JaxbBenchmark {
+
+    TestJob job;
+    Marshaller marshaller;
+    Unmarshaller unmarshaller;
+    String xml;
+
+    @Setup
+    public void setup() throws JAXBException {
+        job = new TestJob().title("Hello").running(true).started(new Date(0)).listOfStrings(Arrays.asList("a", "b", "c"));
+        JAXBContext context = JAXBContext.newInstance(TestJob.class);
+        marshaller = context.createMarshaller();
+        unmarshaller = context.createUnmarshaller();
+        xml = marshal();
+    }
+
+    @Benchmark
+    public String marshal() throws JAXBException {
+        StringWriter out = new StringWriter();
+        marshaller.marshal(job, out);
+        return out.toString();
+    }
+
+    @Benchmark
+    public Object unmarshal() throws JAXBException {
+        return unmarshaller.unmarshal(new StringReader(xml));
+    }
+}
@@ -0,0 +1,67 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.Trade;
+import ptest.TradePool;
+
+/** A Trade's life from acquisition to release, allocated fresh or taken from a TradePool. Run with -prof gc to
+ * compare the bytes allocated per operation. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PoolBenchmark {
+
+    TradePool pool;
+    int value;
+
+    @Setup
+    public void setup() {
+        pool = new TradePool();
+    }
+
+    @Benchmark
+    public double allocated() {
+        Trade trade = new Trade();
+        return use(trade);
+    }
+
+    @Benchmark
+    public double pooled() {
+        Trade trade = pool.acquire();
+        double result = use(trade);
+        pool.release(trade);
+        return result;
+    }
+
+    private double use(Trade trade) {
+        trade.setPrice(++value);
+        trade.setQuantity(value & 1023);
+        return trade.getPrice() * trade.getQuantity();
+    }
+}
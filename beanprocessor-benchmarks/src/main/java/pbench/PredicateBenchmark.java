@@ -0,0 +1,87 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+
+import ptest.TestJob;
+
+/** Filtering and extracting over 10,000 beans with the generated Guava predicates and functions, and
+ * the unboxed primitive extractors. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PredicateBenchmark {
+
+    List<TestJob> jobs;
+    Predicate<? super TestJob> over;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        jobs = new ArrayList<TestJob>();
+        for (int i = 0; i < 10000; i++)
+            jobs.add(new TestJob().title(i % 3 == 0 ? null : "job" + i).running(random.nextBoolean()).number(random.nextDouble()));
+        over = TestJob.NUMBER_GT(0.5);
+    }
+
+    @Benchmark
+    public int comparisonPredicate() {
+        return Iterables.size(Iterables.filter(jobs, over));
+    }
+
+    @Benchmark
+    public int booleanPredicate() {
+        return Iterables.size(Iterables.filter(jobs, TestJob.IS_RUNNING));
+    }
+
+    @Benchmark
+    public int nullPredicate() {
+        return Iterables.size(Iterables.filter(jobs, TestJob.HAS_TITLE));
+    }
+
+    @Benchmark
+    public double boxedExtractor() {
+        double total = 0;
+        for (Double number : Iterables.transform(jobs, TestJob.NUMBER))
+            total += number;
+        return total;
+    }
+
+    @Benchmark
+    public double primitiveExtractor() {
+        double total = 0;
+        for (TestJob job : jobs)
+            total += TestJob.NUMBER_AS_DOUBLE.applyAsDouble(job);
+        return total;
+    }
+}
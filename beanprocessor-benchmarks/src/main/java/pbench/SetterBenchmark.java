@@ -0,0 +1,108 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ptest.FXBean;
+import ptest.TestJob;
+import ptest.Trade;
+
+/** Setter and delegation costs: plain, bound (with and without a listener), fluent and JavaFX. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SetterBenchmark {
+
+    Trade trade;
+    TestJob quiet;
+    TestJob listened;
+    FXBean fx;
+    int value;
+
+    @Setup
+    public void setup() {
+        trade = new Trade();
+        quiet = new TestJob();
+        listened = new TestJob();
+        listened.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+            }
+        });
+        fx = new FXBean();
+    }
+
+    @Benchmark
+    public Trade plainSetter() {
+        trade.setQuantity(++value);
+        return trade;
+    }
+
+    @Benchmark
+    public TestJob boundSetterNoListeners() {
+        quiet.setNumber(++value);
+        return quiet;
+    }
+
+    @Benchmark
+    public TestJob boundSetterWithListener() {
+        listened.setNumber(++value);
+        return listened;
+    }
+
+    @Benchmark
+    public Trade fluentSetters() {
+        return trade.quantity(++value).price(value).buy((value & 1) == 0);
+    }
+
+    @Benchmark
+    public FXBean fxSetter() {
+        fx.setCount(++value);
+        return fx;
+    }
+
+    @Benchmark
+    public int fxPropertyGet() {
+        return fx.countProperty().get();
+    }
+
+    @Benchmark
+    public Integer delegation() {
+        quiet.doSomething(++value);
+        return quiet.doSomething(1.5);
+    }
+
+    @Benchmark
+    public void delegateAppend(Blackhole blackhole) {
+        StringBuilder builder = quiet.getBuilder();
+        if (builder.length() > 4096)
+            builder.setLength(0);
+        blackhole.consume(quiet.append('x'));
+    }
+}
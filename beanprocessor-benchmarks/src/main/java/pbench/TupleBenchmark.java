@@ -0,0 +1,118 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.AllPrims;
+import ptest.CachedIntPair;
+import ptest.DoubleString;
+import ptest.IntPair;
+import ptest.MixedIntPair;
+import ptest.Tuple3;
+import ptest.Tuples;
+
+/** hashCode, equals and toString of generic and specialized tuples, and of the three hash strategies. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TupleBenchmark {
+
+    Tuple3<Integer, String, Double> generic, genericCopy;
+    AllPrims prims, primsCopy;
+    DoubleString doubleString, doubleStringCopy;
+    IntPair classic;
+    MixedIntPair mixed;
+    CachedIntPair cached;
+
+    @Setup
+    public void setup() {
+        generic = Tuples.of(42, "IBM", 101.5);
+        genericCopy = Tuples.of(42, "IBM", 101.5);
+        prims = new AllPrims((byte) 1, (short) 2, 3, 4L, 'x', 5.5f, 6.5);
+        primsCopy = new AllPrims((byte) 1, (short) 2, 3, 4L, 'x', 5.5f, 6.5);
+        doubleString = new DoubleString(101.5, "IBM");
+        doubleStringCopy = new DoubleString(101.5, "IBM");
+        classic = new IntPair(17, 42);
+        mixed = new MixedIntPair(17, 42);
+        cached = new CachedIntPair(17, 42);
+    }
+
+    @Benchmark
+    public int genericHashCode() {
+        return generic.hashCode();
+    }
+
+    @Benchmark
+    public boolean genericEquals() {
+        return generic.equals(genericCopy);
+    }
+
+    @Benchmark
+    public String genericToString() {
+        return generic.toString();
+    }
+
+    @Benchmark
+    public int specializedHashCode() {
+        return prims.hashCode();
+    }
+
+    @Benchmark
+    public boolean specializedEquals() {
+        return prims.equals(primsCopy);
+    }
+
+    @Benchmark
+    public String specializedToString() {
+        return prims.toString();
+    }
+
+    @Benchmark
+    public int mixedReferenceHashCode() {
+        return doubleString.hashCode();
+    }
+
+    @Benchmark
+    public boolean mixedReferenceEquals() {
+        return doubleString.equals(doubleStringCopy);
+    }
+
+    @Benchmark
+    public int classicHash() {
+        return classic.hashCode();
+    }
+
+    @Benchmark
+    public int mixedHash() {
+        return mixed.hashCode();
+    }
+
+    @Benchmark
+    public int cachedHash() {
+        return cached.hashCode();
+    }
+}
@@ -0,0 +1,206 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ptest.AllPrims;
+import ptest.AllPrimsArray;
+import ptest.AllPrimsFile;
+import ptest.AllPrimsMap;
+import ptest.CachedIntPair;
+import ptest.IntPair;
+import ptest.MixedIntPair;
+
+/** The tuple collections against their java.util counterparts: AllPrimsMap against a HashSet, HashMap lookups
+ * keyed by each hash strategy, radix sorting against Arrays.sort, a column of AllPrimsArray against a list of
+ * tuples, and a scan of a mapped AllPrimsFile. Each operation covers the whole collection. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TupleCollectionBenchmark {
+
+    static final int COUNT = 200000;
+
+    AllPrims[] keys;
+    AllPrims[] unsorted;
+    List<AllPrims> objects;
+    AllPrimsArray rows;
+    File file;
+    AllPrimsFile.Reader reader;
+
+    @Setup
+    public void setup() throws IOException {
+        keys = new AllPrims[COUNT];
+        for (int i = 0; i < COUNT; i++)
+            keys[i] = new AllPrims((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0);
+
+        Random random = new Random(13);
+        unsorted = new AllPrims[COUNT];
+        for (int i = 0; i < COUNT; i++)
+            unsorted[i] = new AllPrims((byte) random.nextInt(4), (short) (random.nextInt(8) - 4), random.nextInt(), random.nextLong(),
+                    (char) random.nextInt(3), random.nextFloat(), random.nextGaussian());
+
+        objects = new ArrayList<AllPrims>(COUNT);
+        rows = new AllPrimsArray(COUNT);
+        file = File.createTempFile("tuples", ".bin");
+        file.deleteOnExit();
+        AllPrimsFile.Writer writer = AllPrimsFile.create(file);
+        for (int i = 0; i < COUNT; i++) {
+            AllPrims row = new AllPrims((byte) i, (short) (i * 3), i, i * 1000L, (char) ('a' + i % 26), i * 0.25f, i / 8.0);
+            objects.add(row);
+            rows.append(row);
+            writer.append(row);
+        }
+        writer.close();
+        reader = AllPrimsFile.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int hashSetInsertAndProbe() {
+        Set<AllPrims> set = new HashSet<AllPrims>();
+        for (AllPrims key : keys)
+            set.add(key);
+        int found = 0;
+        for (int i = 0; i < COUNT; i++)
+            if (set.contains(new AllPrims((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0)))
+                found++;
+        return found;
+    }
+
+    @Benchmark
+    public int tupleMapInsertAndProbe() {
+        AllPrimsMap<Boolean> map = new AllPrimsMap<Boolean>();
+        for (AllPrims key : keys)
+            map.put(key, Boolean.TRUE);
+        int found = 0;
+        for (int i = 0; i < COUNT; i++)
+            if (map.containsKey((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0))
+                found++;
+        return found;
+    }
+
+    @Benchmark
+    public long hashMapLookups(Lookups lookups) {
+        long sum = 0;
+        for (Object key : lookups.keys)
+            sum += lookups.map.get(key);
+        return sum;
+    }
+
+    // The sorts include cloning the input, which is the same for each.
+
+    @Benchmark
+    public AllPrims[] arraysSort() {
+        AllPrims[] a = unsorted.clone();
+        java.util.Arrays.sort(a);
+        return a;
+    }
+
+    @Benchmark
+    public AllPrims[] radixSort() {
+        AllPrims[] a = unsorted.clone();
+        AllPrims.sort(a);
+        return a;
+    }
+
+    @Benchmark
+    public AllPrims[] parallelRadixSort() {
+        AllPrims[] a = unsorted.clone();
+        AllPrims.parallelSort(a);
+        return a;
+    }
+
+    @Benchmark
+    public double objectSum() {
+        double total = 0;
+        for (AllPrims row : objects)
+            total += row._7;
+        return total;
+    }
+
+    @Benchmark
+    public double columnSum() {
+        double total = 0;
+        double[] column = rows.field7Column();
+        for (int i = 0, n = rows.size(); i < n; i++)
+            total += column[i];
+        return total;
+    }
+
+    @Benchmark
+    public long fileScan() {
+        final long[] sum = new long[1];
+        reader.scan(new AllPrimsFile.Visitor() {
+            public void visit(AllPrimsFile.Reader.View record) {
+                sum[0] += record.getField3();
+            }
+        });
+        return sum[0];
+    }
+
+    /** A HashMap over a 256 by 256 grid of pairs, keyed by one hash strategy. */
+    @State(Scope.Thread)
+    public static class Lookups {
+
+        /** The hash strategy of the keys: classic, mixed or cached. */
+        @Param({ "classic", "mixed", "cached" })
+        String hash;
+
+        List<Object> keys;
+        Map<Object, Integer> map;
+
+        @Setup
+        public void setup() {
+            keys = new ArrayList<Object>();
+            map = new HashMap<Object, Integer>();
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    Object key = hash.equals("classic") ? new IntPair(a, b) : hash.equals("mixed") ? new MixedIntPair(a, b) : new CachedIntPair(a, b);
+                    keys.add(key);
+                    map.put(key, map.size());
+                }
+            }
+        }
+    }
+}
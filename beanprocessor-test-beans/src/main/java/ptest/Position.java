@@ -0,0 +1,36 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package ptest;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.soletta.beanprocessor.JAXBMemberType;
+import com.soletta.beanprocessor.SBean;
+import com.soletta.beanprocessor.SKind;
+import com.soletta.beanprocessor.SProperty;
+
+@XmlRootElement
+@SBean(properties={ 
+        @SProperty(name="account"),
+        @SProperty(name="symbol"),
+        @SProperty(name="quantity", type=long.class),
+        @SProperty(name="averagePrice", type=double.class),
+        @SProperty(name="open", type=boolean.class),
+        @SProperty(name="opened", type=Date.class, jaxbType=JAXBMemberType.ELEMENT),
+        @SProperty(name="tags", type=String.class, kind=SKind.LIST, jaxbType=JAXBMemberType.ELEMENT),
+        @SProperty(name="fills", type=double.class, kind=SKind.LIST, jaxbType=JAXBMemberType.ELEMENT),
+        @SProperty(name="weight", type=float.class)
+}, fluent=true, binary=true, xmlCodec=true, json=true, trackDirty=true, jaxbType=JAXBMemberType.ATTRIBUTE)
+public class Position extends PositionBase {      
+}
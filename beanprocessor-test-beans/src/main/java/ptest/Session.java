@@ -0,0 +1,22 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package ptest;
+
+import com.soletta.beanprocessor.SBean;
+import com.soletta.beanprocessor.SProperty;
+
+@SBean(properties={ 
+        @SProperty(name="user", bound=true),
+        @SProperty(name="requests", type=int.class)
+}, pool=true, mxbean=true, mxbeanCounters=true, trackDirty=true)
+public class Session extends SessionBase {      
+}
@@ -1,12 +1,16 @@
 @Tuples(20)
 @Specialize({
-    @Tuple(tupleTypeName="AllPrims", value={byte.class, short.class, int.class, long.class, char.class, float.class, double.class}),
+    @Tuple(tupleTypeName="AllPrims", value={byte.class, short.class, int.class, long.class, char.class, float.class, double.class}, map=true, sort=true),
     @Tuple(value={byte.class, short.class, int.class, long.class, char.class, float.class}),
-    @Tuple(tupleTypeName="DoubleString", value={double.class, String.class})
+    @Tuple(tupleTypeName="DoubleString", value={double.class, String.class}, map=true, sort=true),
+    @Tuple(tupleTypeName="IntPair", value={int.class, int.class}),
+    @Tuple(tupleTypeName="MixedIntPair", value={int.class, int.class}, hash=TupleHash.MIXED),
+    @Tuple(tupleTypeName="CachedIntPair", value={int.class, int.class}, hash=TupleHash.MIXED, cacheHash=true)
     })
 package ptest;
 import com.soletta.beanprocessor.Specialize;
-import com.soletta.beanprocessor.Tuple;
+import com.soletta.beanprocessor.Tuple;
+import com.soletta.beanprocessor.TupleHash;
 import com.soletta.beanprocessor.Tuples;
 
 
@@ -0,0 +1,82 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.TypeElement;
+
+/** Everything BeanProcessor needs to know about one SBean, worked out on the processing thread. Class
+ * literals, boxing, delegate methods and subtype checks are resolved once, so rendering the base class
+ * only reads strings and annotation values and can run on any thread.
+ *
+ * @author rjudson
+ *
+ */
+class BeanModel {
+
+    /** The annotated class. Only used on the processing thread, and to attach messages. */
+    final TypeElement element;
+    final SBean sbean;
+    final String packageName;
+    final String simpleName;
+    final String qualifiedName;
+    /** The extends clause of the base class, or the empty string. */
+    final String extend;
+    final List<BeanProperty> properties;
+    /** The number of long words in the dirty mask, or 0 when the bean doesn't track dirty properties. */
+    final int dirtyWords;
+    /** Whether the dirty mask is a volatile long updated with compare-and-set, because ATOMIC properties can mark it
+     * from several threads at once. */
+    final boolean atomicDirty;
+    final boolean mxbean;
+    /** Whether the MXBean counts reads, writes and listener calls; three counters per property ordinal. Never set
+     * when LongAdder is missing, which has already been reported. */
+    final boolean counters;
+    /** Whether any property is bound, so the base class needs listener support. */
+    final boolean bound;
+    /** Whether any property records JFR events. */
+    final boolean jfr;
+    /** Whether the bean has a StampedLock and snapshot(). */
+    final boolean stamped;
+    /** Whether java.util.function is available, for methods that take a lambda. */
+    final boolean functions;
+
+    BeanModel(TypeElement element, SBean sbean, String packageName, String extend, List<BeanProperty> properties, boolean functions,
+            boolean adders) {
+        this.element = element;
+        this.sbean = sbean;
+        this.packageName = packageName;
+        this.simpleName = element.getSimpleName().toString();
+        this.qualifiedName = element.getQualifiedName().toString();
+        this.extend = extend;
+        this.functions = functions;
+        this.properties = Collections.unmodifiableList(properties);
+        this.dirtyWords = sbean.trackDirty() ? Math.max(1, (properties.size() + 63) / 64) : 0;
+        boolean mxbean = sbean.mxbean(), bound = false, jfr = false, stamped = sbean.concurrency() == SConcurrency.STAMPED;
+        boolean atomic = false;
+        for (BeanProperty p : properties) {
+            atomic |= p.atomic;
+            mxbean |= p.mx;
+            stamped |= p.stamped;
+            bound |= p.bound;
+            jfr |= p.jfr;
+        }
+        this.jfr = jfr;
+        this.mxbean = mxbean;
+        this.counters = mxbean && sbean.mxbeanCounters() && adders;
+        this.bound = bound;
+        this.stamped = stamped;
+        this.atomicDirty = atomic && dirtyWords == 1;
+    }
+}
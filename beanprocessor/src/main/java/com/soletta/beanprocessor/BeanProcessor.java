@@ -14,11 +14,22 @@ package com.soletta.beanprocessor;
 import static java.lang.Character.toUpperCase;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Messager;
@@ -27,11 +38,11 @@ import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
-import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeMirror;
@@ -47,17 +58,55 @@ import javax.tools.JavaFileObject;
  * @author rjudson
  * 
  */
-@SupportedOptions(value = {})
+@SupportedOptions(value = { CachingFiler.OPTION, BeanProcessor.THREADS_OPTION, GenerationStats.OPTION })
 @SupportedAnnotationTypes({ "com.soletta.beanprocessor.SBean", "com.soletta.beanprocessor.SProperty", "com.soletta.beanprocessor.Tuples", "com.soletta.beanprocessor.Specialize" })
 public class BeanProcessor extends AbstractProcessor {
 
+    /** The number of threads that render base classes; 1 renders them on the processing thread. */
+    static final String THREADS_OPTION = "beanprocessor.threads";
+
+    // Snippets written for every property, parsed once rather than by each String.format call.
+    private static final Template FIELD = Template.compile("    %s %s %s %s%s;\n");
+    private static final Template GETTER = Template.compile("    public %s %s%s() { return %s%s; }\n");
+    private static final Template COUNTED_GETTER = Template.compile("    public %s %s%s() { mxbeanCounters[%d].increment(); return %s%s; }\n");
+    private static final Template SETTER = Template.compile("    public void %s(%s %s) {\n");
+    private static final Template STATEMENT = Template.compile("        %s;\n");
+    private static final Template ASSIGN = Template.compile("        this.%s = %1$s;\n");
+    private static final Template FLUENT_SETTER = Template.compile("    public %1$s %2$s(%3$s fluentValue) { set%4$s(fluentValue); return (%1$s)this; }\n");
+    private static final Template PREDICATE = Template.compile("    public final static %1$s %2$s = new %1$s(){ public boolean apply(%4$sBase value) { %3$s  } };\n");
+    private static final Template COMPARISON = Template.compile("    public static %1$s %2$s_%3$s(final %4$s bound) { return new %1$s(){ public boolean apply(%5$sBase value) { return value.get%6$s() %7$s bound; } }; }\n");
+    private static final Template EXTRACTOR = Template.compile("    public final static %1$s %2$s = new %1$s(){ public %5$s apply(%4$sBase value) { return value.%6$s%3$s(); }};\n");
+    private static final Template PRIMITIVE_EXTRACTOR = Template.compile("    public final static %1$s %2$s_AS_%3$s = new %1$s(){ public %4$s applyAs%5$s(%6$sBase value) { return value.%7$s%8$s(); }};\n");
+
+    /** Types an MXBean maps to open types by itself; enums, arrays, and lists and sets of these also map. */
+    private static final Set<String> OPEN_TYPES = new HashSet<String>(Arrays.asList("boolean", "byte", "short", "char", "int",
+            "long", "float", "double", "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Character",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.String", "java.util.Date",
+            "java.math.BigDecimal", "java.math.BigInteger", "javax.management.ObjectName"));
+
     private Messager messager;
     private Types types;
+    private int renderThreads;
+    private ExecutorService renderPool;
+    private GenerationStats stats;
+    /** Time spent resolving class literals through MirroredTypeException, for the statistics report. */
+    private long mirrorNanos;
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
-        super.init(processingEnv);
+        // Generators write through the environment's Filer, which skips sources whose inputs are unchanged.
+        stats = new GenerationStats(processingEnv.getOptions().get(GenerationStats.OPTION));
+        super.init(CachingFiler.wrap(processingEnv, stats));
         processingEnv.getMessager().printMessage(Kind.NOTE, "Initialized BeanProcessor");
+        renderThreads = Runtime.getRuntime().availableProcessors();
+        String threads = processingEnv.getOptions().get(THREADS_OPTION);
+        if (threads != null) {
+            try {
+                renderThreads = Math.max(1, Integer.parseInt(threads.trim()));
+            } catch (NumberFormatException e) {
+                processingEnv.getMessager().printMessage(Kind.WARNING, String.format("Ignoring %s=%s; expected a number of threads.", THREADS_OPTION, threads));
+            }
+        }
     }
 
 //    @Override
@@ -81,194 +130,731 @@ public class BeanProcessor extends AbstractProcessor {
         for (Element element : tupleGeneration) {
             PackageElement packageElement = (PackageElement)element;
             messager.printMessage(Kind.NOTE, String.format("Generating tuples for package %s", packageElement.getQualifiedName()));
+            long start = System.nanoTime();
             try {
                 new TupleGenerator().generateTupleClasses(packageElement, processingEnv, roundEnv);
             } catch (IOException e) {
                 messager.printMessage(Kind.ERROR, "Unable to create source tuple classes");
             }
+            stats.entry(packageElement).writeNanos += System.nanoTime() - start;
         }
         
+        List<BeanModel> models = new ArrayList<BeanModel>();
         for (Element beanElement : roundEnv.getElementsAnnotatedWith(SBean.class)) {
-            
-            SBean sbean = beanElement.getAnnotation(SBean.class);
-            TypeElement beanTypeElement = TypeElement.class.cast(beanElement);
-            
+            long start = System.nanoTime(), mirrors = mirrorNanos;
+            BeanModel model = extractModel(TypeElement.class.cast(beanElement));
+            stats.entry(beanElement).extracted(model, System.nanoTime() - start, mirrorNanos - mirrors);
+            models.add(model);
+        }
+
+        // Base classes are rendered from the models, in parallel when there are several; javac's Filer and
+        // Messager are only used here on the processing thread, in bean order.
+        List<String> sources = renderBases(models);
+        for (int i = 0; i < models.size(); i++) {
+            BeanModel model = models.get(i);
+            String text = sources.get(i);
+            if (text == null)
+                continue;
+            long start = System.nanoTime();
             try {
-                boolean generatePropertyChangeSupport = false, generateMXBeanInterface = sbean.mxbean();
-                List<String> mxMethods = new ArrayList<String>();
-                List<String> propertyNames = new ArrayList<String>();
-                String generatedClassName = beanTypeElement.getSimpleName() + "Base";
-                JavaFileObject source = processingEnv.getFiler().createSourceFile(beanTypeElement.getQualifiedName() + "Base",
-                        beanElement);
-                PrintWriter src = new PrintWriter(source.openOutputStream());
+                JavaFileObject source = processingEnv.getFiler().createSourceFile(model.qualifiedName + "Base", model.element);
+                Writer out = new OutputStreamWriter(source.openOutputStream());
                 try {
-                    src.format("package %s;\n", packageElement(beanTypeElement).getQualifiedName());
-                    src.println();
-
-                    createClassDeclaration(src, sbean, generatedClassName);
-
-                    // Generate a protected constructor. Should we be generating abstract as well?
-                    src.format("    protected %s() {}\n", generatedClassName);
-                    src.println();
-
-                    for (SProperty prop : sbean.properties()) {
-                        
-                        boolean isFX = prop.fxbean() || (sbean.fxbean() && !prop.nofxbean());
-                        
-                        propertyNames.add(prop.name());
-                        String type = prop.typeString();
-                        String boxed;
-                        boolean isPrimitive;
-                        if (type.length() == 0) {
-                            TypeMirror mirror = mirrorType(prop);
-                            type = mirror.toString();
-                            boxed = type;
-                            isPrimitive = mirror.getKind().isPrimitive();
-                            if (isPrimitive) {
-                                boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) mirror).toString();
-                            } 
-                        } else {
-                            isPrimitive = false;
-                            boxed = type;
-                        }
-
-                        String capName = capitalize(prop);
-
-                        switch (prop.kind()) {
-                        case OBSERVABLE_LIST:
-                            type = "javafx.rt.ObservableList<" + boxed + ">";
-                            boxed = type;
-                            break;
-                        case LIST:
-                            type = "java.util.List<" + boxed + ">";
-                            boxed = type;
-                            break;
-                        default:
-                            break;
-                        }
-                        
-                        boolean final_ = createField(src, sbean, prop, type, boxed, beanTypeElement, prop.kind(), isFX);
-                        
-                        createJavadoc(src, prop);
-                        createJAXB(src, sbean, prop);
-                        
-                        String methodContent = createIsOrGet(src, prop, type, capName, isFX);
-                        if (prop.mxbean() || (sbean.mxbean() && !prop.nomxbean())) {
-                            generateMXBeanInterface = true;
-                            mxMethods.add(methodContent);
-                        }
-
-                        if (!final_ && createSetter(src, sbean, prop, type, capName, isFX))
-                            generatePropertyChangeSupport = true;
-
-                        if (!final_ && (prop.fluent() || (sbean.fluent() && !prop.fluent())))
-                            createFluentSetter(src, prop, type, capName, beanTypeElement);
-
-                        if (prop.predicate() || (sbean.predicates() && !prop.nopredicate()))
-                            createGuavaPredicate(src, type, capName, beanElement, beanTypeElement, isPrimitive);
-
-                        if (prop.extractor() || (sbean.extractors() && !prop.noextractor()))
-                            createGuavaExtractor(src, type, capName, beanElement, beanTypeElement, boxed);
-
-                        String delegateType = prop.delegateString();
-                        if (delegateType.isEmpty()) {
-                            TypeMirror delegate = mirrorDelegate(prop);
-                            TypeElement delElement = (TypeElement) types.asElement(delegate);
-                            //System.out.println(delElement);
-                            delegateType = delegate.toString();
-                            if (delegateType.equals(Void.class.getName()))
-                                delegateType = "";
-                            else {
-                                List<? extends Element> enclosed = delElement.getEnclosedElements();
-                                for (Element e: enclosed) {
-                                    if (e instanceof ExecutableElement) {
-                                        ExecutableElement ee = (ExecutableElement)e;
-                                        ExecutableType eMirror = (ExecutableType) ee.asType(); 
-                                        TypeMirror returnMirror = ee.getReturnType();
-                                 
-                                        StringBuilder sig = new StringBuilder("    public ");
-                                        sig.append(returnMirror).append(' ');
-                                        sig.append(ee.getSimpleName()).append('(');
-                                        int n = 0;
-                                        for (VariableElement v: ee.getParameters()) {
-                                            if (n > 0)
-                                                sig.append(", ");
-                                            sig.append(v.asType()).append(' ');
-                                            sig.append("arg").append(n++);
-                                        }
-                                        sig.append(") { ");
-                                        if (!returnMirror.toString().equals("void"))
-                                            sig.append("return ");
-                                        sig.append(prop.name()).append('.').append(ee.getSimpleName()).append('(');
-                                        for (int i = 0; i < n; i++) {
-                                            if (i > 0)
-                                                sig.append(", ");
-                                            sig.append("arg").append(i);
-                                        }
-                                        sig.append("); }");
-                                        
-                                        src.println(sig);
-                                    }
-                                }
-                            }
-                        }
-                        
-                        src.println();
-                    }
-
-                    if (generatePropertyChangeSupport)
-                        createPropertyChangeSupport(src, sbean, beanTypeElement);
-
-                    if (generateMXBeanInterface)
-                        createMXBeanInterface(beanElement, beanTypeElement);
-                    
-                    if (sbean.propertyEnum()) {
-                        src.println();
-                        src.println("    public enum Properties {");
-                        
-                        boolean first = true;
-                        for (String propertyName: propertyNames) {
-                            if (!first) 
-                                src.println(",");
-                            else
-                                first = false;
-                            src.print("        " + propertyName.toUpperCase() + "(\"" + propertyName + "\")");
-                        }
-                        src.println(";");
-                        
-                        src.println("        private String property;");
-                        src.println("        private Properties(String property) { this.property = property; }");
-                        src.println("        public String toString() { return property; }");
-                        src.println("    }");
-                    }
-                    src.format("} // end of class definition\n");
+                    out.write(text);
                 } finally {
-                    src.close();
+                    out.close();
                 }
+                createCompanions(model);
             } catch (IOException e) {
                 messager.printMessage(Kind.ERROR, "Unable to create source file");
             }
-
+            stats.entry(model.element).writeNanos += System.nanoTime() - start;
         }
 
+        stats.endRound(messager);
+
+        if (roundEnv.processingOver()) {
+            if (renderPool != null) {
+                renderPool.shutdown();
+                renderPool = null;
+            }
+            int skipped = ((CachingFiler) processingEnv.getFiler()).skipped();
+            if (skipped > 0)
+                messager.printMessage(Kind.NOTE, String.format("Skipped %,d generated sources whose inputs are unchanged.", skipped));
+        }
         return true;
     }
 
-    private void createMXBeanInterface(Element beanElement, TypeElement beanTypeElement)
-            throws IOException {
-        JavaFileObject mxbeanSource = processingEnv.getFiler().createSourceFile(beanTypeElement.getQualifiedName() + "BaseMXBean",
-                beanElement);
+    /** Resolves everything about a bean that needs javac: class literals in the annotations, boxing, delegate
+     * methods and subtype checks. The model holds only strings and annotation values, so the base class can be
+     * rendered from it on any thread.
+     */
+    BeanModel extractModel(TypeElement beanTypeElement) {
+        SBean sbean = beanTypeElement.getAnnotation(SBean.class);
+        List<BeanProperty> beanProperties = new ArrayList<BeanProperty>();
+        boolean jfrAvailable = processingEnv.getElementUtils().getTypeElement("jdk.jfr.Event") != null, jfrRequested = false;
+        for (SProperty prop : sbean.properties()) {
+
+            boolean isFX = prop.fxbean() || (sbean.fxbean() && !prop.nofxbean());
+
+            String type = prop.typeString();
+            String boxed;
+            boolean isPrimitive;
+            if (type.length() == 0) {
+                TypeMirror mirror = mirrorType(prop);
+                type = mirror.toString();
+                boxed = type;
+                isPrimitive = mirror.getKind().isPrimitive();
+                if (isPrimitive) {
+                    boxed = types.boxedClass((PrimitiveType) mirror).toString();
+                }
+            } else {
+                isPrimitive = false;
+                boxed = type;
+            }
+
+            String capName = capitalize(prop);
+            String elementType = boxed;
+
+            switch (prop.kind()) {
+            case OBSERVABLE_LIST:
+                type = "javafx.rt.ObservableList<" + boxed + ">";
+                boxed = type;
+                isPrimitive = false;
+                break;
+            case LIST:
+                type = "java.util.List<" + boxed + ">";
+                boxed = type;
+                isPrimitive = false;
+                break;
+            default:
+                break;
+            }
+
+            boolean final_ = sbean.immutable() || prop.final_() || (sbean.final_() && !prop.notfinal());
+            if (final_ && prop.init().isEmpty() && !sbean.immutable()) {
+                messager.printMessage(Kind.ERROR, "A generated final field must include an init string.", beanTypeElement);
+            }
+            boolean bound = !final_ && !isFX && (prop.bound() || (sbean.bound() && !prop.unbound()));
+            boolean map = prop.create() && isSubtype(type, "java.util.Map");
+            boolean clearable = map || prop.create() && isSubtype(type, "java.util.Collection");
+            boolean mx = prop.mxbean() || (sbean.mxbean() && !prop.nomxbean());
+            if (mx && !openType(type)) {
+                messager.printMessage(Kind.WARNING, String.format("Property %s of type %s has no MXBean mapping and is left out of %sBaseMXBean.",
+                        prop.name(), type, beanTypeElement.getSimpleName()), beanTypeElement);
+                mx = false;
+            }
+            boolean jfr = prop.jfr() || (sbean.jfr() && !prop.nojfr());
+            jfrRequested |= jfr;
+            SConcurrency concurrency = prop.concurrency() == SConcurrency.UNSET ? sbean.concurrency() : prop.concurrency();
+            boolean atomic = concurrency == SConcurrency.ATOMIC && !final_ && !isFX;
+            if (atomic && isPrimitive && !type.equals("int") && !type.equals("long")) {
+                messager.printMessage(Kind.ERROR, String.format("Property %s is a %s; only int, long and reference properties can be ATOMIC.",
+                        prop.name(), type), beanTypeElement);
+                atomic = false;
+            }
+            boolean stamped = concurrency == SConcurrency.STAMPED && !final_ && !isFX;
+            beanProperties.add(new BeanProperty(prop, beanProperties.size(), capName, type, boxed,
+                    prop.kind() == SKind.SIMPLE ? null : elementType, isPrimitive, isFX, final_, bound, clearable, map,
+                    delegateMethods(prop), mx, jfr && jfrAvailable, atomic, stamped));
+        }
+        if (jfrRequested && !jfrAvailable)
+            messager.printMessage(Kind.WARNING, "jdk.jfr.Event is not available to this compilation; no JFR events are generated.",
+                    beanTypeElement);
+        if (sbean.immutable())
+            checkImmutable(beanTypeElement, sbean, beanProperties);
+        if (sbean.trackDirty() && beanProperties.size() > 64) {
+            for (BeanProperty p : beanProperties) {
+                if (p.atomic) {
+                    messager.printMessage(Kind.ERROR, String.format("Property %s is ATOMIC; trackDirty can only be combined with ATOMIC "
+                            + "properties in beans of up to 64 properties, whose dirty mask is a single long.", p.name), beanTypeElement);
+                    break;
+                }
+            }
+        }
+        boolean adders = processingEnv.getElementUtils().getTypeElement("java.util.concurrent.atomic.LongAdder") != null;
+        if (sbean.mxbeanCounters() && !adders)
+            messager.printMessage(Kind.ERROR, "mxbeanCounters needs java.util.concurrent.atomic.LongAdder, which is not available to this "
+                    + "compilation; compile for Java 8 or later, or leave the counters off.", beanTypeElement);
+
+        TypeMirror extendMirror = mirrorExtend(sbean);
+        String extend = extendMirror.toString().equals(Void.class.getName()) ? "" : "extends " + extendMirror.toString();
+        boolean functions = processingEnv.getElementUtils().getTypeElement("java.util.function.LongBinaryOperator") != null;
+        return new BeanModel(beanTypeElement, sbean, packageElement(beanTypeElement).getQualifiedName().toString(), extend,
+                beanProperties, functions, adders);
+    }
+
+    /** Reports the options an immutable bean can't have, and a missing Builder constructor. */
+    void checkImmutable(TypeElement beanTypeElement, SBean sbean, List<BeanProperty> properties) {
+        List<String> conflicts = ImmutableGenerator.conflicts(sbean);
+        for (BeanProperty p : properties) {
+            if (p.fx)
+                conflicts.add("fxbean property " + p.name);
+            // Every bean built from one Builder, or with a wither, would share the one mutable instance.
+            if (p.prop.create())
+                conflicts.add("create property " + p.name);
+        }
+        if (!conflicts.isEmpty())
+            messager.printMessage(Kind.ERROR, "An immutable bean can't also use " + conflicts + ".", beanTypeElement);
+        for (Element e : beanTypeElement.getEnclosedElements())
+            if (e.getKind() == ElementKind.CONSTRUCTOR && ((ExecutableElement) e).getParameters().size() == 1)
+                return;
+        messager.printMessage(Kind.ERROR, String.format("An immutable bean needs the constructor %1$s(%1$sBase.Builder builder) { super(builder); }",
+                beanTypeElement.getSimpleName()), beanTypeElement);
+    }
+
+    /** Whether an MXBean can expose a property of this type without help from the bean. */
+    boolean openType(String type) {
+        if (type.endsWith("[]"))
+            return openType(type.substring(0, type.length() - 2));
+        int angle = type.indexOf('<');
+        if (angle >= 0) {
+            String raw = type.substring(0, angle);
+            return (raw.equals("java.util.List") || raw.equals("java.util.Set")) && type.endsWith(">")
+                    && openType(type.substring(angle + 1, type.length() - 1));
+        }
+        if (OPEN_TYPES.contains(type))
+            return true;
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(type);
+        return element != null && element.getKind() == ElementKind.ENUM;
+    }
+
+    /** The forwarding methods for a property's delegate type, if it has one. */
+    List<String> delegateMethods(SProperty prop) {
+        List<String> methods = new ArrayList<String>();
+        if (!prop.delegateString().isEmpty())
+            return methods;
+        TypeMirror delegate = mirrorDelegate(prop);
+        if (delegate.toString().equals(Void.class.getName()))
+            return methods;
+        TypeElement delElement = (TypeElement) types.asElement(delegate);
+        for (Element e : delElement.getEnclosedElements()) {
+            if (e instanceof ExecutableElement) {
+                ExecutableElement ee = (ExecutableElement) e;
+                TypeMirror returnMirror = ee.getReturnType();
+
+                StringBuilder sig = new StringBuilder("    public ");
+                sig.append(returnMirror).append(' ');
+                sig.append(ee.getSimpleName()).append('(');
+                int n = 0;
+                for (VariableElement v : ee.getParameters()) {
+                    if (n > 0)
+                        sig.append(", ");
+                    sig.append(v.asType()).append(' ');
+                    sig.append("arg").append(n++);
+                }
+                sig.append(") { ");
+                if (!returnMirror.toString().equals("void"))
+                    sig.append("return ");
+                sig.append(prop.name()).append('.').append(ee.getSimpleName()).append('(');
+                for (int i = 0; i < n; i++) {
+                    if (i > 0)
+                        sig.append(", ");
+                    sig.append("arg").append(i);
+                }
+                sig.append("); }");
+
+                methods.add(sig.toString());
+            }
+        }
+        return methods;
+    }
+
+    /** Renders the base class of each model, returning null for any that failed. With more than one model and
+     * more than one render thread the work is spread over the render pool. Messages raised while rendering are
+     * replayed here, in model order.
+     */
+    List<String> renderBases(List<BeanModel> models) {
+        boolean parallel = models.size() > 1 && renderThreads > 1;
+        List<DeferredMessager> messagers = new ArrayList<DeferredMessager>();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (final BeanModel model : models) {
+            final DeferredMessager deferred = new DeferredMessager();
+            final GenerationStats.Entry entry = stats.entry(model.element);
+            messagers.add(deferred);
+            if (parallel) {
+                futures.add(renderPool().submit(new Callable<String>() {
+                    public String call() {
+                        return renderTimed(model, deferred, entry);
+                    }
+                }));
+            }
+        }
+
+        List<String> sources = new ArrayList<String>();
+        for (int i = 0; i < models.size(); i++) {
+            BeanModel model = models.get(i);
+            String text = null;
+            Throwable failure = null;
+            try {
+                text = parallel ? futures.get(i).get() : renderTimed(model, messagers.get(i), stats.entry(model.element));
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            messagers.get(i).replay(messager);
+            if (failure != null)
+                messager.printMessage(Kind.ERROR, String.format("Unable to generate %sBase: %s", model.simpleName, failure), model.element);
+            sources.add(text);
+        }
+        return sources;
+    }
+
+    private String renderTimed(BeanModel model, Messager messager, GenerationStats.Entry entry) {
+        long start = System.nanoTime();
+        try {
+            return renderBase(model, messager);
+        } finally {
+            entry.renderNanos += System.nanoTime() - start;
+        }
+    }
+
+    private ExecutorService renderPool() {
+        if (renderPool == null) {
+            renderPool = Executors.newFixedThreadPool(renderThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BeanProcessor render");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return renderPool;
+    }
+
+    /** Renders the base class source. This only reads the model, and reports through messager, so it is safe to
+     * call off the processing thread.
+     */
+    String renderBase(BeanModel model, Messager messager) {
+        SBean sbean = model.sbean;
+        int dirtyWords = model.dirtyWords;
+        String generatedClassName = model.simpleName + "Base";
+        StringWriter text = new StringWriter(8192);
+        PrintWriter src = new PrintWriter(text);
+
+        src.format("package %s;\n", model.packageName);
+        src.println();
+
+        String supertypes = model.extend;
+        if (model.mxbean)
+            supertypes = (supertypes.isEmpty() ? "" : supertypes + " ") + "implements " + generatedClassName + "MXBean";
+        createClassDeclaration(src, sbean, generatedClassName, supertypes);
+
+        // Generate a protected constructor. Should we be generating abstract as well? Immutable beans get theirs,
+        // which takes a Builder, after the fields.
+        if (!sbean.immutable()) {
+            src.format("    protected %s() {}\n", generatedClassName);
+            src.println();
+        }
+
+        for (BeanProperty property : model.properties) {
+            SProperty prop = property.prop;
+
+            createField(src, sbean, property);
+            createJavadoc(src, prop);
+            createJAXB(src, sbean, prop);
+            createIsOrGet(src, property, model.counters && property.mx);
+
+            if (!property.final_)
+                createSetter(src, property, dirtyWords, model.atomicDirty, model.counters && property.mx);
+
+            if (property.atomic)
+                createAtomicMethods(src, property, model);
+
+            if (!property.final_ && (prop.fluent() || (sbean.fluent() && !prop.fluent())))
+                createFluentSetter(src, property, model.simpleName);
+
+            if (prop.predicate() || (sbean.predicates() && !prop.nopredicate()))
+                createGuavaPredicate(src, property.type, property.capName, model.simpleName, property.primitive);
+
+            if (prop.extractor() || (sbean.extractors() && !prop.noextractor())) {
+                createGuavaExtractor(src, property.type, property.capName, model.simpleName, property.boxed);
+                if (sbean.primitiveExtractors() && property.primitive)
+                    createPrimitiveExtractor(src, property.type, property.capName, model.simpleName);
+            }
+
+            for (String method : property.delegateMethods)
+                src.println(method);
+
+            src.println();
+        }
+
+        if (dirtyWords > 0)
+            createDirtyTracking(src, model);
+
+        if (sbean.reset() || sbean.pool())
+            createReset(src, model, dirtyWords);
+
+        if (sbean.copy())
+            createCopy(src, model.simpleName, model.properties, dirtyWords, model.atomicDirty, model.bound, model.stamped);
+
+        if (sbean.binary() || dirtyWords > 0)
+            new BinaryCodecGenerator().createBinaryCodec(src, model.element, model.properties, messager, dirtyWords, model.atomicDirty);
+
+        if (sbean.immutable())
+            new ImmutableGenerator().createImmutable(src, model);
+
+        if (model.bound)
+            createPropertyChangeSupport(src, model);
+
+        if (model.stamped)
+            new SnapshotGenerator().createStampedSupport(src, model);
+
+        if (model.jfr)
+            createJfrEvents(src, model);
+
+        if (model.mxbean)
+            createMXBeanSupport(src, model);
+
+        createReadObject(src, model);
+
+        if (sbean.propertyEnum()) {
+            src.println();
+            src.println("    public enum Properties {");
+
+            boolean first = true;
+            for (BeanProperty property : model.properties) {
+                if (!first)
+                    src.println(",");
+                else
+                    first = false;
+                src.print("        " + property.name.toUpperCase() + "(\"" + property.name + "\")");
+            }
+            src.println(";");
+
+            src.println("        private String property;");
+            src.println("        private Properties(String property) { this.property = property; }");
+            src.println("        public String toString() { return property; }");
+            src.println("        /** This property's bit in copyFrom and dirty masks, for the first 64 properties. */");
+            src.println("        public long mask() { return 1L << ordinal(); }");
+            src.println("    }");
+        }
+        src.format("} // end of class definition\n");
+        src.close();
+        return text.toString();
+    }
+
+    /** Writes the companion sources a bean asks for. These go straight to the Filer, on the processing thread. */
+    void createCompanions(BeanModel model) throws IOException {
+        TypeElement beanTypeElement = model.element;
+        SBean sbean = model.sbean;
+
+        if (model.mxbean)
+            createMXBeanInterface(model);
+
+        if (sbean.columnar())
+            new ColumnsGenerator().generateColumns(beanTypeElement, model.properties, processingEnv);
+
+        if (sbean.flyweight())
+            new FlyweightGenerator().generateFlyweight(beanTypeElement, model.properties, processingEnv);
+
+        if (sbean.pool())
+            new PoolGenerator().generatePool(beanTypeElement, processingEnv);
+
+        if (sbean.xmlCodec())
+            new XmlCodecGenerator().generateXmlCodec(beanTypeElement, sbean, model.properties, processingEnv);
+
+        if (sbean.json())
+            new JsonCodecGenerator().generateJsonCodec(beanTypeElement, model.properties, processingEnv);
+
+        if (model.stamped)
+            new SnapshotGenerator().generateSnapshot(model, processingEnv);
+    }
+
+    /** Creates nnnBaseMXBean, which the base class implements. Each MXBean property is an attribute, writable
+     * unless final, and with counters each gets read-only attributes for its counts.
+     */
+    private void createMXBeanInterface(BeanModel model) throws IOException {
+        String genName = model.simpleName + "BaseMXBean";
+        JavaFileObject mxbeanSource = processingEnv.getFiler().createSourceFile(model.qualifiedName + "BaseMXBean", model.element);
         PrintWriter mxsrc = new PrintWriter(mxbeanSource.openOutputStream());
         try {
-            mxsrc.format("package %s;\n", packageElement(beanTypeElement).getQualifiedName());
+            mxsrc.format("package %s;\n", model.packageName);
             mxsrc.println();
+            createMXInterfaceDeclaration(mxsrc, model.sbean, genName);
+            for (BeanProperty p : model.properties) {
+                if (!p.mx)
+                    continue;
+                mxsrc.format("    %s %s();\n", p.type, p.getter());
+                if (!p.final_)
+                    mxsrc.format("    void %s(%s %s);\n", p.setter(), p.type, p.name);
+            }
+            if (model.counters) {
+                mxsrc.println();
+                for (BeanProperty p : model.properties) {
+                    if (!p.mx)
+                        continue;
+                    mxsrc.format("    long get%sReads();\n", p.capName);
+                    if (!p.final_)
+                        mxsrc.format("    long get%sWrites();\n", p.capName);
+                    if (p.bound)
+                        mxsrc.format("    long get%sListenerCalls();\n", p.capName);
+                }
+                mxsrc.println();
+                mxsrc.println("    /** Sets every read, write and listener count back to zero. */");
+                mxsrc.println("    void resetMXBeanCounters();");
+            }
+            mxsrc.println("} // end of class definition");
         } finally {
             mxsrc.close();
         }
     }
 
-    void createPropertyChangeSupport(PrintWriter src, SBean sbean, TypeElement typeElement) {
-        src.println("    protected final java.beans.PropertyChangeSupport propertyChangeSupport = new java.beans.PropertyChangeSupport(this); ");
+    /** Creates the JFR event types for a bean with traced properties. They are named after the base class, so each
+     * bean's events can be enabled on their own, and carry the runtime class of the bean.
+     */
+    void createJfrEvents(PrintWriter src, BeanModel model) {
+        String base = model.qualifiedName + "Base";
+        src.format("    @jdk.jfr.Name(\"%s.PropertySet\")\n", base);
+        src.format("    @jdk.jfr.Label(\"%s Property Set\")\n", model.simpleName);
+        src.println("    @jdk.jfr.Category({ \"BeanProcessor\" })");
+        src.println("    @jdk.jfr.Description(\"A setter was called.\")");
+        src.println("    static final class PropertySetEvent extends jdk.jfr.Event {");
+        src.println("        @jdk.jfr.Label(\"Bean Type\") Class<?> beanType;");
+        src.println("        @jdk.jfr.Label(\"Property\") String property;");
+        src.println("    }");
+        src.println();
+        if (!model.bound)
+            return;
+        src.format("    @jdk.jfr.Name(\"%s.PropertyChangeDispatch\")\n", base);
+        src.format("    @jdk.jfr.Label(\"%s Property Change Dispatch\")\n", model.simpleName);
+        src.println("    @jdk.jfr.Category({ \"BeanProcessor\" })");
+        src.println("    @jdk.jfr.Description(\"Property change listeners were called; the duration covers all of them.\")");
+        src.println("    static final class PropertyChangeDispatchEvent extends jdk.jfr.Event {");
+        src.println("        @jdk.jfr.Label(\"Bean Type\") Class<?> beanType;");
+        src.println("        @jdk.jfr.Label(\"Property\") String property;");
+        src.println("        @jdk.jfr.Label(\"Listeners\") int listeners;");
+        src.println("    }");
+        src.println();
+    }
+
+    /** Creates registerMXBean and unregisterMXBean, and with counters, the counters and their attributes. Counters
+     * are LongAdders, so that reads from many threads don't contend on one cache line; they live in one array, three
+     * per property ordinal (reads, writes, listener calls), with null for the ones a property doesn't need.
+     */
+    void createMXBeanSupport(PrintWriter src, BeanModel model) {
+        String mxName = model.simpleName + "BaseMXBean";
+        src.format("    /** The name this bean is registered under as a %s, or null. */\n", mxName);
+        src.println("    private transient volatile javax.management.ObjectName mxbeanName;");
+        src.println();
+        src.println("    /** Registers this bean with the platform MBean server as package:type=SimpleClassName,id=identityHash. */");
+        src.println("    public javax.management.ObjectName registerMXBean() throws javax.management.JMException {");
+        src.format("        return registerMXBean(new javax.management.ObjectName(\"%s:type=\" + getClass().getSimpleName() + \",id=\"\n", model.packageName);
+        src.println("                + Integer.toHexString(System.identityHashCode(this))));");
+        src.println("    }");
+        src.println();
+        src.println("    /** Registers this bean with the platform MBean server under name, returning the name it was registered as. */");
+        src.println("    public synchronized javax.management.ObjectName registerMXBean(javax.management.ObjectName name) throws javax.management.JMException {");
+        src.println("        if (mxbeanName != null) throw new IllegalStateException(\"Already registered as \" + mxbeanName);");
+        src.println("        mxbeanName = java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(this, name).getObjectName();");
+        src.println("        return mxbeanName;");
+        src.println("    }");
+        src.println();
+        src.println("    /** Removes this bean from the platform MBean server, if it was registered. */");
+        src.println("    public synchronized void unregisterMXBean() throws javax.management.JMException {");
+        src.println("        javax.management.ObjectName name = mxbeanName;");
+        src.println("        if (name == null) return;");
+        src.println("        mxbeanName = null;");
+        src.println("        java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);");
+        src.println("    }");
+        src.println();
+        if (!model.counters)
+            return;
+
+        StringBuilder counted = new StringBuilder();
+        for (BeanProperty p : model.properties) {
+            if (!p.mx)
+                continue;
+            counted.append(' ').append(3 * p.ordinal).append(',');
+            if (!p.final_)
+                counted.append(' ').append(3 * p.ordinal + 1).append(',');
+            if (p.bound)
+                counted.append(' ').append(3 * p.ordinal + 2).append(',');
+        }
+        src.format("    private static final int[] MXBEAN_COUNTED = {%s };\n", counted);
+        src.println("    private final transient java.util.concurrent.atomic.LongAdder[] mxbeanCounters = newMXBeanCounters();");
+        src.println();
+        src.println("    private static java.util.concurrent.atomic.LongAdder[] newMXBeanCounters() {");
+        src.format("        java.util.concurrent.atomic.LongAdder[] counters = new java.util.concurrent.atomic.LongAdder[%d];\n", 3 * model.properties.size());
+        src.println("        for (int i : MXBEAN_COUNTED)");
+        src.println("            counters[i] = new java.util.concurrent.atomic.LongAdder();");
+        src.println("        return counters;");
+        src.println("    }");
+        src.println();
+        for (BeanProperty p : model.properties) {
+            if (!p.mx)
+                continue;
+            src.format("    public long get%sReads() { return mxbeanCounters[%d].sum(); }\n", p.capName, 3 * p.ordinal);
+            if (!p.final_)
+                src.format("    public long get%sWrites() { return mxbeanCounters[%d].sum(); }\n", p.capName, 3 * p.ordinal + 1);
+            if (p.bound)
+                src.format("    public long get%sListenerCalls() { return mxbeanCounters[%d].sum(); }\n", p.capName, 3 * p.ordinal + 2);
+        }
+        src.println();
+        src.println("    public void resetMXBeanCounters() {");
+        src.println("        for (int i : MXBEAN_COUNTED)");
+        src.println("            mxbeanCounters[i].reset();");
+        src.println("    }");
+        src.println();
+    }
+
+    /** Creates the listener registry for bound properties. Listeners are kept in copy-on-write arrays indexed by
+     * property ordinal (the same order as the Properties enum), with listeners for all properties in the last slot.
+     * Nothing is allocated until a listener is added, and the fire methods return before boxing or creating an
+     * event when nobody is listening to the property.
+     */
+    void createPropertyChangeSupport(PrintWriter src, BeanModel model) {
+        SBean sbean = model.sbean;
+        String simpleName = model.simpleName;
+        List<BeanProperty> properties = model.properties;
+        int all = properties.size();
+        src.println("    /** Listeners by property ordinal, with listeners for all properties in the last slot. Null until the first");
+        src.println("     * listener is added. Each slot is replaced rather than modified, so firing never takes a lock. */");
+        src.println("    private transient volatile java.beans.PropertyChangeListener[][] propertyListeners;");
+        src.print("    private static final String[] PROPERTY_NAMES = {");
+        for (BeanProperty p : properties)
+            src.format(" \"%s\",", p.name);
+        src.println(" };");
+        src.println();
+        src.println("    private static int listenerOrdinal(String propertyName) {");
+        src.println("        for (int i = 0; i < PROPERTY_NAMES.length; i++)");
+        src.println("            if (PROPERTY_NAMES[i].equals(propertyName)) return i;");
+        src.println("        return PROPERTY_NAMES.length;");
+        src.println("    }");
+        src.println();
+        src.println("    private synchronized void addListener(int ordinal, java.beans.PropertyChangeListener listener) {");
+        src.format("        java.beans.PropertyChangeListener[][] l = propertyListeners == null ? new java.beans.PropertyChangeListener[%d][] : propertyListeners.clone();\n", all + 1);
+        src.println("        java.beans.PropertyChangeListener[] a = l[ordinal];");
+        src.println("        if (a == null) {");
+        src.println("            a = new java.beans.PropertyChangeListener[] { listener };");
+        src.println("        } else {");
+        src.println("            a = java.util.Arrays.copyOf(a, a.length + 1);");
+        src.println("            a[a.length - 1] = listener;");
+        src.println("        }");
+        src.println("        l[ordinal] = a;");
+        src.println("        propertyListeners = l;");
+        src.println("    }");
+        src.println();
+        src.println("    private synchronized void removeListener(int ordinal, java.beans.PropertyChangeListener listener, String proxyName) {");
+        src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+        src.println("        if (l == null || l[ordinal] == null) return;");
+        src.println("        java.beans.PropertyChangeListener[] a = l[ordinal];");
+        src.println("        for (int i = 0; i < a.length; i++) {");
+        src.println("            java.beans.PropertyChangeListener candidate = a[i];");
+        src.println("            if (candidate instanceof java.beans.PropertyChangeListenerProxy) {");
+        src.println("                java.beans.PropertyChangeListenerProxy proxy = (java.beans.PropertyChangeListenerProxy) candidate;");
+        src.println("                if (proxyName == null || !proxyName.equals(proxy.getPropertyName())) continue;");
+        src.println("                candidate = (java.beans.PropertyChangeListener) proxy.getListener();");
+        src.println("            } else if (proxyName != null) {");
+        src.println("                continue;");
+        src.println("            }");
+        src.println("            if (candidate.equals(listener)) {");
+        src.println("                l = l.clone();");
+        src.println("                if (a.length == 1) {");
+        src.println("                    l[ordinal] = null;");
+        src.println("                } else {");
+        src.println("                    java.beans.PropertyChangeListener[] b = new java.beans.PropertyChangeListener[a.length - 1];");
+        src.println("                    System.arraycopy(a, 0, b, 0, i);");
+        src.println("                    System.arraycopy(a, i + 1, b, i, a.length - i - 1);");
+        src.println("                    l[ordinal] = b;");
+        src.println("                }");
+        src.println("                for (java.beans.PropertyChangeListener[] s : l)");
+        src.println("                    if (s != null) { propertyListeners = l; return; }");
+        src.println("                propertyListeners = null;");
+        src.println("                return;");
+        src.println("            }");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        // Dispatch of traced properties is recorded as a PropertyChangeDispatch event, with the number of listeners called.
+        boolean traced = false, untraced = false;
+        for (BeanProperty p : properties) {
+            if (p.bound && p.jfr)
+                traced = true;
+            else if (p.bound)
+                untraced = true;
+        }
+        if (traced && untraced) {
+            src.print("    private static final boolean[] JFR_TRACED = {");
+            for (BeanProperty p : properties)
+                src.format(" %s,", p.jfr);
+            src.println(" };");
+        }
+        src.println("    private void dispatchPropertyChange(java.beans.PropertyChangeListener[][] l, int ordinal, java.beans.PropertyChangeEvent event) {");
+        if (model.counters) {
+            src.format("        if (ordinal < %d && mxbeanCounters[3 * ordinal + 2] != null)\n", all);
+            src.println("            mxbeanCounters[3 * ordinal + 2].increment();");
+        }
+        String indent = "        ", notify = "listener.propertyChange(event);";
+        if (traced) {
+            src.println("        PropertyChangeDispatchEvent jfrEvent = new PropertyChangeDispatchEvent();");
+            src.format("        boolean traced = %sjfrEvent.isEnabled();\n", untraced ? String.format("ordinal < %d && JFR_TRACED[ordinal] && ", all) : "");
+            src.println("        if (traced) jfrEvent.begin();");
+            src.println("        int notified = 0;");
+            src.println("        try {");
+            indent = "            ";
+            notify = "{ listener.propertyChange(event); notified++; }";
+        }
+        src.format("%sjava.beans.PropertyChangeListener[] a = l[%d];\n", indent, all);
+        src.format("%sif (a != null)\n", indent);
+        src.format("%s    for (java.beans.PropertyChangeListener listener : a)\n", indent);
+        src.format("%s        if (!(listener instanceof java.beans.PropertyChangeListenerProxy) || ((java.beans.PropertyChangeListenerProxy) listener).getPropertyName().equals(event.getPropertyName()))\n", indent);
+        src.format("%s            %s\n", indent, notify);
+        src.format("%sa = ordinal < %d ? l[ordinal] : null;\n", indent, all);
+        src.format("%sif (a != null)\n", indent);
+        src.format("%s    for (java.beans.PropertyChangeListener listener : a)\n", indent);
+        src.format("%s        %s\n", indent, notify);
+        if (traced) {
+            src.println("        } finally {");
+            src.println("            if (traced) {");
+            src.println("                jfrEvent.beanType = getClass();");
+            src.println("                jfrEvent.property = event.getPropertyName();");
+            src.println("                jfrEvent.listeners = notified;");
+            src.println("                jfrEvent.commit();");
+            src.println("            }");
+            src.println("        }");
+        }
+        src.println("    }");
+        src.println();
+        src.println("    /** Reports a change to any listeners, by property name. Subclasses can use this for properties they manage themselves. */");
+        src.println("    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {");
+        src.println("        firePropertyChange(listenerOrdinal(propertyName), propertyName, oldValue, newValue);");
+        src.println("    }");
+        src.println();
+        src.println("    protected void firePropertyChange(int ordinal, String propertyName, Object oldValue, Object newValue) {");
+        src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+        src.format("        if (l == null || (l[ordinal] == null && l[%d] == null)) return;\n", all);
+        src.println("        if (oldValue != null && newValue != null && oldValue.equals(newValue)) return;");
+        src.println("        dispatchPropertyChange(l, ordinal, new java.beans.PropertyChangeEvent(this, propertyName, oldValue, newValue));");
+        src.println("    }");
+        
+        // Primitive overloads, only for the types that bound properties actually use. Values are boxed only
+        // once we know someone is listening.
+        Set<String> fireTypes = new LinkedHashSet<String>();
+        for (BeanProperty p : properties)
+            if (p.bound && p.primitive)
+                fireTypes.add(p.type);
+        for (String fireType : fireTypes) {
+            String same;
+            if (fireType.equals("double"))
+                same = "Double.compare(oldValue, newValue) == 0";
+            else if (fireType.equals("float"))
+                same = "Float.compare(oldValue, newValue) == 0";
+            else
+                same = "oldValue == newValue";
+            src.println();
+            src.format("    protected void firePropertyChange(int ordinal, String propertyName, %s oldValue, %<s newValue) {\n", fireType);
+            src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+            src.format("        if (l == null || (l[ordinal] == null && l[%d] == null) || %s) return;\n", all, same);
+            src.println("        dispatchPropertyChange(l, ordinal, new java.beans.PropertyChangeEvent(this, propertyName, oldValue, newValue));");
+            src.println("    }");
+        }
+        src.println();
+        createBatchUpdate(src, properties, model.stamped);
         
         src.println("    /**\r\n" + 
         		"     * Add a PropertyChangeListener to the listener list.\r\n" + 
@@ -280,7 +866,14 @@ public class BeanProcessor extends AbstractProcessor {
         		"     *\r\n" + 
         		"     * @param listener  The PropertyChangeListener to be added\r\n" + 
         		"     */");
-        src.println("    public void addPropertyChangeListener(java.beans.PropertyChangeListener listener) { propertyChangeSupport.addPropertyChangeListener(listener); }");
+        src.println("    public void addPropertyChangeListener(java.beans.PropertyChangeListener listener) {");
+        src.println("        if (listener instanceof java.beans.PropertyChangeListenerProxy) {");
+        src.println("            java.beans.PropertyChangeListenerProxy proxy = (java.beans.PropertyChangeListenerProxy) listener;");
+        src.println("            addPropertyChangeListener(proxy.getPropertyName(), (java.beans.PropertyChangeListener) proxy.getListener());");
+        src.println("        } else if (listener != null) {");
+        src.format("            addListener(%d, listener);\n", all);
+        src.println("        }");
+        src.println("    }");
         
         src.println("    /**\r\n" + 
         		"     * Add a PropertyChangeListener for a specific property.  The listener\r\n" + 
@@ -295,7 +888,13 @@ public class BeanProcessor extends AbstractProcessor {
         		"     * @param propertyName  The name of the property to listen on.\r\n" + 
         		"     * @param listener  The PropertyChangeListener to be added\r\n" + 
         		"     */");
-        src.println("    public void addPropertyChangeListener(String propertyName, java.beans.PropertyChangeListener listener) { propertyChangeSupport.addPropertyChangeListener(propertyName, listener); }");
+        src.println("    public void addPropertyChangeListener(String propertyName, java.beans.PropertyChangeListener listener) {");
+        src.println("        if (propertyName == null || listener == null) return;");
+        src.println("        int ordinal = listenerOrdinal(propertyName);");
+        src.format("        addListener(ordinal, ordinal == %d ? new java.beans.PropertyChangeListenerProxy(propertyName, listener) : listener);\n", all);
+        src.println("    }");
+        if (sbean.propertyEnum())
+            src.println("    public void addPropertyChangeListener(Properties property, java.beans.PropertyChangeListener listener) { if (listener != null) addListener(property.ordinal(), listener); }");
         
         src.println("    /**\r\n" + 
         		"     * Remove a PropertyChangeListener from the listener list.\r\n" + 
@@ -308,8 +907,21 @@ public class BeanProcessor extends AbstractProcessor {
         		"     *\r\n" + 
         		"     * @param listener  The PropertyChangeListener to be removed\r\n" + 
         		"     */");
-        src.println("    public void removePropertyChangeListener(java.beans.PropertyChangeListener listener) { propertyChangeSupport.removePropertyChangeListener(listener); }");
-        src.println("    public void removePropertyChangeListener(String propertyName, java.beans.PropertyChangeListener listener) { propertyChangeSupport.removePropertyChangeListener(propertyName, listener); }");
+        src.println("    public void removePropertyChangeListener(java.beans.PropertyChangeListener listener) {");
+        src.println("        if (listener instanceof java.beans.PropertyChangeListenerProxy) {");
+        src.println("            java.beans.PropertyChangeListenerProxy proxy = (java.beans.PropertyChangeListenerProxy) listener;");
+        src.println("            removePropertyChangeListener(proxy.getPropertyName(), (java.beans.PropertyChangeListener) proxy.getListener());");
+        src.println("        } else if (listener != null) {");
+        src.format("            removeListener(%d, listener, null);\n", all);
+        src.println("        }");
+        src.println("    }");
+        src.println("    public void removePropertyChangeListener(String propertyName, java.beans.PropertyChangeListener listener) {");
+        src.println("        if (propertyName == null || listener == null) return;");
+        src.println("        int ordinal = listenerOrdinal(propertyName);");
+        src.format("        removeListener(ordinal, listener, ordinal == %d ? propertyName : null);\n", all);
+        src.println("    }");
+        if (sbean.propertyEnum())
+            src.println("    public void removePropertyChangeListener(Properties property, java.beans.PropertyChangeListener listener) { if (listener != null) removeListener(property.ordinal(), listener, null); }");
         
         src.println("    /**\r\n" + 
         		"     * Check if there are any listeners for a specific property, including\r\n" + 
@@ -319,7 +931,17 @@ public class BeanProcessor extends AbstractProcessor {
         		"     * @param propertyName  the property name.\r\n" + 
         		"     * @return true if there are one or more listeners for the given property\r\n" + 
         		"     */");
-        src.println("    public boolean hasListeners(String propertyName) { return propertyChangeSupport.hasListeners(propertyName); }");
+        src.println("    public boolean hasListeners(String propertyName) {");
+        src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+        src.println("        if (l == null) return false;");
+        src.format("        if (l[%d] != null)\n", all);
+        src.format("            for (java.beans.PropertyChangeListener listener : l[%d])\n", all);
+        src.println("                if (!(listener instanceof java.beans.PropertyChangeListenerProxy) || ((java.beans.PropertyChangeListenerProxy) listener).getPropertyName().equals(propertyName))");
+        src.println("                    return true;");
+        src.println("        if (propertyName == null) return false;");
+        src.println("        int ordinal = listenerOrdinal(propertyName);");
+        src.format("        return ordinal < %d && l[ordinal] != null;\n", all);
+        src.println("    }");
         
         src.println("    /**\r\n" + 
         		"     * Returns an array of all the listeners that were added to the\r\n" + 
@@ -352,7 +974,18 @@ public class BeanProcessor extends AbstractProcessor {
         		"     *         empty array if no listeners have been added\r\n" + 
         		"     * @since 1.4\r\n" + 
         		"     */");
-        src.println("    public java.beans.PropertyChangeListener[] getPropertyChangeListeners() { return propertyChangeSupport.getPropertyChangeListeners(); }");
+        src.println("    public java.beans.PropertyChangeListener[] getPropertyChangeListeners() {");
+        src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+        src.println("        java.util.List<java.beans.PropertyChangeListener> result = new java.util.ArrayList<java.beans.PropertyChangeListener>();");
+        src.println("        if (l != null) {");
+        src.format("            if (l[%d] != null) result.addAll(java.util.Arrays.asList(l[%<d]));\n", all);
+        src.format("            for (int i = 0; i < %d; i++)\n", all);
+        src.println("                if (l[i] != null)");
+        src.println("                    for (java.beans.PropertyChangeListener listener : l[i])");
+        src.println("                        result.add(new java.beans.PropertyChangeListenerProxy(PROPERTY_NAMES[i], listener));");
+        src.println("        }");
+        src.println("        return result.toArray(new java.beans.PropertyChangeListener[result.size()]);");
+        src.println("    }");
         
         src.println("    /**\r\n" + 
         		"     * Returns an array of all the listeners which have been associated \r\n" + 
@@ -365,32 +998,378 @@ public class BeanProcessor extends AbstractProcessor {
         		"     *         returned.\r\n" + 
         		"     * @since 1.4\r\n" + 
         		"     */");
-        src.println("    public java.beans.PropertyChangeListener[] getPropertyChangeListeners(String propertyName) { return propertyChangeSupport.getPropertyChangeListeners(propertyName); }");
+        src.println("    public java.beans.PropertyChangeListener[] getPropertyChangeListeners(String propertyName) {");
+        src.println("        java.beans.PropertyChangeListener[][] l = propertyListeners;");
+        src.println("        if (l == null || propertyName == null) return new java.beans.PropertyChangeListener[0];");
+        src.println("        int ordinal = listenerOrdinal(propertyName);");
+        src.format("        if (ordinal < %d) return l[ordinal] == null ? new java.beans.PropertyChangeListener[0] : l[ordinal].clone();\n", all);
+        src.println("        java.util.List<java.beans.PropertyChangeListener> result = new java.util.ArrayList<java.beans.PropertyChangeListener>();");
+        src.println("        if (l[ordinal] != null)");
+        src.println("            for (java.beans.PropertyChangeListener listener : l[ordinal])");
+        src.println("                if (listener instanceof java.beans.PropertyChangeListenerProxy && ((java.beans.PropertyChangeListenerProxy) listener).getPropertyName().equals(propertyName))");
+        src.println("                    result.add((java.beans.PropertyChangeListener) ((java.beans.PropertyChangeListenerProxy) listener).getListener());");
+        src.println("        return result.toArray(new java.beans.PropertyChangeListener[result.size()]);");
+        src.println("    }");
         
         if (sbean.fluent()) {
             src.format(
                     "    public %1$s listen(java.beans.PropertyChangeListener listener) { addPropertyChangeListener(listener);  return (%1$s)this;}\n",
-                    typeElement.getSimpleName());
+                    simpleName);
             src.format(
                     "    public %1$s listen(String propertyName, java.beans.PropertyChangeListener listener) { addPropertyChangeListener(propertyName, listener);  return (%1$s)this;}\n",
-                    typeElement.getSimpleName());
+                    simpleName);
         }
     }
 
-    void createClassDeclaration(PrintWriter src, SBean sbean, String genName) {
-        if (sbean.javadoc().length() > 0) {
-            src.format("/** %s */\n", sbean.javadoc());
-        }
-        src.format("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")\n");
+    /** Creates readObject when the base class has transient state that its field initializers set up, so that a
+     * deserialized bean gets it back. It only runs when the base class is itself Serializable, through its superclass;
+     * otherwise serialization calls the base class constructor, which runs the initializers.
+     */
+    void createReadObject(PrintWriter src, BeanModel model) {
+        List<String> statements = new ArrayList<String>();
+        if (model.dirtyWords > 1)
+            statements.add(String.format("dirtyMask = new long[%d]", model.dirtyWords));
+        if (statements.isEmpty())
+            return;
+        src.println("    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {");
+        src.println("        in.defaultReadObject();");
+        for (String statement : statements)
+            STATEMENT.print(src, statement);
+        src.println("    }");
+        src.println();
+    }
 
-        String extend;
-        TypeMirror extendMirror = mirrorExtend(sbean);
-        if (extendMirror.toString().equals(Void.class.getName())) {
-            extend = "";
+    /** Creates the dirty mask for trackDirty. Setters set the bit for their property ordinal whenever they are
+     * called, so it records writes rather than changes. Up to 64 properties fit in a long; more use a long[]. When
+     * ATOMIC properties may be updated from several threads at once, the long is volatile and bits are set and
+     * cleared with compare-and-set, so that no thread's bit is lost.
+     */
+    void createDirtyTracking(PrintWriter src, BeanModel model) {
+        int dirtyWords = model.dirtyWords;
+        String base = model.simpleName + "Base";
+        src.println("    // Bit n is set when the property with ordinal n has been set since the last clearDirty().");
+        if (model.atomicDirty) {
+            src.println("    private transient volatile long dirtyMask;");
+            src.format("    private static final java.util.concurrent.atomic.AtomicLongFieldUpdater<%s> DIRTY_UPDATER =\n", base);
+            src.format("            java.util.concurrent.atomic.AtomicLongFieldUpdater.newUpdater(%s.class, \"dirtyMask\");\n", base);
+            src.println();
+            src.println("    /** The properties set since the last clearDirty(), one bit per property ordinal. */");
+            src.println("    public long dirtyMask() { return dirtyMask; }");
+            src.println("    public boolean isDirty() { return dirtyMask != 0; }");
+            src.println("    public void clearDirty() { dirtyMask = 0; }");
+            src.println();
+            src.println("    private void markDirty(long bits) {");
+            src.println("        long mask;");
+            src.println("        do {");
+            src.println("            mask = dirtyMask;");
+            src.println("        } while ((mask & bits) != bits && !DIRTY_UPDATER.compareAndSet(this, mask, mask | bits));");
+            src.println("    }");
+            src.println();
+            src.println("    private void unmarkDirty(long bits) {");
+            src.println("        long mask;");
+            src.println("        do {");
+            src.println("            mask = dirtyMask;");
+            src.println("        } while ((mask & bits) != 0 && !DIRTY_UPDATER.compareAndSet(this, mask, mask & ~bits));");
+            src.println("    }");
+        } else if (dirtyWords == 1) {
+            src.println("    private transient long dirtyMask;");
+            src.println();
+            src.println("    /** The properties set since the last clearDirty(), one bit per property ordinal. */");
+            src.println("    public long dirtyMask() { return dirtyMask; }");
+            src.println("    public boolean isDirty() { return dirtyMask != 0; }");
+            src.println("    public void clearDirty() { dirtyMask = 0; }");
         } else {
-            extend = "extends " + extendMirror.toString();
+            src.format("    private transient long[] dirtyMask = new long[%d];\n", dirtyWords);
+            src.println();
+            src.println("    /** A copy of the properties set since the last clearDirty(); property ordinal n is bit n % 64 of word n / 64. */");
+            src.println("    public long[] dirtyMask() { return dirtyMask.clone(); }");
+            src.println("    public boolean isDirty() {");
+            src.println("        for (long word : dirtyMask)");
+            src.println("            if (word != 0) return true;");
+            src.println("        return false;");
+            src.println("    }");
+            src.println("    public void clearDirty() { java.util.Arrays.fill(dirtyMask, 0L); }");
+        }
+        src.println();
+    }
+
+    /** Creates reset(), which puts every property back to its init value, or the type's default. Lists that have
+     * an init value get a fresh one, since the current list may belong to the caller or be shared; create fields
+     * are cleared in place where they can be, and otherwise re-created.
+     * Fields are written directly and no change events are fired. Listeners stay registered, unless the bean is
+     * pooled: a released bean goes to whoever acquires it next, so its listeners are dropped and its MXBean counters
+     * zeroed along with its values. A stamped bean holds its write lock throughout, and releases it in a finally block
+     * in case an init expression throws.
+     */
+    void createReset(PrintWriter src, BeanModel model, int dirtyWords) {
+        List<BeanProperty> properties = model.properties;
+        boolean stamped = model.stamped, pooled = model.sbean.pool();
+        if (pooled && (model.bound || model.counters))
+            src.println("    /** Restores every property to its initial value, without firing change events, and forgets this bean's listeners\n"
+                    + "     * and counts, so that it can be handed out again by the pool. */");
+        else
+            src.println("    /** Restores every property to its initial value, without firing change events. */");
+        src.println("    public void reset() {");
+        String indent = "        ";
+        if (stamped) {
+            src.println("        long lockStamp = writeStamp();");
+            src.println("        try {");
+            indent += "    ";
+        }
+        for (BeanProperty p : properties) {
+            String init = p.prop.init();
+            if (p.element != null) {
+                if (init.isEmpty() && !p.final_) {
+                    src.format("%s%s = null;\n", indent, p.name);
+                } else if (p.final_) {
+                    src.format("%s%s.clear();\n", indent, p.name);
+                } else {
+                    src.format("%s%s = %s;\n", indent, p.name, init);
+                }
+            } else if (p.final_) {
+                continue;
+            } else if (p.fx) {
+                src.format("%s%s.set(%s);\n", indent, p.name, defaultValue(p.type));
+            } else if (p.prop.create()) {
+                if (p.type.equals("java.lang.StringBuilder") || p.type.equals("java.lang.StringBuffer"))
+                    src.format("%s%s.setLength(0);\n", indent, p.name);
+                else if (p.clearable)
+                    src.format("%s%s.clear();\n", indent, p.name);
+                else
+                    src.format("%s%s = new %s();\n", indent, p.name, p.type);
+            } else {
+                src.format("%s%s = %s;\n", indent, p.name, init.isEmpty() ? defaultValue(p.type) : init);
+            }
+        }
+        if (stamped) {
+            src.println("        } finally {");
+            src.println("            releaseStamp(lockStamp);");
+            src.println("        }");
+        }
+        if (dirtyWords > 0)
+            src.println("        clearDirty();");
+        if (pooled && model.bound)
+            src.println("        synchronized (this) { propertyListeners = null; }");
+        if (pooled && model.counters)
+            src.println("        resetMXBeanCounters();");
+        src.println("    }");
+        src.println();
+    }
+
+    /** Creates copyFrom, which copies fields directly from another instance. Bound beans run the copy as a batch
+     * update, so listeners hear about each changed property once, at the end; the old values are only boxed when
+     * someone is listening. A list is copied into a new ArrayList, which the bean remembers, and later copies reuse
+     * it as long as it is still the property's value; a list that came from a setter may be the caller's or shared,
+     * so it is never written to. Create fields belong
+     * to their bean, so builders, collections and maps are copied by content and other create fields are left
+     * alone; no events are fired for them, since the field still holds the same instance. Stamped lists are always
+     * replaced by a new copy, because snapshot() shares the list it read after releasing the lock. A stamped bean holds
+     * its write lock for the whole copy, inside the batch so that listeners run after it is released.
+     */
+    void createCopy(PrintWriter src, String simpleName, List<BeanProperty> properties, int dirtyWords, boolean atomicDirty,
+            boolean batch, boolean stamped) {
+        String base = simpleName + "Base";
+        boolean lists = false;
+        for (BeanProperty p : properties) {
+            if (p.element != null && !p.final_ && !p.stamped)
+                src.format("    /** The list copyFrom last made for %s, which the next copy may reuse. */\n"
+                        + "    private transient java.util.List<%s> %sCopy;\n", p.name, p.element, p.name);
+        }
+        src.println("    /** Copies every property from other. */");
+        src.format("    public void copyFrom(%s other) {\n", base);
+        src.println("        copyFrom(other, -1L);");
+        src.println("    }");
+        src.println();
+        src.println("    /** Copies the properties whose ordinal bits are set in mask; see Properties.mask(). Properties past the first");
+        src.println("     * 64 are only copied when mask is -1. */");
+        src.format("    public void copyFrom(%s other, long mask) {\n", base);
+        src.println("        if (other == this) return;");
+        String indent = "        ";
+        if (batch) {
+            src.println("        beginUpdate();");
+            src.println("        try {");
+            indent += "    ";
+        }
+        if (stamped) {
+            src.format("%slong lockStamp = writeStamp();\n", indent);
+            src.format("%stry {\n", indent);
+            indent += "    ";
         }
+        for (BeanProperty p : properties) {
+            String contentCopy = null;
+            if (p.prop.create() && p.element == null && !p.fx) {
+                if (p.type.equals("java.lang.StringBuilder") || p.type.equals("java.lang.StringBuffer"))
+                    contentCopy = String.format("%1$s.setLength(0); %1$s.append(other.%1$s);", p.name);
+                else if (p.clearable)
+                    contentCopy = String.format("%1$s.clear(); %1$s.%2$s(other.%1$s);", p.name,
+                            p.map ? "putAll" : "addAll");
+                else
+                    continue;
+            }
+            if (p.final_)
+                continue;
+            if (p.ordinal < 64)
+                src.format("%sif ((mask & (1L << %d)) != 0) {\n", indent, p.ordinal);
+            else
+                src.format("%sif (mask == -1L) {\n", indent);
+            if (dirtyWords > 0)
+                src.format("%s    %s;\n", indent, dirtyMark(p.ordinal, dirtyWords, atomicDirty));
+            if (p.element != null) {
+                lists = true;
+                if (p.bound)
+                    src.format("%s    if (propertyListeners != null) deferPropertyChange(%d, %s == null ? null : new java.util.ArrayList<%s>(%3$s));\n",
+                            indent, p.ordinal, p.name, p.element);
+                if (p.stamped)
+                    src.format("%s    %2$s = copyList(other.%2$s, null);\n", indent, p.name);
+                else
+                    src.format("%s    %2$s = %2$sCopy = copyList(other.%2$s, %2$s == %2$sCopy ? %2$s : null);\n", indent, p.name);
+            } else if (contentCopy != null) {
+                src.format("%s    %s\n", indent, contentCopy);
+            } else if (p.fx) {
+                src.format("%s    %2$s.set(other.%2$s.get());\n", indent, p.name);
+            } else {
+                if (p.bound)
+                    src.format("%s    if (propertyListeners != null) deferPropertyChange(%d, %s);\n", indent, p.ordinal, p.name);
+                src.format("%s    %2$s = other.%2$s;\n", indent, p.name);
+            }
+            src.format("%s}\n", indent);
+        }
+        if (stamped) {
+            indent = indent.substring(4);
+            src.format("%s} finally {\n", indent);
+            src.format("%s    releaseStamp(lockStamp);\n", indent);
+            src.format("%s}\n", indent);
+        }
+        if (batch) {
+            src.println("        } finally {");
+            src.println("            endUpdate();");
+            src.println("        }");
+        }
+        src.println("    }");
+        src.println();
+        if (lists) {
+            src.println("    /** Copies from into to, a list an earlier copy made, or into a new ArrayList when to is null. */");
+            src.println("    private static <E> java.util.List<E> copyList(java.util.List<E> from, java.util.List<E> to) {");
+            src.println("        if (from == null) return null;");
+            src.println("        if (to == null) return new java.util.ArrayList<E>(from);");
+            src.println("        if (to == from) return to;");
+            src.println("        to.clear();");
+            src.println("        if (from instanceof java.util.RandomAccess) {");
+            src.println("            for (int i = 0, n = from.size(); i < n; i++)");
+            src.println("                to.add(from.get(i));");
+            src.println("        } else {");
+            src.println("            for (E e : from)");
+            src.println("                to.add(e);");
+            src.println("        }");
+            src.println("        return to;");
+            src.println("    }");
+            src.println();
+        }
+    }
+
+    boolean isSubtype(String type, String superType) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(type);
+        TypeElement superElement = processingEnv.getElementUtils().getTypeElement(superType);
+        if (element == null || superElement == null)
+            return false;
+        Types types = processingEnv.getTypeUtils();
+        return types.isSubtype(types.erasure(element.asType()), types.erasure(superElement.asType()));
+    }
+
+    static String defaultValue(String type) {
+        if (type.equals("boolean"))
+            return "false";
+        if (type.equals("char"))
+            return "'\\0'";
+        if (type.equals("byte") || type.equals("short") || type.equals("int") || type.equals("long") || type.equals("float")
+                || type.equals("double"))
+            return "(" + type + ") 0";
+        return "null";
+    }
+
+    /** A generated statement that marks a property dirty. */
+    static String dirtyMark(int ordinal, int dirtyWords, boolean atomicDirty) {
+        if (atomicDirty)
+            return String.format("markDirty(1L << %d)", ordinal);
+        if (dirtyWords == 1)
+            return String.format("dirtyMask |= 1L << %d", ordinal);
+        return String.format("dirtyMask[%d] |= 1L << %d", ordinal >>> 6, ordinal & 63);
+    }
+
+    /** A generated statement that clears the dirty bit of the property whose ordinal is the value of expression. */
+    static String dirtyClear(String ordinal, int dirtyWords, boolean atomicDirty) {
+        if (atomicDirty)
+            return String.format("unmarkDirty(1L << %s)", ordinal);
+        if (dirtyWords == 1)
+            return String.format("dirtyMask &= ~(1L << %s)", ordinal);
+        return String.format("dirtyMask[%1$s >>> 6] &= ~(1L << %1$s)", ordinal);
+    }
+
+    /** A generated expression that is true if a property is dirty. */
+    static String dirtyTest(int ordinal, int dirtyWords) {
+        if (dirtyWords == 1)
+            return String.format("(dirtyMask & (1L << %d)) != 0", ordinal);
+        return String.format("(dirtyMask[%d] & (1L << %d)) != 0", ordinal >>> 6, ordinal & 63);
+    }
+
+    /** Creates beginUpdate/endUpdate. Inside an update, bound setters write the new value but only record the
+     * original value of each property; endUpdate then fires a single event per changed property, from the
+     * original value to the final one. ATOMIC properties, which may change on any thread, always fire at once. A
+     * stamped bean runs the changes under its write lock, so the events follow the release of the lock.
+     */
+    void createBatchUpdate(PrintWriter src, List<BeanProperty> properties, boolean stamped) {
+        src.println("    private transient int updateDepth;");
+        src.println("    private transient Object[] updateOldValues;");
+        src.println("    private static final Object UPDATE_NULL = new Object();");
+        src.println();
+        src.println("    /** Starts a batch of changes. Until the matching endUpdate(), bound setters record the original value");
+        src.println("     * of each property they change rather than notifying listeners. Updates nest, and are meant to be");
+        src.println("     * used from one thread at a time; ATOMIC properties therefore notify listeners straight away. */");
+        src.println("    public void beginUpdate() { updateDepth++; }");
+        src.println();
+        src.println("    /** Ends a batch of changes. When the outermost update ends, listeners receive one event for each property");
+        src.println("     * that changed, carrying the value from before the update and the value now. */");
+        src.println("    public void endUpdate() {");
+        src.println("        if (updateDepth == 0) throw new IllegalStateException(\"endUpdate() without beginUpdate()\");");
+        src.println("        if (--updateDepth > 0 || updateOldValues == null) return;");
+        src.println("        Object[] oldValues = updateOldValues;");
+        src.println("        updateOldValues = null;");
+        src.println("        for (int i = 0; i < oldValues.length; i++)");
+        src.println("            if (oldValues[i] != null)");
+        src.println("                firePropertyChange(i, PROPERTY_NAMES[i], oldValues[i] == UPDATE_NULL ? null : oldValues[i], updatedValue(i));");
+        src.println("    }");
+        src.println();
+        src.println("    /** Runs changes inside beginUpdate() and endUpdate(). */");
+        src.println("    public void update(Runnable changes) {");
+        src.println("        beginUpdate();");
+        src.println("        try {");
+        src.println(stamped ? "            writeLocked(changes);" : "            changes.run();");
+        src.println("        } finally {");
+        src.println("            endUpdate();");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        src.println("    private void deferPropertyChange(int ordinal, Object oldValue) {");
+        src.format("        if (updateOldValues == null) updateOldValues = new Object[%d];\n", properties.size());
+        src.println("        if (updateOldValues[ordinal] == null) updateOldValues[ordinal] = oldValue == null ? UPDATE_NULL : oldValue;");
+        src.println("    }");
+        src.println();
+        src.println("    private Object updatedValue(int ordinal) {");
+        src.println("        switch (ordinal) {");
+        for (BeanProperty p : properties)
+            if (p.bound)
+                src.format("        case %d: return %s;\n", p.ordinal, p.name);
+        src.println("        default: return null;");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+    }
 
+    void createClassDeclaration(PrintWriter src, SBean sbean, String genName, String extend) {
+        if (sbean.javadoc().length() > 0) {
+            src.format("/** %s */\n", sbean.javadoc());
+        }
+        src.format("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")\n");
         src.format("abstract public class %s %s {\n", genName, extend);
         src.println();
     }
@@ -401,20 +1380,16 @@ public class BeanProcessor extends AbstractProcessor {
         }
         src.format("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")\n");
 
-        src.format("public interface %s %s {\n", genName);
+        src.format("public interface %s {\n", genName);
         src.println();
     }
-    void createGuavaExtractor(PrintWriter src, String type, String capName, Element beanElement, TypeElement typeElement,
-            String boxed) {
-        String ptype = "com.google.common.base.Function<" + typeElement.getSimpleName() + "Base," + boxed + ">";
-        src.format(
-                "    public final static %1$s %2$s = new %1$s(){ public %5$s apply(%4$sBase value) { return value.%6$s%3$s(); }};\n",
-                ptype, capName.toUpperCase(), capName, beanElement.getSimpleName(), boxed, isOrGet(type));
+    void createGuavaExtractor(PrintWriter src, String type, String capName, String simpleName, String boxed) {
+        String ptype = "com.google.common.base.Function<" + simpleName + "Base," + boxed + ">";
+        EXTRACTOR.print(src, ptype, capName.toUpperCase(), capName, simpleName, boxed, isOrGet(type));
     }
 
-    void createGuavaPredicate(PrintWriter src, String type, String capName, Element beanElement, TypeElement typeElement,
-            boolean isPrimitive) {
-        String ptype = "com.google.common.base.Predicate<" + typeElement.getSimpleName() + "Base>";
+    void createGuavaPredicate(PrintWriter src, String type, String capName, String simpleName, boolean isPrimitive) {
+        String ptype = "com.google.common.base.Predicate<" + simpleName + "Base>";
         String isOrHas;
         String body;
         if (type.equals(boolean.class.getName())) {
@@ -428,39 +1403,164 @@ public class BeanProcessor extends AbstractProcessor {
             isOrHas = null;
         }
         if (isOrHas != null) {
-            src.format("    public final static %1$s %2$s = new %1$s(){ public boolean apply(%4$sBase value) { " + "%3$s  } };\n", ptype, isOrHas + capName.toUpperCase(), body, beanElement.getSimpleName());
+            PREDICATE.print(src, ptype, isOrHas + capName.toUpperCase(), body, simpleName);
+        } else if (isPrimitive) {
+            // Numeric primitives get comparison predicate factories; the bound is captured unboxed.
+            String[][] comparisons = { { "GT", ">" }, { "GE", ">=" }, { "LT", "<" }, { "LE", "<=" }, { "EQ", "==" } };
+            for (String[] comparison : comparisons) {
+                COMPARISON.print(src, ptype, capName.toUpperCase(), comparison[0], type, simpleName, capName, comparison[1]);
+            }
         }
     }
 
-    void createFluentSetter(PrintWriter src, SProperty prop, String type, String capName, TypeElement typeElement) {
-        src.format("    public %1$s %2$s(%3$s fluentValue) { set%4$s(fluentValue); return (%1$s)this; }\n",
-                typeElement.getSimpleName(), prop.name(), type, capName);
+    /** Creates an unboxed java.util.function extractor for a primitive property, named 
+     * like the guava extractor with an _AS_INT, _AS_LONG or _AS_DOUBLE suffix. Booleans are skipped,
+     * since the IS_ predicate already covers them without boxing.
+     */
+    void createPrimitiveExtractor(PrintWriter src, String type, String capName, String simpleName) {
+        String kind;
+        if (type.equals("long"))
+            kind = "Long";
+        else if (type.equals("double") || type.equals("float"))
+            kind = "Double";
+        else if (type.equals("boolean"))
+            return;
+        else
+            kind = "Int";
+        String ftype = "java.util.function.To" + kind + "Function<" + simpleName + "Base>";
+        PRIMITIVE_EXTRACTOR.print(src, ftype, capName.toUpperCase(), kind.toUpperCase(), kind.toLowerCase(), kind, simpleName, isOrGet(type), capName);
     }
 
-    boolean createSetter(PrintWriter src, SBean sbean, SProperty prop, String type, String capName, boolean isFX) {
-        boolean generatePropertyChangeSupport = false;
-        src.format("    public void set%s(%s %s) {\n", capName, type, prop.name());
-        if (!isFX && (prop.bound() || (sbean.bound() && !prop.unbound()))) {
-            generatePropertyChangeSupport = true;
-            src.format("        %s oldValue = this.%s;\n", type, prop.name());
-            src.format("        this.%s = %1$s;\n", prop.name());
-            src.format("        propertyChangeSupport.firePropertyChange(\"%s\", oldValue, %1$s);\n", prop.name());
-        } else {
-            if (isFX) {
-                src.format("        this.%3$s.set(%3$s);\n", capName, type, prop.name());
+    void createFluentSetter(PrintWriter src, BeanProperty p, String simpleName) {
+        FLUENT_SETTER.print(src, simpleName, p.name, p.type, p.capName);
+    }
+
+    void createSetter(PrintWriter src, BeanProperty p, int dirtyWords, boolean atomicDirty, boolean counted) {
+        SETTER.print(src, p.setter(), p.type, p.name);
+        if (counted)
+            STATEMENT.print(src, "mxbeanCounters[" + (3 * p.ordinal + 1) + "].increment()");
+        if (p.jfr) {
+            src.println("        PropertySetEvent jfrEvent = new PropertySetEvent();");
+            src.println("        if (jfrEvent.isEnabled()) {");
+            src.println("            jfrEvent.beanType = getClass();");
+            src.format("            jfrEvent.property = \"%s\";\n", p.name);
+            src.println("            jfrEvent.commit();");
+            src.println("        }");
+        }
+        if (dirtyWords > 0)
+            STATEMENT.print(src, dirtyMark(p.ordinal, dirtyWords, atomicDirty));
+        // snapshot() shares a STAMPED list, so the bean keeps its own copy, which its getter doesn't let callers change.
+        if (p.stamped && p.element != null)
+            src.format("        %1$s = %1$s == null ? null : new java.util.ArrayList<%2$s>(%1$s);\n", p.name, p.element);
+        if (p.stamped)
+            STATEMENT.print(src, "long lockStamp = writeStamp()");
+        if (p.bound) {
+            if (p.atomic) {
+                src.format("        %s oldValue = %s.getAndSet(this, %s);\n", p.type, updater(p), p.name);
             } else {
-                src.format("        this.%3$s = %3$s;\n", capName, type, prop.name());
+                src.format("        %s oldValue = this.%s;\n", p.type, p.name);
+                src.format("        this.%s = %1$s;\n", p.name);
+            }
+            if (p.stamped)
+                STATEMENT.print(src, "releaseStamp(lockStamp)");
+            // ATOMIC setters may run on any thread, so they stay out of the single-threaded batch state.
+            if (!p.atomic) {
+                src.println("        if (updateDepth > 0) {");
+                src.format("            if (propertyListeners != null) deferPropertyChange(%d, oldValue);\n", p.ordinal);
+                src.println("            return;");
+                src.println("        }");
             }
+            src.format("        firePropertyChange(%d, \"%s\", oldValue, %2$s);\n", p.ordinal, p.name);
+        } else if (p.fx) {
+            src.format("        this.%s.set(%1$s);\n", p.name);
+        } else {
+            ASSIGN.print(src, p.name);
+            if (p.stamped)
+                STATEMENT.print(src, "releaseStamp(lockStamp)");
         }
         src.println("    }");
-        return generatePropertyChangeSupport;
     }
 
-    String createIsOrGet(PrintWriter src, SProperty prop, String type, String capName, boolean isFX) {
-        String fx = isFX ? ".get()" : "";
-        String content = String.format("    public %s %s%s() { return %s%s; }\n", type, isOrGet(type), capName, prop.name(), fx);
-        src.print(content);
-        return content;
+    static String updater(BeanProperty p) {
+        return p.capName.toUpperCase() + "_UPDATER";
+    }
+
+    /** Creates the field updater and atomic methods for an ATOMIC property. Like the setter, each successful update
+     * marks the property dirty and notifies listeners of bound properties, straight away even inside a batch update,
+     * since the batch belongs to one thread and these methods may be called from any. lazySet, which doesn't read
+     * the old value, is only generated for unbound properties.
+     */
+    void createAtomicMethods(PrintWriter src, BeanProperty p, BeanModel model) {
+        String base = model.simpleName + "Base", updater = updater(p), t = p.type, cap = p.capName;
+        boolean numeric = t.equals("int") || t.equals("long");
+        String atomicType = t.equals("int") ? "Integer" : t.equals("long") ? "Long" : "Reference";
+        String updaterType = "java.util.concurrent.atomic.Atomic" + atomicType + "FieldUpdater<" + base + (numeric ? "" : ", " + t) + ">";
+        String create = String.format("java.util.concurrent.atomic.Atomic%sFieldUpdater.newUpdater(%s.class, %s\"%s\")", atomicType, base,
+                numeric ? "" : p.erasure() + ".class, ", p.name);
+        if (!t.equals(p.erasure())) {
+            src.println("    @SuppressWarnings(\"unchecked\")");
+            create = "(" + updaterType + ") (java.util.concurrent.atomic.AtomicReferenceFieldUpdater<?, ?>) " + create;
+        }
+        src.format("    private static final %s %s = %s;\n", updaterType, updater, create);
+
+        src.format("    /** Sets %s to update if it is currently %s. */\n", p.name, numeric ? "expect" : "the same instance as expect");
+        src.format("    public boolean compareAndSet%s(%s expect, %2$s update) {\n", cap, t);
+        src.format("        if (!%s.compareAndSet(this, expect, update)) return false;\n", updater);
+        atomicChange(src, p, model, "expect", "update");
+        src.println("        return true;");
+        src.println("    }");
+
+        src.format("    public %s getAndSet%s(%1$s value) {\n", t, cap);
+        src.format("        %s old = %s.getAndSet(this, value);\n", t, updater);
+        atomicChange(src, p, model, "old", "value");
+        src.println("        return old;");
+        src.println("    }");
+
+        if (!p.bound) {
+            src.format("    /** Sets %s without a full fence; the write becomes visible to other threads eventually. */\n", p.name);
+            src.format("    public void lazySet%s(%s value) {\n", cap, t);
+            if (model.dirtyWords > 0)
+                STATEMENT.print(src, dirtyMark(p.ordinal, model.dirtyWords, model.atomicDirty));
+            src.format("        %s.lazySet(this, value);\n", updater);
+            src.println("    }");
+        }
+
+        if (numeric) {
+            src.format("    public %s getAndAdd%s(%1$s delta) {\n", t, cap);
+            src.format("        %s old = %s.getAndAdd(this, delta);\n", t, updater);
+            atomicChange(src, p, model, "old", "old + delta");
+            src.println("        return old;");
+            src.println("    }");
+            if (model.functions) {
+                String operator = "java.util.function." + (t.equals("int") ? "Int" : "Long") + "BinaryOperator";
+                String apply = t.equals("int") ? "applyAsInt" : "applyAsLong";
+                src.format("    /** Sets %s to f(%1$s, x), retrying if another thread changes it first, and returns the new value. */\n", p.name);
+                src.format("    public %s accumulate%s(%1$s x, %s f) {\n", t, cap, operator);
+                src.format("        %s prev, next;\n", t);
+                src.format("        do { prev = this.%s; next = f.%s(prev, x); } while (!%s.compareAndSet(this, prev, next));\n", p.name, apply, updater);
+                atomicChange(src, p, model, "prev", "next");
+                src.println("        return next;");
+                src.println("    }");
+            }
+        }
+    }
+
+    /** Marks an atomically updated property dirty, and notifies listeners of a bound one. */
+    private void atomicChange(PrintWriter src, BeanProperty p, BeanModel model, String oldValue, String newValue) {
+        if (model.dirtyWords > 0)
+            STATEMENT.print(src, dirtyMark(p.ordinal, model.dirtyWords, model.atomicDirty));
+        if (p.bound)
+            src.format("        firePropertyChange(%d, \"%s\", %s, %s);\n", p.ordinal, p.name, oldValue, newValue);
+    }
+
+    void createIsOrGet(PrintWriter src, BeanProperty p, boolean counted) {
+        String value = p.name;
+        if (p.stamped && p.element != null)
+            value = String.format("%1$s == null ? null : java.util.Collections.unmodifiableList(%1$s)", p.name);
+        if (counted)
+            COUNTED_GETTER.print(src, p.type, isOrGet(p.type), p.capName, 3 * p.ordinal, value, p.fx ? ".get()" : "");
+        else
+            GETTER.print(src, p.type, isOrGet(p.type), p.capName, value, p.fx ? ".get()" : "");
     }
 
     String capitalize(SProperty prop) {
@@ -499,16 +1599,16 @@ public class BeanProcessor extends AbstractProcessor {
         }
     }
 
-    boolean createField(PrintWriter src, SBean bean, SProperty prop, String type, String boxed, TypeElement beanTypeElement, SKind sKind, boolean isFX) {
-        boolean final_ = prop.final_() || (bean.final_() && !prop.notfinal());
-        if (final_ && prop.init().isEmpty()) {
-            processingEnv.getMessager().printMessage(Kind.ERROR, "A generated final field must include an init string.", beanTypeElement);
-        }
+    void createField(PrintWriter src, SBean bean, BeanProperty p) {
+        SProperty prop = p.prop;
+        String type = p.type, boxed = p.boxed;
         String scope = bean.protectedScope() ? "protected" : "private"; 
         String init = prop.init().isEmpty() ? "" : " = " + prop.init();
         if (prop.create()) 
             init = String.format(" = new %s()", type); 
-        if (isFX) {
+        if (bean.immutable())
+            init = "";
+        if (p.fx) {
             if (boxed.equals(type)) {
                 if (type.equals("java.lang.String")) {
                     src.format("    final %3$s javafx.beans.property.StringProperty %2$s = new javafx.beans.property.SimpleStringProperty(this, \"%2$s\");\n    public javafx.beans.property.StringProperty %2$sProperty() { return %2$s; }\n", "", prop.name(), scope);
@@ -520,35 +1620,43 @@ public class BeanProcessor extends AbstractProcessor {
                 src.format("    final %3$s javafx.beans.property.%1$sProperty %2$s = new javafx.beans.property.Simple%1$sProperty(this, \"%2$s\");\n    public javafx.beans.property.%1$sProperty %2$sProperty() { return %2$s; }\n", s, prop.name(), scope);
             }
         } else {
-            src.format("    %s %s %s %s%s;\n", scope, final_? "final " : "", type, prop.name(), init);
+            FIELD.print(src, scope, p.final_ ? "final " : p.atomic ? "volatile " : "", type, prop.name(), init);
         } 
-        return final_;
     }
 
     TypeMirror mirrorExtend(SBean sbean) {
+        long start = System.nanoTime();
         try {
             sbean.extend().getName();
             throw new RuntimeException();
         } catch (MirroredTypeException mte) {
             return mte.getTypeMirror();
+        } finally {
+            mirrorNanos += System.nanoTime() - start;
         }
     }
 
     TypeMirror mirrorType(SProperty sprop) {
+        long start = System.nanoTime();
         try {
             sprop.type().getName();
             throw new RuntimeException();
         } catch (MirroredTypeException mte) {
             return mte.getTypeMirror();
+        } finally {
+            mirrorNanos += System.nanoTime() - start;
         }
     }
     
     TypeMirror mirrorDelegate(SProperty sprop) {
+        long start = System.nanoTime();
         try {
             sprop.delegate().getName();
             throw new RuntimeException();
         } catch (MirroredTypeException mte) {
             return mte.getTypeMirror();
+        } finally {
+            mirrorNanos += System.nanoTime() - start;
         }
     }
 
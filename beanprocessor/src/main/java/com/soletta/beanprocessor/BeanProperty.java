@@ -0,0 +1,95 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.util.List;
+
+/** The resolved form of a single SProperty, as worked out by the main property loop in
+ * BeanProcessor. Companion generators use this so they see exactly the same types and
+ * names as the generated base class.
+ *
+ * @author rjudson
+ *
+ */
+class BeanProperty {
+
+    final SProperty prop;
+    final int ordinal;
+    final String name;
+    final String capName;
+    /** The declared type of the field, including any list wrapping. */
+    final String type;
+    /** The boxed form of type; the same as type for reference properties. */
+    final String boxed;
+    /** For list kinds, the boxed type of the elements; otherwise null. */
+    final String element;
+    final boolean primitive;
+    final boolean fx;
+    final boolean final_;
+    final boolean bound;
+    /** Whether a create property holds a Collection or Map, which reset() clears rather than replaces. */
+    final boolean clearable;
+    /** Whether a create property holds a Map, which copyFrom fills with putAll rather than addAll. */
+    final boolean map;
+    /** Forwarding methods for the delegate type, one generated line each. */
+    final List<String> delegateMethods;
+    /** Whether the property is an attribute of the bean's MXBean interface. */
+    final boolean mx;
+    /** Whether the setter and listener dispatch record JFR events. */
+    final boolean jfr;
+    /** Whether the field is volatile and updated through an atomic field updater. */
+    final boolean atomic;
+    /** Whether writes hold the bean's StampedLock. */
+    final boolean stamped;
+
+    BeanProperty(SProperty prop, int ordinal, String capName, String type, String boxed, String element, boolean primitive,
+            boolean fx, boolean final_, boolean bound, boolean clearable, boolean map, List<String> delegateMethods, boolean mx, boolean jfr,
+            boolean atomic, boolean stamped) {
+        this.prop = prop;
+        this.ordinal = ordinal;
+        this.name = prop.name();
+        this.capName = capName;
+        this.type = type;
+        this.boxed = boxed;
+        this.element = element;
+        this.primitive = primitive;
+        this.fx = fx;
+        this.final_ = final_;
+        this.bound = bound;
+        this.clearable = clearable;
+        this.map = map;
+        this.delegateMethods = delegateMethods;
+        this.mx = mx;
+        this.jfr = jfr;
+        this.atomic = atomic;
+        this.stamped = stamped;
+    }
+
+    /** Name of the getter, without parentheses. */
+    String getter() {
+        return (type.equals("boolean") ? "is" : "get") + capName;
+    }
+
+    String setter() {
+        return "set" + capName;
+    }
+
+    boolean isBoolean() {
+        return type.equals("boolean");
+    }
+
+    /** The type with any generic parameters removed, suitable for array creation and casts. */
+    String erasure() {
+        int angle = type.indexOf('<');
+        return angle >= 0 ? type.substring(0, angle) : type;
+    }
+}
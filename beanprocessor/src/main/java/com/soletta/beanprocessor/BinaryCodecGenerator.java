@@ -0,0 +1,422 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+
+/** Generates a compact binary codec into the base class of an SBean with binary set.
+ * <p>
+ * A record starts with a schema hash and a field count. Each field is written as an int tag (the
+ * hash of the property name), a wire type and the value. The wire type is the byte width of a
+ * fixed-size value (1, 2, 4 or 8), or 0 for a length-prefixed value, so a reader can skip any
+ * field it doesn't know. When the schema hash matches, fields are decoded in order without
+ * looking at the tags.
+ * <p>
+ * Primitives are fixed width, dates are epoch milliseconds (Long.MIN_VALUE for null), strings
+ * are UTF-8 with an int byte length (-1 for null), and lists are a byte length and element count
+ * followed by the elements.
+ *
+ * @author rjudson
+ *
+ */
+class BinaryCodecGenerator {
+
+    private static final String[] PRIMITIVES = { "boolean", "byte", "short", "char", "int", "long", "float", "double" };
+    private static final String[] BOXES = { "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Character",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double" };
+
+    /** Writes the codec into the base class. When dirtyWords is non-zero the bean tracks dirty properties
+     * in that many mask words, and writeDelta/applyDelta are generated as well. */
+    void createBinaryCodec(PrintWriter src, TypeElement beanTypeElement, List<BeanProperty> properties,
+            Messager messager, int dirtyWords, boolean atomicDirty) {
+
+        List<BeanProperty> fields = new ArrayList<BeanProperty>();
+        Set<Integer> tags = new HashSet<Integer>();
+        StringBuilder schema = new StringBuilder();
+        for (BeanProperty p : properties) {
+            if (!supported(p)) {
+                messager.printMessage(Kind.WARNING,
+                        String.format("Property %s of type %s has no binary encoding and is left out of the binary codec.", p.name, p.type),
+                        beanTypeElement);
+                continue;
+            }
+            if (!tags.add(p.name.hashCode()))
+                messager.printMessage(Kind.ERROR,
+                        String.format("Property %s has the same binary tag as another property; rename one of them.", p.name),
+                        beanTypeElement);
+            fields.add(p);
+            schema.append(p.name).append(':').append(p.type).append(';');
+        }
+
+        int fixed = 6 + 5 * fields.size();
+        for (BeanProperty p : fields)
+            fixed += wireType(p);
+
+        src.format("    /** Identifies the binary layout written by writeTo: the names and types of the encoded properties, in order. */\n");
+        src.format("    public static final int BINARY_SCHEMA_HASH = 0x%08x;\n", schema.toString().hashCode());
+        src.println();
+
+        src.println("    /** The exact number of bytes writeTo(ByteBuffer) will use for the current property values. */");
+        src.println("    public int binarySize() {");
+        src.format("        int size = %d;\n", fixed);
+        for (BeanProperty p : fields) {
+            if (p.element != null) {
+                src.println("        {");
+                src.format("            %s list = %s();\n", p.type, p.getter());
+                src.println("            size += 4;");
+                src.println("            if (list != null) {");
+                src.println("                size += 4;");
+                src.format("                for (%s e : list) size += %s;\n", p.element, elementSize(p.element, "e"));
+                src.println("            }");
+                src.println("        }");
+            } else if (p.type.equals("java.lang.String")) {
+                src.format("        size += binaryStringSize(%s());\n", p.getter());
+            }
+        }
+        src.println("        return size;");
+        src.println("    }");
+        src.println();
+
+        src.println("    /** Writes the properties at the buffer's position, in the buffer's byte order. */");
+        src.println("    public void writeTo(java.nio.ByteBuffer out) {");
+        src.println("        out.putInt(BINARY_SCHEMA_HASH);");
+        src.format("        out.putShort((short) %d);\n", fields.size());
+        for (BeanProperty p : fields)
+            writeField(src, p, "        ");
+        src.println("    }");
+        src.println();
+
+        src.println("    /** Reads properties written by writeTo(ByteBuffer), possibly by a different version of this bean. Fields");
+        src.println("     * this version doesn't know are skipped, and properties that weren't written are left alone. */");
+        src.println("    public void readFrom(java.nio.ByteBuffer in) {");
+        src.println("        boolean sameSchema = in.getInt() == BINARY_SCHEMA_HASH;");
+        src.println("        int count = in.getShort() & 0xFFFF;");
+        src.println("        for (int i = 0; i < count; i++) {");
+        src.println("            int tag = in.getInt();");
+        src.println("            byte wireType = in.get();");
+        src.println("            readBinaryField(sameSchema ? i : binaryField(tag, wireType), wireType, in);");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+
+        src.println("    /** Writes an int length followed by the binary form of this bean. */");
+        src.println("    public void writeTo(java.io.DataOutput out) throws java.io.IOException {");
+        src.println("        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(binarySize());");
+        src.println("        writeTo(buffer);");
+        src.println("        out.writeInt(buffer.position());");
+        src.println("        out.write(buffer.array(), 0, buffer.position());");
+        src.println("    }");
+        src.println();
+        src.println("    /** Reads a record written by writeTo(DataOutput). */");
+        src.println("    public void readFrom(java.io.DataInput in) throws java.io.IOException {");
+        src.println("        byte[] bytes = new byte[in.readInt()];");
+        src.println("        in.readFully(bytes);");
+        src.println("        readFrom(java.nio.ByteBuffer.wrap(bytes));");
+        src.println("    }");
+        src.println();
+
+        src.println("    private static int binaryField(int tag, byte wireType) {");
+        src.println("        switch (tag) {");
+        for (int i = 0; i < fields.size(); i++) {
+            BeanProperty p = fields.get(i);
+            src.format("        case %d: return wireType == %d ? %d : -1; // %s\n", p.name.hashCode(), wireType(p), i, p.name);
+        }
+        src.println("        default: return -1;");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+
+        src.println("    /** Reads one field through its setter, returning the property ordinal, or -1 if the field was skipped. */");
+        src.println("    private int readBinaryField(int field, byte wireType, java.nio.ByteBuffer in) {");
+        src.println("        switch (field) {");
+        for (int i = 0; i < fields.size(); i++) {
+            BeanProperty p = fields.get(i);
+            src.format("        case %d:", i);
+            if (p.final_) {
+                src.println(" binarySkip(in, wireType); return -1;");
+            } else if (p.element != null) {
+                src.println(" {");
+                src.println("            int length = in.getInt();");
+                src.println("            if (length < 0) {");
+                src.format("                %s(null);\n", p.setter());
+                src.format("                return %d;\n", p.ordinal);
+                src.println("            }");
+                src.println("            int size = in.getInt();");
+                src.format("            %s list = new java.util.ArrayList<%s>(size);\n", p.type, p.element);
+                src.format("            for (int i = 0; i < size; i++) list.add(%s);\n", readElement(p.element));
+                src.format("            %s(list);\n", p.setter());
+                src.format("            return %d;\n", p.ordinal);
+                src.println("        }");
+            } else {
+                src.format(" %s(%s); return %d;\n", p.setter(), readValue(p.type), p.ordinal);
+            }
+        }
+        src.println("        default: binarySkip(in, wireType); return -1;");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+
+        if (dirtyWords > 0)
+            createDelta(src, fields, dirtyWords, atomicDirty);
+        createHelpers(src);
+    }
+
+    /** Writes the tag, wire type and value of one field. */
+    private void writeField(PrintWriter src, BeanProperty p, String indent) {
+        src.format("%sout.putInt(%d); // %s\n", indent, p.name.hashCode(), p.name);
+        src.format("%sout.put((byte) %d);\n", indent, wireType(p));
+        if (p.element != null) {
+            src.format("%s{\n", indent);
+            src.format("%s    %s list = %s();\n", indent, p.type, p.getter());
+            src.format("%s    if (list == null) {\n", indent);
+            src.format("%s        out.putInt(-1);\n", indent);
+            src.format("%s    } else {\n", indent);
+            src.format("%s        int start = out.position();\n", indent);
+            src.format("%s        out.putInt(0);\n", indent);
+            src.format("%s        out.putInt(list.size());\n", indent);
+            src.format("%s        for (%s e : list) {\n", indent, p.element);
+            writeElement(src, p.element, "e", indent + "            ");
+            src.format("%s        }\n", indent);
+            src.format("%s        out.putInt(start, out.position() - start - 4);\n", indent);
+            src.format("%s    }\n", indent);
+            src.format("%s}\n", indent);
+        } else {
+            src.format("%s%s\n", indent, writeValue(p.type, p.getter() + "()"));
+        }
+    }
+
+    /** A delta is an ordinary record holding only the dirty fields. Its schema hash is the complement
+     * of BINARY_SCHEMA_HASH, which never matches, so readFrom looks every field up by its tag. */
+    private void createDelta(PrintWriter src, List<BeanProperty> fields, int dirtyWords, boolean atomicDirty) {
+        src.println("    /** Writes the dirty properties in the writeTo format; apply it on the other side with applyDelta. Properties");
+        src.println("     * that have no binary encoding are not included. The dirty mask is left as it is. */");
+        src.println("    public void writeDelta(java.nio.ByteBuffer out) {");
+        src.println("        out.putInt(~BINARY_SCHEMA_HASH);");
+        src.println("        int countAt = out.position();");
+        src.println("        out.putShort((short) 0);");
+        src.println("        int count = 0;");
+        for (BeanProperty p : fields) {
+            src.format("        if (%s) {\n", BeanProcessor.dirtyTest(p.ordinal, dirtyWords));
+            src.println("            count++;");
+            writeField(src, p, "            ");
+            src.println("        }");
+        }
+        src.println("        out.putShort(countAt, (short) count);");
+        src.println("    }");
+        src.println();
+        src.println("    /** Applies a delta written by writeDelta(ByteBuffer), through the setters, so listeners hear about the changes.");
+        src.println("     * The applied properties are left clean, so that a replica's own writeDelta doesn't send them back. */");
+        src.println("    public void applyDelta(java.nio.ByteBuffer in) {");
+        src.println("        boolean sameSchema = in.getInt() == BINARY_SCHEMA_HASH;");
+        src.println("        int count = in.getShort() & 0xFFFF;");
+        src.println("        for (int i = 0; i < count; i++) {");
+        src.println("            int tag = in.getInt();");
+        src.println("            byte wireType = in.get();");
+        src.println("            int ordinal = readBinaryField(sameSchema ? i : binaryField(tag, wireType), wireType, in);");
+        src.format("            if (ordinal >= 0) %s;\n", BeanProcessor.dirtyClear("ordinal", dirtyWords, atomicDirty));
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        src.println("    /** Writes an int length followed by the delta. */");
+        src.println("    public void writeDelta(java.io.DataOutput out) throws java.io.IOException {");
+        src.println("        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(binarySize());");
+        src.println("        writeDelta(buffer);");
+        src.println("        out.writeInt(buffer.position());");
+        src.println("        out.write(buffer.array(), 0, buffer.position());");
+        src.println("    }");
+        src.println();
+        src.println("    /** Applies a delta written by writeDelta(DataOutput). */");
+        src.println("    public void applyDelta(java.io.DataInput in) throws java.io.IOException {");
+        src.println("        byte[] bytes = new byte[in.readInt()];");
+        src.println("        in.readFully(bytes);");
+        src.println("        applyDelta(java.nio.ByteBuffer.wrap(bytes));");
+        src.println("    }");
+        src.println();
+    }
+
+    /** Static helpers shared by the encode and decode methods. */
+    private void createHelpers(PrintWriter src) {
+        src.println("    private static void binarySkip(java.nio.ByteBuffer in, byte wireType) {");
+        src.println("        if (wireType != 0) {");
+        src.println("            in.position(in.position() + wireType);");
+        src.println("        } else {");
+        src.println("            int length = in.getInt();");
+        src.println("            if (length > 0) in.position(in.position() + length);");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        src.println("    private static java.util.Date binaryGetDate(java.nio.ByteBuffer in) {");
+        src.println("        long millis = in.getLong();");
+        src.println("        return millis == Long.MIN_VALUE ? null : new java.util.Date(millis);");
+        src.println("    }");
+        src.println();
+        src.println("    private static int binaryStringSize(String s) {");
+        src.println("        if (s == null) return 4;");
+        src.println("        int n = 4;");
+        src.println("        for (int i = 0, len = s.length(); i < len; i++) {");
+        src.println("            char c = s.charAt(i);");
+        src.println("            if (c < 0x80) n++;");
+        src.println("            else if (c < 0x800) n += 2;");
+        src.println("            else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) { n += 4; i++; }");
+        src.println("            else n += 3;");
+        src.println("        }");
+        src.println("        return n;");
+        src.println("    }");
+        src.println();
+        src.println("    private static void binaryPutString(java.nio.ByteBuffer out, String s) {");
+        src.println("        if (s == null) {");
+        src.println("            out.putInt(-1);");
+        src.println("            return;");
+        src.println("        }");
+        src.println("        out.putInt(binaryStringSize(s) - 4);");
+        src.println("        for (int i = 0, len = s.length(); i < len; i++) {");
+        src.println("            char c = s.charAt(i);");
+        src.println("            if (c < 0x80) {");
+        src.println("                out.put((byte) c);");
+        src.println("            } else if (c < 0x800) {");
+        src.println("                out.put((byte) (0xC0 | (c >> 6)));");
+        src.println("                out.put((byte) (0x80 | (c & 0x3F)));");
+        src.println("            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {");
+        src.println("                int cp = Character.toCodePoint(c, s.charAt(++i));");
+        src.println("                out.put((byte) (0xF0 | (cp >> 18)));");
+        src.println("                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));");
+        src.println("                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));");
+        src.println("                out.put((byte) (0x80 | (cp & 0x3F)));");
+        src.println("            } else {");
+        src.println("                out.put((byte) (0xE0 | (c >> 12)));");
+        src.println("                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));");
+        src.println("                out.put((byte) (0x80 | (c & 0x3F)));");
+        src.println("            }");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        src.println("    private static String binaryGetString(java.nio.ByteBuffer in) {");
+        src.println("        int length = in.getInt();");
+        src.println("        if (length < 0) return null;");
+        src.println("        char[] chars = new char[length];");
+        src.println("        int n = 0, end = in.position() + length;");
+        src.println("        while (in.position() < end) {");
+        src.println("            int b = in.get() & 0xFF;");
+        src.println("            if (b < 0x80) {");
+        src.println("                chars[n++] = (char) b;");
+        src.println("            } else if (b < 0xE0) {");
+        src.println("                chars[n++] = (char) (((b & 0x1F) << 6) | (in.get() & 0x3F));");
+        src.println("            } else if (b < 0xF0) {");
+        src.println("                int b2 = in.get() & 0x3F;");
+        src.println("                chars[n++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | (in.get() & 0x3F));");
+        src.println("            } else {");
+        src.println("                int b2 = in.get() & 0x3F, b3 = in.get() & 0x3F;");
+        src.println("                n += Character.toChars(((b & 0x07) << 18) | (b2 << 12) | (b3 << 6) | (in.get() & 0x3F), chars, n);");
+        src.println("            }");
+        src.println("        }");
+        src.println("        return new String(chars, 0, n);");
+        src.println("    }");
+        src.println();
+    }
+
+    static boolean supported(BeanProperty p) {
+        if (p.prop.kind() == SKind.LIST)
+            return index(BOXES, p.element) >= 0 || p.element.equals("java.util.Date") || p.element.equals("java.lang.String");
+        if (p.element != null)
+            return false;
+        return p.primitive || p.type.equals("java.util.Date") || p.type.equals("java.lang.String");
+    }
+
+    private static int wireType(BeanProperty p) {
+        if (p.element != null)
+            return 0;
+        return width(p.type);
+    }
+
+    /** Byte width of a fixed-size value, or 0 for length-prefixed strings. */
+    private static int width(String type) {
+        if (type.equals("boolean") || type.equals("byte"))
+            return 1;
+        if (type.equals("short") || type.equals("char"))
+            return 2;
+        if (type.equals("int") || type.equals("float"))
+            return 4;
+        if (type.equals("java.lang.String"))
+            return 0;
+        return 8;
+    }
+
+    private static String writeValue(String type, String value) {
+        if (type.equals("boolean"))
+            return String.format("out.put((byte) (%s ? 1 : 0));", value);
+        if (type.equals("byte"))
+            return String.format("out.put(%s);", value);
+        if (type.equals("java.util.Date"))
+            return String.format("{ java.util.Date date = %s; out.putLong(date == null ? Long.MIN_VALUE : date.getTime()); }", value);
+        if (type.equals("java.lang.String"))
+            return String.format("binaryPutString(out, %s);", value);
+        return String.format("out.put%s(%s);", accessor(type), value);
+    }
+
+    private static String readValue(String type) {
+        if (type.equals("boolean"))
+            return "in.get() != 0";
+        if (type.equals("byte"))
+            return "in.get()";
+        if (type.equals("java.util.Date"))
+            return "binaryGetDate(in)";
+        if (type.equals("java.lang.String"))
+            return "binaryGetString(in)";
+        return String.format("in.get%s()", accessor(type));
+    }
+
+    /** List elements are boxed, so primitives get a presence byte ahead of the value. */
+    private static void writeElement(PrintWriter src, String element, String e, String indent) {
+        int box = index(BOXES, element);
+        if (box >= 0) {
+            src.format("%sout.put((byte) (%s == null ? 0 : 1));\n", indent, e);
+            src.format("%sif (%s != null) %s\n", indent, e, writeValue(PRIMITIVES[box], e));
+        } else {
+            src.format("%s%s\n", indent, writeValue(element, e));
+        }
+    }
+
+    private static String readElement(String element) {
+        int box = index(BOXES, element);
+        if (box >= 0)
+            return String.format("in.get() == 0 ? null : %s.valueOf(%s)", element, readValue(PRIMITIVES[box]));
+        return readValue(element);
+    }
+
+    private static String elementSize(String element, String e) {
+        int box = index(BOXES, element);
+        if (box >= 0)
+            return String.format("(%s == null ? 1 : %d)", e, 1 + width(PRIMITIVES[box]));
+        if (element.equals("java.lang.String"))
+            return String.format("binaryStringSize(%s)", e);
+        return "8";
+    }
+
+    private static String accessor(String type) {
+        return Character.toUpperCase(type.charAt(0)) + type.substring(1);
+    }
+
+    private static int index(String[] values, String value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i].equals(value))
+                return i;
+        return -1;
+    }
+}
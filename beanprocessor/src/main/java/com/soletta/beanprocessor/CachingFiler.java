@@ -0,0 +1,306 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+
+/** A Filer that skips sources whose inputs haven't changed since they were last generated. Every
+ * generated source starts with a comment holding a fingerprint of its originating element: the
+ * element's modifiers, constructors and annotations, the members and annotations of every type those annotations name (delegate
+ * interfaces, nested beans and so on), the processor build, the source version, which optional library types
+ * exist, and any options that change the output. When a
+ * source is requested, the type already exists in the compilation (from the source output directory
+ * being a source root, or from the previous build's classes) and the existing file carries the same
+ * fingerprint, the new text is discarded instead of being written and compiled again.
+ * <p>
+ * Generators don't need to know about this; BeanProcessor wraps the ProcessingEnvironment so that
+ * getFiler() returns a CachingFiler. Set -Abeanprocessor.fingerprints=false to always regenerate.
+ * The Filer also counts the files and bytes written for each originating element, when the processor
+ * has been asked for a statistics report.
+ *
+ * @author rjudson
+ *
+ */
+class CachingFiler implements Filer {
+
+    static final String OPTION = "beanprocessor.fingerprints";
+    private static final String HEADER = "// BeanProcessor input fingerprint ";
+    /** The processor options that change what is generated, and so belong in the fingerprint. None do yet: the
+     * fingerprint, thread and statistics options only change how sources are produced. */
+    private static final String[] OUTPUT_OPTIONS = {};
+    /** The library types whose presence changes what is generated: JFR events, LongAdder counters, the
+     * java.util.function accumulators of ATOMIC properties and the streams of tuple arrays. */
+    private static final String[] OUTPUT_TYPES = { "jdk.jfr.Event", "java.util.concurrent.atomic.LongAdder",
+            "java.util.function.LongBinaryOperator", "java.util.stream.IntStream" };
+
+    private final Filer filer;
+    private final ProcessingEnvironment processingEnv;
+    private final GenerationStats stats;
+    private final boolean enabled;
+    private final Map<Element, String> fingerprints = new HashMap<Element, String>();
+    private final String processorStamp;
+    private final String environmentStamp;
+    private int skipped;
+
+    CachingFiler(ProcessingEnvironment processingEnv, GenerationStats stats) {
+        this.processingEnv = processingEnv;
+        this.stats = stats;
+        this.filer = processingEnv.getFiler();
+        this.enabled = !"false".equals(processingEnv.getOptions().get(OPTION));
+        this.processorStamp = processorStamp();
+        this.environmentStamp = environmentStamp(processingEnv);
+    }
+
+    /** Wraps an environment so that its Filer is a CachingFiler. */
+    static ProcessingEnvironment wrap(final ProcessingEnvironment env, GenerationStats stats) {
+        final CachingFiler filer = new CachingFiler(env, stats);
+        return new ProcessingEnvironment() {
+            public Map<String, String> getOptions() { return env.getOptions(); }
+            public Messager getMessager() { return env.getMessager(); }
+            public Filer getFiler() { return filer; }
+            public Elements getElementUtils() { return env.getElementUtils(); }
+            public Types getTypeUtils() { return env.getTypeUtils(); }
+            public SourceVersion getSourceVersion() { return env.getSourceVersion(); }
+            public Locale getLocale() { return env.getLocale(); }
+        };
+    }
+
+    /** The number of sources skipped so far because they were unchanged. */
+    int skipped() {
+        return skipped;
+    }
+
+    public JavaFileObject createSourceFile(CharSequence name, Element... originatingElements) throws IOException {
+        Element origin = originatingElements.length == 1 ? originatingElements[0] : null;
+        if (!enabled || origin == null)
+            return counted(filer.createSourceFile(name, originatingElements), origin, null);
+        String header = HEADER + fingerprint(origin);
+        if (unchanged(name.toString(), header)) {
+            skipped++;
+            if (stats.enabled())
+                stats.entry(origin).skipped++;
+            return new Discarded(name.toString());
+        }
+        return counted(filer.createSourceFile(name, originatingElements), origin, header);
+    }
+
+    /** Writes the header, if there is one, ahead of the source, and counts what is written when statistics
+     * were asked for. */
+    private JavaFileObject counted(JavaFileObject file, final Element origin, final String header) {
+        final boolean count = origin != null && stats.enabled();
+        if (header == null && !count)
+            return file;
+        return new ForwardingJavaFileObject<JavaFileObject>(file) {
+            @Override
+            public OutputStream openOutputStream() throws IOException {
+                OutputStream out = super.openOutputStream();
+                if (count)
+                    out = new CountingStream(out, stats.entry(origin));
+                if (header != null)
+                    out.write((header + "\n").getBytes("UTF-8"));
+                return out;
+            }
+        };
+    }
+
+    public JavaFileObject createClassFile(CharSequence name, Element... originatingElements) throws IOException {
+        return filer.createClassFile(name, originatingElements);
+    }
+
+    public FileObject createResource(Location location, CharSequence pkg, CharSequence relativeName, Element... originatingElements)
+            throws IOException {
+        return filer.createResource(location, pkg, relativeName, originatingElements);
+    }
+
+    public FileObject getResource(Location location, CharSequence pkg, CharSequence relativeName) throws IOException {
+        return filer.getResource(location, pkg, relativeName);
+    }
+
+    private boolean unchanged(String name, String header) {
+        if (processingEnv.getElementUtils().getTypeElement(name) == null)
+            return false;
+        int dot = name.lastIndexOf('.');
+        try {
+            FileObject existing = filer.getResource(StandardLocation.SOURCE_OUTPUT, dot < 0 ? "" : name.substring(0, dot),
+                    name.substring(dot + 1) + ".java");
+            BufferedReader in = new BufferedReader(new InputStreamReader(existing.openInputStream(), "UTF-8"));
+            try {
+                return header.equals(in.readLine());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    String fingerprint(Element origin) {
+        String fingerprint = fingerprints.get(origin);
+        if (fingerprint == null) {
+            StringBuilder b = new StringBuilder(processorStamp).append(environmentStamp);
+            for (String option : OUTPUT_OPTIONS)
+                b.append('\n').append(option).append('=').append(processingEnv.getOptions().get(option));
+            b.append('\n').append(origin.getModifiers()).append(' ').append(origin);
+            // Pools, codecs and immutable beans check which constructors the bean declares.
+            for (ExecutableElement constructor : ElementFilter.constructorsIn(origin.getEnclosedElements()))
+                b.append("\n  ").append(constructor.getModifiers()).append(' ').append(constructor.asType());
+            Set<TypeElement> referenced = new LinkedHashSet<TypeElement>();
+            for (AnnotationMirror mirror : origin.getAnnotationMirrors()) {
+                b.append('\n').append(mirror);
+                collect(mirror.getElementValues().values(), referenced);
+            }
+            for (TypeElement type : referenced) {
+                b.append('\n').append(type.getQualifiedName()).append(' ').append(type.getAnnotationMirrors());
+                // By simple name: a supertype that is itself generated only resolves to its full name once it exists.
+                for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type.asType())) {
+                    Element element = processingEnv.getTypeUtils().asElement(supertype);
+                    b.append(' ').append(element == null ? supertype : element.getSimpleName());
+                }
+                for (Element member : type.getEnclosedElements())
+                    b.append("\n  ").append(member.getModifiers()).append(' ').append(member.asType()).append(' ').append(member);
+            }
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < b.length(); i++) {
+                h ^= b.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            fingerprint = String.format("%016x", h);
+            fingerprints.put(origin, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private void collect(Iterable<? extends AnnotationValue> values, Set<TypeElement> referenced) {
+        for (AnnotationValue value : values) {
+            Object v = value.getValue();
+            if (v instanceof DeclaredType) {
+                Element element = ((DeclaredType) v).asElement();
+                if (element instanceof TypeElement)
+                    referenced.add((TypeElement) element);
+            } else if (v instanceof AnnotationMirror) {
+                collect(((AnnotationMirror) v).getElementValues().values(), referenced);
+            } else if (v instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<? extends AnnotationValue> list = (List<? extends AnnotationValue>) v;
+                collect(list, referenced);
+            }
+        }
+    }
+
+    /** Identifies the processor build, so that a new processor regenerates everything. */
+    private static String processorStamp() {
+        URL self = BeanProcessor.class.getResource("BeanProcessor.class");
+        try {
+            return self + "@" + self.openConnection().getLastModified();
+        } catch (Exception e) {
+            return String.valueOf(self);
+        }
+    }
+
+    /** The source version and which of OUTPUT_TYPES exist, so that a change of release regenerates everything. */
+    private static String environmentStamp(ProcessingEnvironment processingEnv) {
+        StringBuilder b = new StringBuilder("\nsource ").append(processingEnv.getSourceVersion());
+        for (String type : OUTPUT_TYPES)
+            b.append(' ').append(type).append('=').append(processingEnv.getElementUtils().getTypeElement(type) != null);
+        return b.toString();
+    }
+
+    /** Counts the bytes of one generated file into its statistics entry. */
+    private static class CountingStream extends FilterOutputStream {
+
+        private final GenerationStats.Entry entry;
+        private long bytes;
+
+        CountingStream(OutputStream out, GenerationStats.Entry entry) {
+            super(out);
+            this.entry = entry;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bytes >= 0) {
+                entry.files++;
+                entry.bytes += bytes;
+                bytes = -1;
+            }
+            super.close();
+        }
+    }
+
+    /** Stands in for a source that is already up to date. Whatever is written to it is thrown away. */
+    private static class Discarded extends SimpleJavaFileObject {
+
+        Discarded(String name) {
+            super(URI.create("discarded:///" + name.replace('.', '/') + ".java"), Kind.SOURCE);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+
+/** Generates the nnnColumns companion class for an SBean with columnar set. Every property
+ * gets its own growable array; booleans are packed into a long bitset, other primitives get
+ * a primitive array, and references share an Object array with a cast on the way out.
+ *
+ * @author rjudson
+ *
+ */
+class ColumnsGenerator {
+
+    void generateColumns(TypeElement beanTypeElement, List<BeanProperty> properties, ProcessingEnvironment processingEnv)
+            throws IOException {
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanTypeElement).getQualifiedName().toString();
+        String beanName = beanTypeElement.getSimpleName().toString();
+        String className = beanName + "Columns";
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(packageName + "." + className, beanTypeElement);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", packageName);
+            src.println();
+            src.format("/** Column-oriented storage for %s rows. Each property is held in its own array, so scans over\n", beanName);
+            src.println(" * a single property touch contiguous memory. Rows are addressed by index, or through a reusable Cursor. */");
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public class %s {\n", className);
+            src.println();
+            src.println("    private int size;");
+            src.println("    private int capacity;");
+            for (BeanProperty p : properties)
+                src.format("    private %s[] %s;\n", columnType(p), p.name);
+            src.println();
+
+            src.format("    public %s() { this(16); }\n", className);
+            src.println();
+            src.format("    public %s(int initialCapacity) {\n", className);
+            src.println("        capacity = Math.max(initialCapacity, 1);");
+            for (BeanProperty p : properties)
+                src.format("        %s = new %s[%s];\n", p.name, columnType(p), columnLength(p, "capacity"));
+            src.println("    }");
+            src.println();
+
+            src.println("    /** The number of rows currently held. */");
+            src.println("    public int size() { return size; }");
+            src.println();
+            src.println("    /** Drops all rows. References are cleared so they can be collected; the arrays are retained. */");
+            src.println("    public void clear() {");
+            for (BeanProperty p : properties)
+                if (!p.primitive)
+                    src.format("        java.util.Arrays.fill(%s, 0, size, null);\n", p.name);
+            src.println("        size = 0;");
+            src.println("    }");
+            src.println();
+
+            src.println("    public void ensureCapacity(int minCapacity) {");
+            src.println("        if (minCapacity <= capacity) return;");
+            src.println("        int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));");
+            for (BeanProperty p : properties)
+                src.format("        %s = java.util.Arrays.copyOf(%1$s, %s);\n", p.name, columnLength(p, "newCapacity"));
+            src.println("        capacity = newCapacity;");
+            src.println("    }");
+            src.println();
+
+            src.println("    private void checkRow(int row) {");
+            src.println("        if (row < 0 || row >= size) throw new IndexOutOfBoundsException(\"Row \" + row + \", size \" + size);");
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Appends a row holding default (zero, false or null) values, returning its index. */");
+            src.println("    public int append() {");
+            src.println("        ensureCapacity(size + 1);");
+            src.println("        int row = size++;");
+            for (BeanProperty p : properties) {
+                if (p.isBoolean())
+                    src.format("        %s[row >>> 6] &= ~(1L << row);\n", p.name);
+                else
+                    src.format("        %s[row] = %s;\n", p.name, p.primitive ? "0" : "null");
+            }
+            src.println("        return row;");
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Appends a row holding the current property values of bean, returning its index. */");
+            src.format("    public int append(%sBase bean) {\n", beanName);
+            src.println("        ensureCapacity(size + 1);");
+            src.println("        int row = size++;");
+            src.println("        store(row, bean);");
+            src.println("        return row;");
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Overwrites an existing row with the current property values of bean. */");
+            src.format("    public void set(int row, %sBase bean) {\n", beanName);
+            src.println("        checkRow(row);");
+            src.println("        store(row, bean);");
+            src.println("    }");
+            src.println();
+
+            src.format("    private void store(int row, %sBase bean) {\n", beanName);
+            for (BeanProperty p : properties) {
+                if (p.isBoolean())
+                    src.format("        if (bean.%s()) %s[row >>> 6] |= 1L << row; else %2$s[row >>> 6] &= ~(1L << row);\n",
+                            p.getter(), p.name);
+                else
+                    src.format("        %s[row] = bean.%s();\n", p.name, p.getter());
+            }
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Copies a row into the settable properties of bean. */");
+            for (BeanProperty p : properties) {
+                if (!p.final_ && p.type.indexOf('<') >= 0) {
+                    src.println("    @SuppressWarnings(\"unchecked\")");
+                    break;
+                }
+            }
+            src.format("    public void copyTo(int row, %sBase bean) {\n", beanName);
+            src.println("        checkRow(row);");
+            for (BeanProperty p : properties)
+                if (!p.final_)
+                    src.format("        bean.%s(%s);\n", p.setter(), read(p, "row"));
+            src.println("    }");
+            src.println();
+
+            for (BeanProperty p : properties) {
+                if (p.type.indexOf('<') >= 0)
+                    src.println("    @SuppressWarnings(\"unchecked\")");
+                src.format("    public %s %s(int row) { checkRow(row); return %s; }\n", p.type, p.getter(), read(p, "row"));
+                if (!p.final_)
+                    src.format("    public void %s(int row, %s value) { checkRow(row); %s }\n", p.setter(), p.type, write(p, "row"));
+                if (p.primitive && !p.isBoolean()) {
+                    src.format("    /** The backing array for %s; only the first size() entries are meaningful. */\n", p.name);
+                    src.format("    public %s[] %2$sColumn() { return %2$s; }\n", p.type, p.name);
+                }
+            }
+            src.println();
+
+            src.println("    /** Creates a new cursor, positioned before the first row. */");
+            src.println("    public Cursor cursor() { return new Cursor(); }");
+            src.println();
+            src.println("    /** A flyweight view of one row at a time, with the same getters and setters as the bean. A single");
+            src.println("     * cursor can be moved across every row without allocating. */");
+            src.println("    public final class Cursor {");
+            src.println("        private int row = -1;");
+            src.println();
+            src.println("        public int row() { return row; }");
+            src.println("        public Cursor at(int row) { checkRow(row); this.row = row; return this; }");
+            src.println("        public boolean next() { if (row + 1 >= size) return false; row++; return true; }");
+            src.println("        public void reset() { row = -1; }");
+            src.println();
+            for (BeanProperty p : properties) {
+                if (p.type.indexOf('<') >= 0)
+                    src.println("        @SuppressWarnings(\"unchecked\")");
+                src.format("        public %s %s() { return %s; }\n", p.type, p.getter(), read(p, "row"));
+                if (!p.final_)
+                    src.format("        public void %s(%s value) { %s }\n", p.setter(), p.type, write(p, "row"));
+            }
+            src.println("    }");
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+
+    private String columnType(BeanProperty p) {
+        if (p.isBoolean())
+            return "long";
+        return p.primitive ? p.type : "java.lang.Object";
+    }
+
+    private String columnLength(BeanProperty p, String capacity) {
+        return p.isBoolean() ? "(" + capacity + " + 63) >>> 6" : capacity;
+    }
+
+    private String read(BeanProperty p, String row) {
+        if (p.isBoolean())
+            return String.format("(%s[%s >>> 6] & (1L << %2$s)) != 0", p.name, row);
+        if (p.primitive)
+            return String.format("%s[%s]", p.name, row);
+        return String.format("(%s) %s[%s]", p.type, p.name, row);
+    }
+
+    private String write(BeanProperty p, String row) {
+        if (p.isBoolean())
+            return String.format("if (value) %s[%s >>> 6] |= 1L << %2$s; else %1$s[%2$s >>> 6] &= ~(1L << %2$s);", p.name, row);
+        return String.format("%s[%s] = value;", p.name, row);
+    }
+}
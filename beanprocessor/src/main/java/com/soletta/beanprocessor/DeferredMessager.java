@@ -0,0 +1,80 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic.Kind;
+
+/** Holds the messages raised while a bean is rendered off the processing thread. javac's Messager
+ * is not thread safe, so the messages are replayed on the processing thread once rendering is done,
+ * in the order they were raised.
+ *
+ * @author rjudson
+ *
+ */
+class DeferredMessager implements Messager {
+
+    private final List<Message> messages = new ArrayList<Message>();
+
+    public void printMessage(Kind kind, CharSequence msg) {
+        printMessage(kind, msg, null, null, null);
+    }
+
+    public void printMessage(Kind kind, CharSequence msg, Element e) {
+        printMessage(kind, msg, e, null, null);
+    }
+
+    public void printMessage(Kind kind, CharSequence msg, Element e, AnnotationMirror a) {
+        printMessage(kind, msg, e, a, null);
+    }
+
+    public void printMessage(Kind kind, CharSequence msg, Element e, AnnotationMirror a, AnnotationValue v) {
+        messages.add(new Message(kind, msg.toString(), e, a, v));
+    }
+
+    /** Sends the held messages to target, and forgets them. */
+    void replay(Messager target) {
+        for (Message m : messages) {
+            if (m.element == null)
+                target.printMessage(m.kind, m.text);
+            else if (m.annotation == null)
+                target.printMessage(m.kind, m.text, m.element);
+            else if (m.value == null)
+                target.printMessage(m.kind, m.text, m.element, m.annotation);
+            else
+                target.printMessage(m.kind, m.text, m.element, m.annotation, m.value);
+        }
+        messages.clear();
+    }
+
+    private static class Message {
+        final Kind kind;
+        final String text;
+        final Element element;
+        final AnnotationMirror annotation;
+        final AnnotationValue value;
+
+        Message(Kind kind, String text, Element element, AnnotationMirror annotation, AnnotationValue value) {
+            this.kind = kind;
+            this.text = text;
+            this.element = element;
+            this.annotation = annotation;
+            this.value = value;
+        }
+    }
+}
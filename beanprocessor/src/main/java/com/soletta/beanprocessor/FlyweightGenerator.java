@@ -0,0 +1,278 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import static java.lang.Character.toUpperCase;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/** Generates the nnnFlyweight class for an SBean with flyweight set. A fixed binary layout is
+ * worked out from the property types, with primitives at their natural alignment, dates as
+ * epoch milliseconds and strings as an (offset, length, capacity) triple pointing into a second buffer.
+ * The flyweight reads and writes that layout over a ByteBuffer, which may be direct, so the
+ * data lives outside the Java heap.
+ *
+ * @author rjudson
+ *
+ */
+class FlyweightGenerator {
+
+    /** A property placed in the fixed layout. */
+    static class Slot {
+        final BeanProperty property;
+        final int size;
+        final int align;
+        int offset;
+
+        Slot(BeanProperty property, int size, int align) {
+            this.property = property;
+            this.size = size;
+            this.align = align;
+        }
+
+        String constant() {
+            return property.name.toUpperCase() + "_OFFSET";
+        }
+    }
+
+    /** Works out the layout. Slots are placed from widest to narrowest alignment, so every field
+     * lands on its natural boundary without padding, and the record size is rounded up to 8 so that
+     * consecutive records stay aligned. Properties that have no fixed-width encoding are reported
+     * and left out.
+     */
+    List<Slot> layout(TypeElement beanTypeElement, List<BeanProperty> properties, ProcessingEnvironment processingEnv) {
+        List<Slot> slots = new ArrayList<Slot>();
+        for (BeanProperty p : properties) {
+            int size = sizeOf(p);
+            if (size == 0) {
+                processingEnv.getMessager().printMessage(Kind.WARNING,
+                        String.format("Property %s of type %s has no fixed-width layout and is left out of the flyweight.", p.name, p.type),
+                        beanTypeElement);
+                continue;
+            }
+            slots.add(new Slot(p, size, p.type.equals("java.lang.String") ? 4 : size));
+        }
+        int offset = 0;
+        for (int align = 8; align >= 1; align >>= 1) {
+            for (Slot slot : slots) {
+                if (slot.align == align) {
+                    slot.offset = offset;
+                    offset += slot.size;
+                }
+            }
+        }
+        return slots;
+    }
+
+    static int recordSize(List<Slot> slots) {
+        int end = 0;
+        for (Slot slot : slots)
+            end = Math.max(end, slot.offset + slot.size);
+        return (end + 7) & ~7;
+    }
+
+    /** Size in bytes of a property in the fixed layout, or zero if it can't be laid out. */
+    static int sizeOf(BeanProperty p) {
+        String t = p.type;
+        if (t.equals("java.lang.String"))
+            return 12;
+        if (t.equals("long") || t.equals("double") || t.equals("java.util.Date"))
+            return 8;
+        if (t.equals("int") || t.equals("float"))
+            return 4;
+        if (t.equals("short") || t.equals("char"))
+            return 2;
+        if (t.equals("byte") || t.equals("boolean"))
+            return 1;
+        return 0;
+    }
+
+    void generateFlyweight(TypeElement beanTypeElement, List<BeanProperty> properties, ProcessingEnvironment processingEnv)
+            throws IOException {
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanTypeElement).getQualifiedName().toString();
+        String beanName = beanTypeElement.getSimpleName().toString();
+        String className = beanName + "Flyweight";
+        List<Slot> slots = layout(beanTypeElement, properties, processingEnv);
+        boolean strings = false;
+        for (Slot slot : slots)
+            strings |= slot.property.type.equals("java.lang.String");
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(packageName + "." + className, beanTypeElement);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", packageName);
+            src.println();
+            src.format("/** Reads and writes %s records in a fixed binary layout over a ByteBuffer. Move the flyweight\n", beanName);
+            src.println(" * between records with at() or record(); it never allocates, except to materialize String and Date values.");
+            if (strings) {
+                src.println(" * Strings are kept in a separate strings buffer; the record holds their offset, length and the space");
+                src.println(" * reserved for them. A new value is written over the old one when it fits that space, and is otherwise");
+                src.println(" * appended at the buffer's position, leaving the old space unused. */");
+            } else {
+                src.println(" */");
+            }
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public final class %s {\n", className);
+            src.println();
+            src.format("    /** Size in bytes of one record. */\n");
+            src.format("    public static final int SIZE = %d;\n", recordSize(slots));
+            for (Slot slot : slots)
+                src.format("    public static final int %s = %d;\n", slot.constant(), slot.offset);
+            src.println();
+            src.println("    private java.nio.ByteBuffer buffer;");
+            if (strings)
+                src.println("    private java.nio.ByteBuffer strings;");
+            src.println("    private int offset;");
+            src.println();
+
+            src.format("    public %s wrap(java.nio.ByteBuffer buffer) {\n", className);
+            src.println("        this.buffer = buffer;");
+            src.println("        this.offset = 0;");
+            src.println("        return this;");
+            src.println("    }");
+            if (strings) {
+                src.println();
+                src.println("    /** Wraps a record buffer, and a buffer for string content; strings are written at its current position. */");
+                src.format("    public %s wrap(java.nio.ByteBuffer buffer, java.nio.ByteBuffer strings) {\n", className);
+                src.println("        this.strings = strings;");
+                src.println("        return wrap(buffer);");
+                src.println("    }");
+                src.println();
+                src.println("    private java.nio.ByteBuffer strings() {");
+                src.format("        if (strings == null) throw new IllegalStateException(\"String properties need a strings buffer; use wrap(buffer, strings)\");\n");
+                src.println("        return strings;");
+                src.println("    }");
+            }
+            src.println();
+            src.println("    /** Positions the flyweight at an absolute byte offset in the buffer. */");
+            src.format("    public %s at(int offset) { this.offset = offset; return this; }\n", className);
+            src.println("    /** Positions the flyweight at the index'th record, assuming records are packed from offset zero. */");
+            src.format("    public %s record(int index) { this.offset = index * SIZE; return this; }\n", className);
+            src.println("    public int offset() { return offset; }");
+            src.println("    public java.nio.ByteBuffer buffer() { return buffer; }");
+            src.println();
+
+            for (Slot slot : slots) {
+                BeanProperty p = slot.property;
+                String at = "offset + " + slot.constant();
+                String t = p.type;
+                src.format("    public %s %s() { ", t, p.getter());
+                if (t.equals("boolean")) {
+                    src.format("return buffer.get(%s) != 0; }\n", at);
+                } else if (t.equals("byte")) {
+                    src.format("return buffer.get(%s); }\n", at);
+                } else if (t.equals("java.util.Date")) {
+                    src.format("long millis = buffer.getLong(%s); return millis == Long.MIN_VALUE ? null : new java.util.Date(millis); }\n", at);
+                } else if (t.equals("java.lang.String")) {
+                    src.println();
+                    src.format("        int length = buffer.getInt(%s + 4);\n", at);
+                    src.println("        if (length < 0) return null;");
+                    src.format("        int start = buffer.getInt(%s);\n", at);
+                    src.println("        java.nio.ByteBuffer strings = strings();");
+                    src.println("        char[] chars = new char[length];");
+                    src.println("        for (int i = 0; i < length; i++) chars[i] = strings.getChar(start + (i << 1));");
+                    src.println("        return new String(chars);");
+                    src.println("    }");
+                } else {
+                    src.format("return buffer.get%s(%s); }\n", accessor(t), at);
+                }
+
+                // Final properties are still stored, but can only be written through copyFrom.
+                src.format("    %s void %s(%s %s) { ", p.final_ ? "private" : "public", p.setter(), t, p.name);
+                if (t.equals("boolean")) {
+                    src.format("buffer.put(%s, (byte) (%s ? 1 : 0)); }\n", at, p.name);
+                } else if (t.equals("byte")) {
+                    src.format("buffer.put(%s, %s); }\n", at, p.name);
+                } else if (t.equals("java.util.Date")) {
+                    src.format("buffer.putLong(%s, %s == null ? Long.MIN_VALUE : %2$s.getTime()); }\n", at, p.name);
+                } else if (t.equals("java.lang.String")) {
+                    src.println();
+                    src.format("        if (%s == null) {\n", p.name);
+                    src.format("            buffer.putInt(%s, 0);\n", at);
+                    src.format("            buffer.putInt(%s + 4, -1);\n", at);
+                    src.println("            return;");
+                    src.println("        }");
+                    src.println("        java.nio.ByteBuffer strings = strings();");
+                    src.format("        int length = %s.length();\n", p.name);
+                    src.format("        int start = buffer.getInt(%s);\n", at);
+                    src.format("        if (length > buffer.getInt(%s + 8)) {\n", at);
+                    src.println("            if (strings.remaining() < length << 1) throw new java.nio.BufferOverflowException();");
+                    src.println("            start = strings.position();");
+                    src.println("            strings.position(start + (length << 1));");
+                    src.format("            buffer.putInt(%s + 8, length);\n", at);
+                    src.println("        }");
+                    src.format("        for (int i = 0; i < length; i++) strings.putChar(start + (i << 1), %s.charAt(i));\n", p.name);
+                    src.format("        buffer.putInt(%s, start);\n", at);
+                    src.format("        buffer.putInt(%s + 4, length);\n", at);
+                    src.println("    }");
+                } else {
+                    src.format("buffer.put%s(%s, %s); }\n", accessor(t), at, p.name);
+                }
+            }
+            src.println();
+
+            if (strings)
+                src.println("    /** Writes default values (zero, false or null) into the current record. Its string space is given up. */");
+            else
+                src.println("    /** Writes default values (zero, false or null) into the current record. */");
+            src.println("    public void clear() {");
+            for (Slot slot : slots) {
+                BeanProperty p = slot.property;
+                String at = "offset + " + slot.constant();
+                String t = p.type;
+                if (t.equals("java.lang.String")) {
+                    src.format("        buffer.putInt(%s, 0);\n", at);
+                    src.format("        buffer.putInt(%s + 4, -1);\n", at);
+                    src.format("        buffer.putInt(%s + 8, 0);\n", at);
+                } else if (t.equals("java.util.Date")) {
+                    src.format("        buffer.putLong(%s, Long.MIN_VALUE);\n", at);
+                } else if (t.equals("boolean") || t.equals("byte")) {
+                    src.format("        buffer.put(%s, (byte) 0);\n", at);
+                } else {
+                    src.format("        buffer.put%s(%s, (%s) 0);\n", accessor(t), at, t);
+                }
+            }
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Writes the property values of bean into the current record. */");
+            src.format("    public void copyFrom(%sBase bean) {\n", beanName);
+            for (Slot slot : slots)
+                src.format("        %s(bean.%s());\n", slot.property.setter(), slot.property.getter());
+            src.println("    }");
+            src.println();
+            src.println("    /** Copies the current record into the settable properties of bean. */");
+            src.format("    public void copyTo(%sBase bean) {\n", beanName);
+            for (Slot slot : slots)
+                if (!slot.property.final_)
+                    src.format("        bean.%s(%s());\n", slot.property.setter(), slot.property.getter());
+            src.println("    }");
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+
+    /** The ByteBuffer accessor suffix for a primitive type, as in getDouble/putDouble. */
+    private static String accessor(String type) {
+        return toUpperCase(type.charAt(0)) + type.substring(1);
+    }
+}
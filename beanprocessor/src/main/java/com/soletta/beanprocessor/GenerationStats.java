@@ -0,0 +1,161 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+
+/** Collects what each round of the processor spent and produced, per bean and per tuple package, and
+ * writes it to the file named by -Abeanprocessor.stats. Each round appends a tab separated table,
+ * most expensive first, after a summary line starting with #. The file is replaced by the first round
+ * of a compilation.
+ * <p>
+ * Times are in milliseconds. extract is the time spent reading the annotations, of which mirror is the
+ * part spent resolving class literals; render is the time spent building the base class text, which
+ * may overlap with other beans; write covers the Filer and the companion generators, or all of the
+ * work for a tuple package. Files and bytes are counted as they pass through the Filer, so they include
+ * companions; skipped counts sources whose inputs were unchanged.
+ *
+ * @author rjudson
+ *
+ */
+class GenerationStats {
+
+    static final String OPTION = "beanprocessor.stats";
+
+    private final String path;
+    private final Map<Element, Entry> entries = new LinkedHashMap<Element, Entry>();
+    private int round;
+    private boolean written;
+
+    GenerationStats(String path) {
+        this.path = path;
+    }
+
+    /** Whether a report was asked for. The Filer only counts bytes when it was. */
+    boolean enabled() {
+        return path != null;
+    }
+
+    /** The entry for a bean or tuple package in this round, created on first use. */
+    Entry entry(Element origin) {
+        Entry entry = entries.get(origin);
+        if (entry == null) {
+            if (origin instanceof PackageElement)
+                entry = new Entry("tuples", ((PackageElement) origin).getQualifiedName().toString());
+            else if (origin instanceof TypeElement)
+                entry = new Entry("bean", ((TypeElement) origin).getQualifiedName().toString());
+            else
+                entry = new Entry("other", origin.toString());
+            entries.put(origin, entry);
+        }
+        return entry;
+    }
+
+    /** Ends a round, writing its report if one was asked for. */
+    void endRound(Messager messager) {
+        round++;
+        if (path == null || entries.isEmpty()) {
+            entries.clear();
+            return;
+        }
+        List<Entry> sorted = new ArrayList<Entry>(entries.values());
+        entries.clear();
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                long x = a.totalNanos(), y = b.totalNanos();
+                return x > y ? -1 : x == y ? 0 : 1;
+            }
+        });
+        int files = 0, skipped = 0;
+        long bytes = 0, nanos = 0;
+        for (Entry e : sorted) {
+            files += e.files;
+            skipped += e.skipped;
+            bytes += e.bytes;
+            nanos += e.totalNanos();
+        }
+        try {
+            PrintWriter out = new PrintWriter(new FileWriter(path, written));
+            try {
+                out.println(String.format(Locale.ROOT, "# round %d: %d sources, %d files, %d skipped, %d bytes, %s ms", round, sorted.size(),
+                        files, skipped, bytes, millis(nanos)));
+                out.println("# kind\tname\ttotal\textract\tmirror\trender\twrite\tfiles\tskipped\tbytes\tproperties\tlisteners\tdelegates");
+                for (Entry e : sorted)
+                    out.println(String.format(Locale.ROOT, "%s\t%s\t%s\t%s\t%s\t%s\t%s\t%d\t%d\t%d\t%d\t%d\t%d", e.kind, e.name,
+                            millis(e.totalNanos()), millis(e.extractNanos), millis(e.mirrorNanos), millis(e.renderNanos),
+                            millis(e.writeNanos), e.files, e.skipped, e.bytes, e.properties, e.listeners, e.delegates));
+            } finally {
+                out.close();
+            }
+            if (out.checkError())
+                throw new IOException("write failed");
+            written = true;
+        } catch (IOException e) {
+            messager.printMessage(Kind.WARNING, String.format("Unable to write generation statistics to %s: %s", path, e.getMessage()));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /** The figures for one bean or tuple package. Each entry is only updated by one thread at a time. */
+    static class Entry {
+        final String kind;
+        final String name;
+        long extractNanos;
+        long mirrorNanos;
+        long renderNanos;
+        long writeNanos;
+        int files;
+        int skipped;
+        long bytes;
+        int properties;
+        int listeners;
+        int delegates;
+
+        Entry(String kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        long totalNanos() {
+            return extractNanos + renderNanos + writeNanos;
+        }
+
+        void extracted(BeanModel model, long nanos, long mirrorNanos) {
+            this.extractNanos += nanos;
+            this.mirrorNanos += mirrorNanos;
+            for (BeanProperty p : model.properties) {
+                properties++;
+                if (p.bound)
+                    listeners++;
+                delegates += p.delegateMethods.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Generates the members of an immutable base class: the constructor that takes a Builder, the Builder
+ * itself, a withX method per property, a bulk with(), and equals and hashCode.
+ * <p>
+ * Every field is final and assigned once, from a Builder. List properties are copied into unmodifiable
+ * lists, except when the Builder still holds the list of the bean it was started from, which is already
+ * unmodifiable and is shared. withX returns the bean itself when the value doesn't change; with() returns
+ * a Builder whose build() does the same when nothing was set, so changing several properties makes one
+ * new bean rather than one per property. The hash code is computed in the constructor, and again on first
+ * use after deserialization, since it is transient: the hash of an enum, say, differs from one JVM to the next.
+ *
+ * @author rjudson
+ *
+ */
+class ImmutableGenerator {
+
+    /** The SBean options that need a mutable bean or a no-argument constructor. */
+    static List<String> conflicts(SBean sbean) {
+        List<String> conflicts = new ArrayList<String>();
+        if (sbean.bound())
+            conflicts.add("bound");
+        if (sbean.fxbean())
+            conflicts.add("fxbean");
+        if (sbean.concurrency() != SConcurrency.PLAIN)
+            conflicts.add(sbean.concurrency() + " concurrency");
+        if (sbean.reset())
+            conflicts.add("reset");
+        if (sbean.pool())
+            conflicts.add("pool");
+        if (sbean.copy())
+            conflicts.add("copy");
+        if (sbean.trackDirty())
+            conflicts.add("trackDirty");
+        if (sbean.binary())
+            conflicts.add("binary");
+        if (sbean.xmlCodec())
+            conflicts.add("xmlCodec");
+        if (sbean.json())
+            conflicts.add("json");
+        if (sbean.columnar())
+            conflicts.add("columnar");
+        if (sbean.flyweight())
+            conflicts.add("flyweight");
+        return conflicts;
+    }
+
+    void createImmutable(PrintWriter src, BeanModel model) {
+        String baseName = model.simpleName + "Base";
+        String beanName = model.simpleName;
+        List<BeanProperty> properties = model.properties;
+
+        src.println("    /** The hash code, worked out by the constructor. It is transient, so a deserialized bean has 0 here until");
+        src.println("     * hashCode() works it out again. */");
+        src.println("    private transient int immutableHash;");
+        src.println();
+        src.format("    protected %s(Builder builder) {\n", baseName);
+        for (BeanProperty p : properties) {
+            if (p.element != null)
+                src.format("        this.%1$s = builder.%1$sShared ? builder.%1$s : builder.%1$s == null ? null\n"
+                        + "                : java.util.Collections.unmodifiableList(new java.util.ArrayList<%2$s>(builder.%1$s));\n", p.name, p.element);
+            else
+                src.format("        this.%1$s = builder.%1$s;\n", p.name);
+        }
+        src.println("        this.immutableHash = hashProperties();");
+        src.println("    }");
+        src.println();
+        src.println("    private int hashProperties() {");
+        src.println("        int h = 1;");
+        for (BeanProperty p : properties)
+            src.format("        h = 31 * h + %s;\n", hash(p, "this." + p.name));
+        src.println("        return h;");
+        src.println("    }");
+        src.println();
+
+        src.println("    /** A Builder with every property at its init value. */");
+        src.println("    public static Builder builder() {");
+        src.println("        return new Builder();");
+        src.println("    }");
+        src.println();
+        src.println("    /** A Builder that starts from this bean's values. Its build() returns this bean if no value was changed. */");
+        src.println("    public Builder with() {");
+        src.println("        return new Builder(this);");
+        src.println("    }");
+        src.println();
+        for (BeanProperty p : properties) {
+            src.format("    /** This bean if %s already has the value, otherwise a copy with the new value. */\n", p.name);
+            src.format("    public %s with%s(%s %s) {\n", beanName, p.capName, p.type, p.name);
+            src.format("        if (%s) return (%s) this;\n", same(p, p.name, "this." + p.name), beanName);
+            src.format("        return new %s(new Builder(this).%s(%s));\n", beanName, p.name, p.name);
+            src.println("    }");
+            src.println();
+        }
+
+        src.println("    @Override");
+        src.println("    public int hashCode() {");
+        src.println("        int h = immutableHash;");
+        src.println("        if (h == 0) immutableHash = h = hashProperties();");
+        src.println("        return h;");
+        src.println("    }");
+        src.println();
+        src.println("    @Override");
+        src.println("    public boolean equals(Object o) {");
+        src.println("        if (o == this) return true;");
+        src.format("        if (!(o instanceof %s)) return false;\n", baseName);
+        src.format("        %1$s other = (%1$s) o;\n", baseName);
+        src.print("        return hashCode() == other.hashCode()");
+        for (BeanProperty p : properties)
+            src.format("\n                && %s", same(p, p.name, "other." + p.name));
+        src.println(";");
+        src.println("    }");
+        src.println();
+
+        src.format("    /** Collects the values for a new %s. Properties that aren't set keep their init values, or the values\n", beanName);
+        src.println("     * of the bean the Builder was started from. */");
+        src.println("    public static class Builder {");
+        for (BeanProperty p : properties) {
+            src.format("        private %s %s%s;\n", p.type, p.name, initializer(p));
+            if (p.element != null)
+                src.format("        private boolean %sShared%s;\n", p.name, p.prop.init().isEmpty() ? " = true" : "");
+        }
+        src.format("        private %s builderSource;\n", baseName);
+        src.println("        private boolean builderChanged;");
+        src.println();
+        src.println("        public Builder() {}");
+        src.println();
+        src.format("        Builder(%s source) {\n", baseName);
+        for (BeanProperty p : properties) {
+            src.format("            this.%1$s = source.%1$s;\n", p.name);
+            if (p.element != null)
+                src.format("            this.%sShared = true;\n", p.name);
+        }
+        src.println("            this.builderSource = source;");
+        src.println("        }");
+        src.println();
+        for (BeanProperty p : properties) {
+            src.format("        public Builder %s(%s %s) {\n", p.name, p.type, p.name);
+            src.format("            if (%s) return this;\n", same(p, p.name, "this." + p.name));
+            src.format("            this.%1$s = %1$s;\n", p.name);
+            if (p.element != null)
+                src.format("            this.%sShared = false;\n", p.name);
+            src.println("            this.builderChanged = true;");
+            src.println("            return this;");
+            src.println("        }");
+            src.println();
+        }
+        src.format("        public %s build() {\n", beanName);
+        src.format("            if (builderSource != null && !builderChanged) return (%s) builderSource;\n", beanName);
+        src.format("            return new %s(this);\n", beanName);
+        src.println("        }");
+        src.println("    }");
+        src.println();
+    }
+
+    /** The Builder's starting value for a property, with its leading " = ", or nothing for the type's default. */
+    static String initializer(BeanProperty p) {
+        if (!p.prop.init().isEmpty())
+            return " = " + p.prop.init();
+        if (p.element != null)
+            return String.format(" = java.util.Collections.<%s>emptyList()", p.element);
+        return "";
+    }
+
+    /** An expression that is true when a and b hold the same value of p; floating point values are compared
+     * by their bits, as Double.equals does. */
+    static String same(BeanProperty p, String a, String b) {
+        if (p.type.equals("double"))
+            return String.format("Double.doubleToLongBits(%s) == Double.doubleToLongBits(%s)", a, b);
+        if (p.type.equals("float"))
+            return String.format("Float.floatToIntBits(%s) == Float.floatToIntBits(%s)", a, b);
+        if (p.primitive)
+            return String.format("%s == %s", a, b);
+        return String.format("(%1$s == null ? %2$s == null : %1$s.equals(%2$s))", a, b);
+    }
+
+    /** An expression for the hash code of p's value in field, following the boxed types' hashCode. */
+    static String hash(BeanProperty p, String field) {
+        if (p.type.equals("boolean"))
+            return String.format("(%s ? 1231 : 1237)", field);
+        if (p.type.equals("long"))
+            return String.format("(int) (%1$s ^ (%1$s >>> 32))", field);
+        if (p.type.equals("double"))
+            return String.format("(int) (Double.doubleToLongBits(%1$s) ^ (Double.doubleToLongBits(%1$s) >>> 32))", field);
+        if (p.type.equals("float"))
+            return String.format("Float.floatToIntBits(%s)", field);
+        if (p.primitive)
+            return String.format("%s", field);
+        return String.format("(%1$s == null ? 0 : %1$s.hashCode())", field);
+    }
+}
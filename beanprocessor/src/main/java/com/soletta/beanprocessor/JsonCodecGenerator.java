@@ -0,0 +1,559 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/** Generates the nnnJsonCodec class for an SBean with json set. The codec writes JSON straight to
+ * an Appendable and parses it from a CharSequence with a small hand-written scanner; property names
+ * are dispatched by a switch on their hash code, so there is no reflection and no intermediate Map.
+ * Nested beans are handled by calling the nested type's own codec, so the nested type needs json
+ * set as well.
+ *
+ * @author rjudson
+ *
+ */
+class JsonCodecGenerator {
+
+    private static final String[] PRIMITIVES = { "boolean", "byte", "short", "char", "int", "long", "float", "double" };
+    private static final String[] BOXES = { "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Character",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double" };
+
+    private ProcessingEnvironment processingEnv;
+    private final Set<TypeElement> nestedTypes = new LinkedHashSet<TypeElement>();
+
+    void generateJsonCodec(TypeElement beanTypeElement, List<BeanProperty> properties, ProcessingEnvironment processingEnv)
+            throws IOException {
+
+        this.processingEnv = processingEnv;
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanTypeElement).getQualifiedName().toString();
+        String beanName = beanTypeElement.getSimpleName().toString();
+        String className = beanName + "JsonCodec";
+
+        List<BeanProperty> json = new ArrayList<BeanProperty>();
+        for (BeanProperty p : properties) {
+            String valueType = p.element != null ? p.element : p.type;
+            if ((p.element == null && p.prop.kind() != SKind.SIMPLE) || !(simple(valueType) || nested(valueType) != null)) {
+                processingEnv.getMessager().printMessage(Kind.WARNING,
+                        String.format("Property %s of type %s has no JSON mapping and is left out of the JSON codec.", p.name, p.type),
+                        beanTypeElement);
+                continue;
+            }
+            json.add(p);
+        }
+        boolean instantiable = XmlCodecGenerator.instantiable(beanTypeElement);
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(packageName + "." + className, beanTypeElement);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", packageName);
+            src.println();
+            src.format("/** Writes %s as JSON to an Appendable, and reads it back from a CharSequence. Null properties are\n", beanName);
+            src.println(" * left out, dates are epoch milliseconds, and non-finite numbers are written as the strings \"NaN\",");
+            src.println(" * \"Infinity\" and \"-Infinity\". Unknown properties are skipped when reading. */");
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public final class %s {\n", className);
+            src.println();
+            src.format("    private %s() {}\n", className);
+            src.println();
+
+            // Writing
+            src.format("    public static String toJson(%sBase bean) {\n", beanName);
+            src.println("        StringBuilder out = new StringBuilder();");
+            src.println("        try {");
+            src.println("            write(out, bean);");
+            src.println("        } catch (java.io.IOException e) {");
+            src.println("            throw new IllegalStateException(e);");
+            src.println("        }");
+            src.println("        return out.toString();");
+            src.println("    }");
+            src.println();
+            src.format("    public static void write(Appendable out, %sBase bean) throws java.io.IOException {\n", beanName);
+            src.println("        if (bean == null) {");
+            src.println("            out.append(\"null\");");
+            src.println("            return;");
+            src.println("        }");
+            src.println("        char separator = '{';");
+            for (BeanProperty p : json) {
+                src.println("        {");
+                src.format("            %s value = bean.%s();\n", p.type, p.getter());
+                String indent = "            ";
+                if (!p.primitive) {
+                    src.println("            if (value != null) {");
+                    indent += "    ";
+                }
+                src.format("%sout.append(separator).append(\"\\\"%s\\\":\");\n", indent, p.name);
+                if (p.element != null) {
+                    src.format("%sout.append('[');\n", indent);
+                    src.format("%sboolean first = true;\n", indent);
+                    src.format("%sfor (%s item : value) {\n", indent, p.element);
+                    src.format("%s    if (!first) out.append(',');\n", indent);
+                    src.format("%s    first = false;\n", indent);
+                    src.format("%s    if (item == null) out.append(\"null\");\n", indent);
+                    src.format("%s    else %s;\n", indent, write(p.element, "item"));
+                    src.format("%s}\n", indent);
+                    src.format("%sout.append(']');\n", indent);
+                } else {
+                    src.format("%s%s;\n", indent, write(p.type, "value"));
+                }
+                src.format("%sseparator = ',';\n", indent);
+                if (!p.primitive)
+                    src.println("            }");
+                src.println("        }");
+            }
+            src.println("        if (separator == '{') out.append('{');");
+            src.println("        out.append('}');");
+            src.println("    }");
+            src.println();
+            src.println("    /** Writes the beans as a JSON array, one at a time. */");
+            src.format("    public static void writeAll(Appendable out, Iterable<? extends %sBase> beans) throws java.io.IOException {\n", beanName);
+            src.println("        out.append('[');");
+            src.println("        boolean first = true;");
+            src.format("        for (%sBase bean : beans) {\n", beanName);
+            src.println("            if (!first) out.append(',');");
+            src.println("            first = false;");
+            src.println("            write(out, bean);");
+            src.println("        }");
+            src.println("        out.append(']');");
+            src.println("    }");
+            src.println();
+
+            // Reading
+            src.println("    /** Reads the JSON object starting at index from into the bean, returning the index just past it. */");
+            src.format("    public static int read(CharSequence json, int from, %sBase bean) {\n", beanName);
+            src.println("        Parser p = new Parser(json, from);");
+            src.println("        read(p, bean);");
+            src.println("        return p.pos;");
+            src.println("    }");
+            src.println();
+            if (instantiable) {
+                src.format("    public static %s read(CharSequence json) {\n", beanName);
+                src.println("        Parser p = new Parser(json, 0);");
+                src.println("        if (p.isNull()) return null;");
+                src.format("        %s bean = new %1$s();\n", beanName);
+                src.println("        read(p, bean);");
+                src.println("        return bean;");
+                src.println("    }");
+                src.println();
+                src.println("    /** Lazily reads the objects of a JSON array, one bean at a time. */");
+                src.format("    public static java.util.Iterator<%s> iterate(CharSequence json) {\n", beanName);
+                src.println("        final Parser p = new Parser(json, 0);");
+                src.println("        p.expect('[');");
+                src.format("        return new java.util.Iterator<%s>() {\n", beanName);
+                src.println("            private boolean more = !p.end(']');");
+                src.println();
+                src.println("            public boolean hasNext() {");
+                src.println("                return more;");
+                src.println("            }");
+                src.println();
+                src.format("            public %s next() {\n", beanName);
+                src.println("                if (!more) throw new java.util.NoSuchElementException();");
+                src.format("                %s bean = null;\n", beanName);
+                src.println("                if (!p.isNull()) {");
+                src.format("                    bean = new %s();\n", beanName);
+                src.println("                    read(p, bean);");
+                src.println("                }");
+                src.println("                more = p.next(']');");
+                src.println("                return bean;");
+                src.println("            }");
+                src.println();
+                src.println("            public void remove() { throw new UnsupportedOperationException(); }");
+                src.println("        };");
+                src.println("    }");
+                src.println();
+            }
+
+            // Group the settable properties by name hash; names that collide share a case.
+            Map<Integer, List<BeanProperty>> cases = new LinkedHashMap<Integer, List<BeanProperty>>();
+            for (BeanProperty p : json) {
+                if (p.final_)
+                    continue;
+                List<BeanProperty> group = cases.get(p.name.hashCode());
+                if (group == null)
+                    cases.put(p.name.hashCode(), group = new ArrayList<BeanProperty>());
+                group.add(p);
+            }
+            src.format("    private static void read(Parser p, %sBase bean) {\n", beanName);
+            src.println("        p.expect('{');");
+            src.println("        if (p.end('}')) return;");
+            src.println("        do {");
+            src.println("            switch (p.key()) {");
+            for (Map.Entry<Integer, List<BeanProperty>> e : cases.entrySet()) {
+                src.format("            case %d:\n", e.getKey());
+                for (BeanProperty p : e.getValue()) {
+                    src.format("                if (p.keyIs(\"%s\")) {\n", p.name);
+                    if (p.primitive)
+                        src.format("                    if (!p.isNull()) bean.%s(%s);\n", p.setter(), read(p.type));
+                    else if (p.element != null)
+                        src.format("                    bean.%s(read%s(p));\n", p.setter(), p.capName);
+                    else
+                        src.format("                    bean.%s(%s);\n", p.setter(), read(p.type));
+                    src.println("                    continue;");
+                    src.println("                }");
+                }
+                src.println("                break;");
+            }
+            src.println("            }");
+            src.println("            p.skip();");
+            src.println("        } while (p.next('}'));");
+            src.println("    }");
+            src.println();
+            for (BeanProperty p : json) {
+                if (p.element == null || p.final_)
+                    continue;
+                src.format("    private static %s read%s(Parser p) {\n", p.type, p.capName);
+                src.println("        if (p.isNull()) return null;");
+                src.format("        %s values = new java.util.ArrayList<%s>();\n", p.type, p.element);
+                src.println("        p.expect('[');");
+                src.println("        if (p.end(']')) return values;");
+                src.println("        do {");
+                src.format("            values.add(%s);\n", read(p.element));
+                src.println("        } while (p.next(']'));");
+                src.println("        return values;");
+                src.println("    }");
+                src.println();
+            }
+
+            for (TypeElement nested : nestedTypes) {
+                src.format("    private static %s parse%s(Parser p) {\n", nested.getQualifiedName(), nested.getSimpleName());
+                src.println("        if (p.isNull()) return null;");
+                src.format("        %s value = new %1$s();\n", nested.getQualifiedName());
+                src.format("        p.pos = %sJsonCodec.read(p.json, p.pos, value);\n", nested.getQualifiedName());
+                src.println("        return value;");
+                src.println("    }");
+                src.println();
+            }
+            createHelpers(src);
+            createParser(src);
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+
+    /** An expression that writes a non-null value of type to out. */
+    private String write(String type, String value) {
+        TypeElement nested = nested(type);
+        if (nested != null)
+            return String.format("%sJsonCodec.write(out, %s)", nested.getQualifiedName(), value);
+        if (type.equals("java.lang.String"))
+            return "writeString(out, " + value + ")";
+        if (type.equals("java.util.Date"))
+            return "out.append(Long.toString(" + value + ".getTime()))";
+        if (type.equals("char") || type.equals("java.lang.Character"))
+            return "writeString(out, String.valueOf(" + value + "))";
+        if (type.equals("double") || type.equals("java.lang.Double"))
+            return "writeDouble(out, " + value + ")";
+        if (type.equals("float") || type.equals("java.lang.Float"))
+            return "writeFloat(out, " + value + ")";
+        return "out.append(String.valueOf(" + value + "))";
+    }
+
+    /** An expression that reads a value of type from the parser p. Reference types accept null. */
+    private String read(String type) {
+        TypeElement nested = nested(type);
+        if (nested != null) {
+            nestedTypes.add(nested);
+            return "parse" + nested.getSimpleName() + "(p)";
+        }
+        if (type.equals("java.lang.String"))
+            return "p.string()";
+        if (type.equals("java.util.Date"))
+            return "p.isNull() ? null : new java.util.Date(p.integer())";
+        int box = index(BOXES, type);
+        String primitive = box >= 0 ? PRIMITIVES[box] : type;
+        String value;
+        if (primitive.equals("boolean"))
+            value = "p.bool()";
+        else if (primitive.equals("char"))
+            value = "p.character()";
+        else if (primitive.equals("double"))
+            value = "p.decimal()";
+        else if (primitive.equals("float"))
+            value = "(float) p.decimal()";
+        else if (primitive.equals("long"))
+            value = "p.integer()";
+        else
+            value = String.format("(%s) p.integer()", primitive);
+        return box >= 0 ? String.format("p.isNull() ? null : %s.valueOf(%s)", type, value) : value;
+    }
+
+    private void createHelpers(PrintWriter src) {
+        src.println("    private static void writeString(Appendable out, String s) throws java.io.IOException {");
+        src.println("        out.append('\"');");
+        src.println("        int start = 0;");
+        src.println("        for (int i = 0, n = s.length(); i < n; i++) {");
+        src.println("            char c = s.charAt(i);");
+        src.println("            if (c >= ' ' && c != '\"' && c != '\\\\')");
+        src.println("                continue;");
+        src.println("            out.append(s, start, i);");
+        src.println("            start = i + 1;");
+        src.println("            switch (c) {");
+        src.println("            case '\"': out.append(\"\\\\\\\"\"); break;");
+        src.println("            case '\\\\': out.append(\"\\\\\\\\\"); break;");
+        src.println("            case '\\n': out.append(\"\\\\n\"); break;");
+        src.println("            case '\\r': out.append(\"\\\\r\"); break;");
+        src.println("            case '\\t': out.append(\"\\\\t\"); break;");
+        src.println("            default:");
+        src.println("                out.append(\"\\\\u00\").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));");
+        src.println("            }");
+        src.println("        }");
+        src.println("        out.append(s, start, s.length()).append('\"');");
+        src.println("    }");
+        src.println();
+        src.println("    private static void writeDouble(Appendable out, double value) throws java.io.IOException {");
+        src.println("        if (Double.isNaN(value) || Double.isInfinite(value))");
+        src.println("            out.append('\"').append(Double.toString(value)).append('\"');");
+        src.println("        else");
+        src.println("            out.append(Double.toString(value));");
+        src.println("    }");
+        src.println();
+        src.println("    private static void writeFloat(Appendable out, float value) throws java.io.IOException {");
+        src.println("        if (Float.isNaN(value) || Float.isInfinite(value))");
+        src.println("            out.append('\"').append(Float.toString(value)).append('\"');");
+        src.println("        else");
+        src.println("            out.append(Float.toString(value));");
+        src.println("    }");
+        src.println();
+    }
+
+    /** The scanner. Every method skips leading whitespace, and errors are IllegalArgumentExceptions
+     * carrying the index of the problem. */
+    private void createParser(PrintWriter src) {
+        src.println("    private static final class Parser {");
+        src.println("        final CharSequence json;");
+        src.println("        final int length;");
+        src.println("        int pos;");
+        src.println("        private final StringBuilder key = new StringBuilder();");
+        src.println();
+        src.println("        Parser(CharSequence json, int pos) {");
+        src.println("            this.json = json;");
+        src.println("            this.length = json.length();");
+        src.println("            this.pos = pos;");
+        src.println("        }");
+        src.println();
+        src.println("        /** Skips whitespace and returns the next character, without consuming it. */");
+        src.println("        char peek() {");
+        src.println("            while (pos < length) {");
+        src.println("                char c = json.charAt(pos);");
+        src.println("                if (c != ' ' && c != '\\n' && c != '\\r' && c != '\\t')");
+        src.println("                    return c;");
+        src.println("                pos++;");
+        src.println("            }");
+        src.println("            throw error(\"unexpected end of input\");");
+        src.println("        }");
+        src.println();
+        src.println("        IllegalArgumentException error(String message) {");
+        src.println("            return new IllegalArgumentException(\"JSON \" + message + \" at index \" + pos);");
+        src.println("        }");
+        src.println();
+        src.println("        void expect(char c) {");
+        src.println("            if (peek() != c) throw error(\"expected '\" + c + \"'\");");
+        src.println("            pos++;");
+        src.println("        }");
+        src.println();
+        src.println("        /** Consumes close if it is next. */");
+        src.println("        boolean end(char close) {");
+        src.println("            if (peek() != close) return false;");
+        src.println("            pos++;");
+        src.println("            return true;");
+        src.println("        }");
+        src.println();
+        src.println("        /** Consumes a separator, returning true, or the closing character, returning false. */");
+        src.println("        boolean next(char close) {");
+        src.println("            char c = peek();");
+        src.println("            pos++;");
+        src.println("            if (c == ',') return true;");
+        src.println("            if (c == close) return false;");
+        src.println("            pos--;");
+        src.println("            throw error(\"expected ',' or '\" + close + \"'\");");
+        src.println("        }");
+        src.println();
+        src.println("        private boolean literal(String word) {");
+        src.println("            if (peek() != word.charAt(0)) return false;");
+        src.println("            if (pos + word.length() > length || !word.contentEquals(json.subSequence(pos, pos + word.length())))");
+        src.println("                throw error(\"unknown literal\");");
+        src.println("            pos += word.length();");
+        src.println("            return true;");
+        src.println("        }");
+        src.println();
+        src.println("        /** Consumes a null literal if it is next. */");
+        src.println("        boolean isNull() {");
+        src.println("            return literal(\"null\");");
+        src.println("        }");
+        src.println();
+        src.println("        boolean bool() {");
+        src.println("            if (literal(\"true\")) return true;");
+        src.println("            if (literal(\"false\")) return false;");
+        src.println("            throw error(\"expected a boolean\");");
+        src.println("        }");
+        src.println();
+        src.println("        /** Reads an integer in place; a number with a fraction or exponent is truncated. */");
+        src.println("        long integer() {");
+        src.println("            int start = pos;");
+        src.println("            boolean negative = peek() == '-';");
+        src.println("            if (negative) pos++;");
+        src.println("            int digits = pos;");
+        src.println("            long value = 0;");
+        src.println("            while (pos < length) {");
+        src.println("                char c = json.charAt(pos);");
+        src.println("                if (c < '0' || c > '9') break;");
+        src.println("                value = value * 10 + (c - '0');");
+        src.println("                pos++;");
+        src.println("            }");
+        src.println("            if (pos == digits) throw error(\"expected a number\");");
+        src.println("            if (pos < length && (json.charAt(pos) == '.' || json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {");
+        src.println("                pos = start;");
+        src.println("                return (long) decimal();");
+        src.println("            }");
+        src.println("            return negative ? -value : value;");
+        src.println("        }");
+        src.println();
+        src.println("        double decimal() {");
+        src.println("            if (peek() == '\"') return Double.parseDouble(string());");
+        src.println("            int start = pos;");
+        src.println("            while (pos < length && \"+-0123456789.eE\".indexOf(json.charAt(pos)) >= 0)");
+        src.println("                pos++;");
+        src.println("            if (pos == start) throw error(\"expected a number\");");
+        src.println("            return Double.parseDouble(json.subSequence(start, pos).toString());");
+        src.println("        }");
+        src.println();
+        src.println("        char character() {");
+        src.println("            String s = string();");
+        src.println("            if (s == null || s.length() != 1) throw error(\"expected a single character\");");
+        src.println("            return s.charAt(0);");
+        src.println("        }");
+        src.println();
+        src.println("        /** Reads a string, or a null literal. */");
+        src.println("        String string() {");
+        src.println("            if (isNull()) return null;");
+        src.println("            expect('\"');");
+        src.println("            int start = pos;");
+        src.println("            while (pos < length) {");
+        src.println("                char c = json.charAt(pos);");
+        src.println("                if (c == '\"') {");
+        src.println("                    return json.subSequence(start, pos++).toString();");
+        src.println("                }");
+        src.println("                if (c == '\\\\') {");
+        src.println("                    StringBuilder b = new StringBuilder().append(json, start, pos);");
+        src.println("                    while (pos < length) {");
+        src.println("                        c = json.charAt(pos++);");
+        src.println("                        if (c == '\"') return b.toString();");
+        src.println("                        b.append(c == '\\\\' ? escape() : c);");
+        src.println("                    }");
+        src.println("                    break;");
+        src.println("                }");
+        src.println("                pos++;");
+        src.println("            }");
+        src.println("            throw error(\"unterminated string\");");
+        src.println("        }");
+        src.println();
+        src.println("        /** Decodes the escape sequence after a backslash. */");
+        src.println("        private char escape() {");
+        src.println("            if (pos >= length) throw error(\"unterminated string\");");
+        src.println("            char c = json.charAt(pos++);");
+        src.println("            switch (c) {");
+        src.println("            case 'b': return '\\b';");
+        src.println("            case 'f': return '\\f';");
+        src.println("            case 'n': return '\\n';");
+        src.println("            case 'r': return '\\r';");
+        src.println("            case 't': return '\\t';");
+        src.println("            case 'u':");
+        src.println("                if (pos + 4 > length) throw error(\"bad unicode escape\");");
+        src.println("                pos += 4;");
+        src.println("                return (char) Integer.parseInt(json.subSequence(pos - 4, pos).toString(), 16);");
+        src.println("            default: return c;");
+        src.println("            }");
+        src.println("        }");
+        src.println();
+        src.println("        /** Reads an object key and its colon into a reused buffer, returning the key's String hash code. */");
+        src.println("        int key() {");
+        src.println("            expect('\"');");
+        src.println("            key.setLength(0);");
+        src.println("            int hash = 0;");
+        src.println("            while (true) {");
+        src.println("                if (pos >= length) throw error(\"unterminated key\");");
+        src.println("                char c = json.charAt(pos++);");
+        src.println("                if (c == '\"') break;");
+        src.println("                if (c == '\\\\') c = escape();");
+        src.println("                key.append(c);");
+        src.println("                hash = 31 * hash + c;");
+        src.println("            }");
+        src.println("            expect(':');");
+        src.println("            return hash;");
+        src.println("        }");
+        src.println();
+        src.println("        boolean keyIs(String name) {");
+        src.println("            return name.contentEquals(key);");
+        src.println("        }");
+        src.println();
+        src.println("        /** Skips over any value. */");
+        src.println("        void skip() {");
+        src.println("            char c = peek();");
+        src.println("            if (c == '\"') {");
+        src.println("                string();");
+        src.println("            } else if (c == '{') {");
+        src.println("                pos++;");
+        src.println("                if (end('}')) return;");
+        src.println("                do {");
+        src.println("                    key();");
+        src.println("                    skip();");
+        src.println("                } while (next('}'));");
+        src.println("            } else if (c == '[') {");
+        src.println("                pos++;");
+        src.println("                if (end(']')) return;");
+        src.println("                do {");
+        src.println("                    skip();");
+        src.println("                } while (next(']'));");
+        src.println("            } else if (c == 't' || c == 'f') {");
+        src.println("                bool();");
+        src.println("            } else if (!isNull()) {");
+        src.println("                decimal();");
+        src.println("            }");
+        src.println("        }");
+        src.println("    }");
+    }
+
+    private static boolean simple(String type) {
+        return index(PRIMITIVES, type) >= 0 || index(BOXES, type) >= 0 || type.equals("java.lang.String") || type.equals("java.util.Date");
+    }
+
+    /** The type element of a nested bean with its own JSON codec, or null. */
+    private TypeElement nested(String type) {
+        if (type.indexOf('<') >= 0 || index(PRIMITIVES, type) >= 0)
+            return null;
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(type);
+        if (element == null)
+            return null;
+        SBean sbean = element.getAnnotation(SBean.class);
+        return sbean != null && sbean.json() && XmlCodecGenerator.instantiable(element) ? element : null;
+    }
+
+    private static int index(String[] values, String value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i].equals(value))
+                return i;
+        return -1;
+    }
+}
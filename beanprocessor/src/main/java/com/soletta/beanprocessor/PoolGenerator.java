@@ -0,0 +1,112 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/** Generates the nnnPool class for an SBean with pool set. Each thread keeps a small stack of free
+ * instances, so acquire and release normally touch no shared state; when a thread's stack is full
+ * or empty it falls back to a bounded shared queue, and beyond that to the allocator and the garbage
+ * collector. Released beans are reset before they are reused.
+ *
+ * @author rjudson
+ *
+ */
+class PoolGenerator {
+
+    void generatePool(TypeElement beanTypeElement, ProcessingEnvironment processingEnv) throws IOException {
+
+        if (!XmlCodecGenerator.instantiable(beanTypeElement)) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "A pooled bean needs a public no-argument constructor.", beanTypeElement);
+            return;
+        }
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanTypeElement).getQualifiedName().toString();
+        String beanName = beanTypeElement.getSimpleName().toString();
+        String className = beanName + "Pool";
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(packageName + "." + className, beanTypeElement);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", packageName);
+            src.println();
+            src.format("/** Recycles %s instances. acquire() returns a reset bean; pass it back to release() when it is no\n", beanName);
+            src.println(" * longer referenced anywhere. Each thread has its own free list, backed by a bounded shared overflow. */");
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public final class %s {\n", className);
+            src.println();
+            src.println("    private static final class FreeList {");
+            src.format("        final %s[] beans;\n", beanName);
+            src.println("        int size;");
+            src.println();
+            src.println("        FreeList(int capacity) {");
+            src.format("            beans = new %s[capacity];\n", beanName);
+            src.println("        }");
+            src.println("    }");
+            src.println();
+            src.println("    private final int localCapacity;");
+            src.println("    private final ThreadLocal<FreeList> local = new ThreadLocal<FreeList>() {");
+            src.println("        protected FreeList initialValue() {");
+            src.println("            return new FreeList(localCapacity);");
+            src.println("        }");
+            src.println("    };");
+            src.format("    private final java.util.concurrent.ArrayBlockingQueue<%s> shared;\n", beanName);
+            src.println();
+            src.format("    public %s() {\n", className);
+            src.println("        this(64, 1024);");
+            src.println("    }");
+            src.println();
+            src.println("    /** @param localCapacity the most free beans each thread keeps");
+            src.println("     *  @param sharedCapacity the most free beans kept in the shared overflow */");
+            src.format("    public %s(int localCapacity, int sharedCapacity) {\n", className);
+            src.println("        if (localCapacity < 0 || sharedCapacity < 1) throw new IllegalArgumentException();");
+            src.println("        this.localCapacity = localCapacity;");
+            src.format("        this.shared = new java.util.concurrent.ArrayBlockingQueue<%s>(sharedCapacity);\n", beanName);
+            src.println("    }");
+            src.println();
+            src.println("    /** Returns a free bean in its reset state, allocating one if none are free. */");
+            src.format("    public %s acquire() {\n", beanName);
+            src.println("        FreeList free = local.get();");
+            src.println("        if (free.size > 0) {");
+            src.format("            %s bean = free.beans[--free.size];\n", beanName);
+            src.println("            free.beans[free.size] = null;");
+            src.println("            return bean;");
+            src.println("        }");
+            src.format("        %s bean = shared.poll();\n", beanName);
+            src.format("        return bean != null ? bean : new %s();\n", beanName);
+            src.println("    }");
+            src.println();
+            src.println("    /** Resets the bean and keeps it for reuse. The caller must not touch it afterwards. */");
+            src.format("    public void release(%s bean) {\n", beanName);
+            src.println("        bean.reset();");
+            src.println("        FreeList free = local.get();");
+            src.println("        if (free.size < free.beans.length)");
+            src.println("            free.beans[free.size++] = bean;");
+            src.println("        else");
+            src.println("            shared.offer(bean);");
+            src.println("    }");
+            src.println();
+            src.println("    /** The number of beans in the shared overflow. */");
+            src.println("    public int sharedSize() {");
+            src.println("        return shared.size();");
+            src.println("    }");
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+}
@@ -58,6 +58,14 @@ public @interface SBean {
      */
     boolean extractors() default false;
     
+    /** Alongside each guava extractor for a numeric primitive property, create an unboxed 
+     * java.util.function ToIntFunction, ToLongFunction or ToDoubleFunction. The generated code 
+     * requires Java 8.
+     * 
+     * @return
+     */
+    boolean primitiveExtractors() default false;
+    
     /** Create a "fluent" API that allows chained setting of properties. 
      * 
      */
@@ -85,6 +93,30 @@ public @interface SBean {
      */
     boolean mxbean() default false;
     
+    /** Count reads, writes and listener notifications for each MXBean property, in per-instance LongAdders,
+     * and expose the counts as MXBean attributes. The generated code requires Java 8.
+     * 
+     * @return
+     */
+    boolean mxbeanCounters() default false;
+    
+    /** Record JFR events from every setter and from listener dispatch; override with nojfr. Each bean gets its
+     * own PropertySet and PropertyChangeDispatch event types, which cost an isEnabled() check when they are not
+     * being recorded. Ignored, with a warning, when jdk.jfr isn't available to the compilation.
+     * 
+     * @return
+     */
+    boolean jfr() default false;
+    
+    /** How the generated fields are shared between threads. ATOMIC makes int, long and reference properties
+     * volatile, with lock-free compareAndSet, getAndSet and, for numbers, getAndAdd and accumulate methods.
+     * STAMPED writes under a StampedLock and generates snapshot(), which returns a consistent nnnSnapshot.
+     * Override with concurrency on the property.
+     * 
+     * @return
+     */
+    SConcurrency concurrency() default SConcurrency.PLAIN;
+    
     /** Generate string constants for each property.
      * 
      * @return
@@ -115,4 +147,83 @@ public @interface SBean {
      */
     boolean protectedScope() default false;
     
+    /** Also generate an nnnColumns class, which stores many instances of the bean as one array
+     * per property rather than one object per row.
+     * 
+     * @return
+     */
+    boolean columnar() default false;
+    
+    /** Also generate an nnnFlyweight class, which reads and writes the bean's properties in a fixed
+     * binary layout over a ByteBuffer. Primitive, String and Date properties are supported; others 
+     * are left out of the layout with a warning.
+     * 
+     * @return
+     */
+    boolean flyweight() default false;
+    
+    /** Generate writeTo and readFrom methods for a compact, versioned binary form of the bean, over
+     * ByteBuffer and DataOutput/DataInput. Primitive, String, Date and list-of-those properties are
+     * supported; others are left out with a warning.
+     * 
+     * @return
+     */
+    boolean binary() default false;
+    
+    /** Also generate an nnnXmlCodec class that reads and writes the bean through StAX, without JAXB's
+     * reflection. It follows the same attribute, element, list and transient choices as the generated
+     * JAXB annotations, so documents can be exchanged with JAXB in either direction.
+     * 
+     * @return
+     */
+    boolean xmlCodec() default false;
+    
+    /** Also generate an nnnJsonCodec class with a streaming JSON writer and parser for the bean. Primitive,
+     * String, Date and list properties are supported, as are nested beans that also set json.
+     * 
+     * @return
+     */
+    boolean json() default false;
+    
+    /** Keep a mask of the properties whose setters have been called since the last clearDirty(), and
+     * generate writeDelta and applyDelta, which send only those properties in the binary format. This
+     * also generates the binary codec methods.
+     * 
+     * @return
+     */
+    boolean trackDirty() default false;
+    
+    /** Generate a reset() method that restores every property to its init value, or its type's default, 
+     * without firing change events. Lists with an init value are cleared in place.
+     * 
+     * @return
+     */
+    boolean reset() default false;
+    
+    /** Also generate an nnnPool class that recycles instances through per-thread free lists, with a bounded
+     * shared overflow. Implies reset. The bean needs a public no-argument constructor.
+     * 
+     * @return
+     */
+    boolean pool() default false;
+    
+    /** Generate copyFrom(other) and copyFrom(other, mask), which copy fields straight from another instance.
+     * Bound beans notify listeners once per changed property, after the copy; lists are copied into the 
+     * existing list rather than shared.
+     * 
+     * @return
+     */
+    boolean copy() default false;
+    
+    /** Generate an immutable bean: every field is final and set from a generated Builder, with a withX method
+     * per property that returns the same bean when the value is unchanged, a with() Builder for changing
+     * several properties at once, and equals and hashCode, with the hash worked out once. List properties
+     * are unmodifiable copies. The bean needs a constructor that passes an nnnBase.Builder to super, and
+     * can't also be bound, fxbean, ATOMIC, reset, pooled, copied, dirty tracked, or use the codecs,
+     * columns or flyweight.
+     * 
+     * @return
+     */
+    boolean immutable() default false;
+    
 }
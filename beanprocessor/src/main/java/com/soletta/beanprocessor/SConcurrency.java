@@ -0,0 +1,39 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package com.soletta.beanprocessor;
+
+/** How generated fields are shared between threads.
+ * 
+ * @author rjudson
+ *
+ */
+public enum SConcurrency {
+    /** Inherit the bean's setting; only meaningful on a property.
+     * 
+     */
+    UNSET,
+    /** Plain fields, for beans confined to one thread or guarded by the caller (the default).
+     * 
+     */
+    PLAIN,
+    /** Volatile fields with lock-free compareAndSet, getAndSet and lazySet methods, and getAndAdd and
+     * accumulate for int and long properties. Only int, long and reference properties can be atomic.
+     * 
+     */
+    ATOMIC,
+    /** Setters, copyFrom, reset and update(Runnable) write under the bean's StampedLock, and the bean gets
+     * a snapshot() method that copies every property into an immutable nnnSnapshot with an optimistic read.
+     * The binary readers and the atomic methods of ATOMIC properties don't take the lock.
+     * 
+     */
+    STAMPED
+}
@@ -71,7 +71,8 @@ public @interface SProperty {
      */
     boolean bound() default false;
     /** Triggers generation of a guava-compatible predicate for this property. Non-boolean 
-     * properties create a HAS_ predicate.
+     * properties create a HAS_ predicate, and numeric primitives create _GT, _GE, _LT, _LE and _EQ
+     * factory methods that build comparison predicates.
      * @return
      */
     boolean predicate() default false;
@@ -154,6 +155,23 @@ public @interface SProperty {
      */
     boolean nomxbean() default false;
     
+    /** Record JFR events when this property is set, and when its listeners are called.
+     * 
+     * @return
+     */
+    boolean jfr() default false;
+    /** Don't record JFR events for this property.
+     * 
+     * @return
+     */
+    boolean nojfr() default false;
+    
+    /** How this property is shared between threads, overriding the bean's setting.
+     * 
+     * @return
+     */
+    SConcurrency concurrency() default SConcurrency.UNSET;
+    
     /** Generate JavaFX-compatible property.
      * 
      * @return
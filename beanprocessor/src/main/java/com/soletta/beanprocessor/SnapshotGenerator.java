@@ -0,0 +1,196 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.JavaFileObject;
+
+/** Generates the StampedLock support of a bean with STAMPED properties, and its nnnSnapshot class.
+ * <p>
+ * Writers of STAMPED properties hold the bean's write lock while they assign the field, and update(Runnable)
+ * holds it across several setters. snapshot() reads every property under an optimistic read stamp, which costs
+ * no more than the reads themselves when no writer is active, and tries again if a write got in; after a few
+ * tries it takes the read lock, so a steady stream of writers can't starve it. The values are then put into an
+ * immutable nnnSnapshot, outside the lock. A STAMPED list is shared rather than copied, which is safe because
+ * nothing can change it in place: the setter stores its own copy of the caller's list, the getter returns an
+ * unmodifiable view, and copyFrom, reset and the readers assign new lists. Other lists are copied.
+ * <p>
+ * StampedLock isn't reentrant, so the thread running update() is recorded; its setters skip the lock, and its
+ * snapshot() reads the fields directly, since no other writer can get in. The owner field is only ever equal to
+ * the current thread when that thread set it, so it needs no volatile.
+ *
+ * @author rjudson
+ *
+ */
+class SnapshotGenerator {
+
+    /** How many optimistic reads snapshot() tries before it takes the read lock. */
+    static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    /** Writes the lock, update(Runnable) for unbound beans, and snapshot() into the base class. */
+    void createStampedSupport(PrintWriter src, BeanModel model) {
+        String snapshotName = model.simpleName + "Snapshot";
+        src.println("    /** Held by writers of STAMPED properties, so that snapshot() sees all of a write or none of it. */");
+        src.println("    private final transient java.util.concurrent.locks.StampedLock stampedLock = new java.util.concurrent.locks.StampedLock();");
+        src.println("    /** The thread inside update(), whose setters already hold the write lock. */");
+        src.println("    private transient Thread stampedOwner;");
+        src.println();
+        src.println("    private long writeStamp() {");
+        src.println("        return stampedOwner == Thread.currentThread() ? 0L : stampedLock.writeLock();");
+        src.println("    }");
+        src.println();
+        src.println("    private void releaseStamp(long lockStamp) {");
+        src.println("        if (lockStamp != 0L) stampedLock.unlockWrite(lockStamp);");
+        src.println("    }");
+        src.println();
+        src.println("    /** Runs changes while holding the write lock; setters on this thread don't take it again. */");
+        src.println("    private void writeLocked(Runnable changes) {");
+        src.println("        long lockStamp = writeStamp();");
+        src.println("        Thread owner = stampedOwner;");
+        src.println("        stampedOwner = Thread.currentThread();");
+        src.println("        try {");
+        src.println("            changes.run();");
+        src.println("        } finally {");
+        src.println("            stampedOwner = owner;");
+        src.println("            releaseStamp(lockStamp);");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        // Bound beans already have update(Runnable), from the batch update support, which calls writeLocked.
+        if (!model.bound) {
+            src.println("    /** Runs changes while holding the write lock, so snapshot() sees all of the changes or none of them.");
+            src.println("     * Keep changes short: snapshot() waits for them. */");
+            src.println("    public void update(Runnable changes) {");
+            src.println("        writeLocked(changes);");
+            src.println("    }");
+            src.println();
+        }
+
+        src.println("    /** Copies every property at a single point in time. The reads are optimistic, and are repeated if a write");
+        src.format("     * got in; after %d tries the read lock is taken. Inside update(), the thread already holds the write lock,\n",
+                OPTIMISTIC_ATTEMPTS);
+        src.println("     * so the snapshot includes the changes made so far. */");
+        src.format("    public %s snapshot() {\n", snapshotName);
+        src.println("        if (stampedOwner == Thread.currentThread())");
+        src.format("            return new %s(%s);\n", snapshotName, reads(model));
+        for (BeanProperty p : model.properties)
+            src.format("        %s %s;\n", p.type, p.name);
+        src.format("        for (int snapshotAttempt = 0; snapshotAttempt < %d; snapshotAttempt++) {\n", OPTIMISTIC_ATTEMPTS);
+        src.println("            long snapshotStamp = stampedLock.tryOptimisticRead();");
+        src.println("            if (snapshotStamp == 0L) continue;");
+        for (BeanProperty p : model.properties)
+            src.format("            %s = %s;\n", p.name, read(p));
+        src.println("            if (stampedLock.validate(snapshotStamp))");
+        src.format("                return new %s(%s);\n", snapshotName, arguments(model));
+        src.println("        }");
+        src.println("        long snapshotStamp = stampedLock.readLock();");
+        src.println("        try {");
+        for (BeanProperty p : model.properties)
+            src.format("            %s = %s;\n", p.name, read(p));
+        src.println("        } finally {");
+        src.println("            stampedLock.unlockRead(snapshotStamp);");
+        src.println("        }");
+        src.format("        return new %s(%s);\n", snapshotName, arguments(model));
+        src.println("    }");
+        src.println();
+    }
+
+    private static String read(BeanProperty p) {
+        return p.fx ? "this." + p.name + ".get()" : "this." + p.name;
+    }
+
+    private static String reads(BeanModel model) {
+        StringBuilder args = new StringBuilder();
+        for (BeanProperty p : model.properties) {
+            if (args.length() > 0)
+                args.append(", ");
+            args.append(read(p));
+        }
+        return args.toString();
+    }
+
+    private static String arguments(BeanModel model) {
+        StringBuilder args = new StringBuilder();
+        for (BeanProperty p : model.properties) {
+            if (args.length() > 0)
+                args.append(", ");
+            args.append(p.name);
+        }
+        return args.toString();
+    }
+
+    /** Generates nnnSnapshot: final fields, the bean's getters, and equals and a hashCode worked out once. */
+    void generateSnapshot(BeanModel model, ProcessingEnvironment processingEnv) throws IOException {
+        String className = model.simpleName + "Snapshot";
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(model.qualifiedName + "Snapshot", model.element);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", model.packageName);
+            src.println();
+            src.format("/** The properties of a %s at one point in time, as taken by snapshot(). Lists are unmodifiable. */\n",
+                    model.simpleName);
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public final class %s {\n", className);
+            src.println();
+            for (BeanProperty p : model.properties)
+                src.format("    private final %s %s;\n", p.type, p.name);
+            src.println("    private final int snapshotHash;");
+            src.println();
+            src.format("    %s(", className);
+            boolean first = true;
+            for (BeanProperty p : model.properties) {
+                src.format("%s%s %s", first ? "" : ", ", p.type, p.name);
+                first = false;
+            }
+            src.println(") {");
+            for (BeanProperty p : model.properties) {
+                if (p.element != null && p.stamped)
+                    src.format("        this.%1$s = %1$s == null ? null : java.util.Collections.unmodifiableList(%1$s);\n", p.name);
+                else if (p.element != null)
+                    src.format("        this.%1$s = %1$s == null ? null : java.util.Collections.unmodifiableList(new java.util.ArrayList<%2$s>(%1$s));\n",
+                            p.name, p.element);
+                else
+                    src.format("        this.%1$s = %1$s;\n", p.name);
+            }
+            src.println("        int h = 1;");
+            for (BeanProperty p : model.properties)
+                src.format("        h = 31 * h + %s;\n", ImmutableGenerator.hash(p, "this." + p.name));
+            src.println("        this.snapshotHash = h;");
+            src.println("    }");
+            src.println();
+            for (BeanProperty p : model.properties)
+                src.format("    public %s %s() { return %s; }\n", p.type, p.getter(), p.name);
+            src.println();
+            src.println("    @Override");
+            src.println("    public int hashCode() {");
+            src.println("        return snapshotHash;");
+            src.println("    }");
+            src.println();
+            src.println("    @Override");
+            src.println("    public boolean equals(Object o) {");
+            src.println("        if (o == this) return true;");
+            src.format("        if (!(o instanceof %s)) return false;\n", className);
+            src.format("        %1$s other = (%1$s) o;\n", className);
+            src.print("        return snapshotHash == other.snapshotHash");
+            for (BeanProperty p : model.properties)
+                src.format("\n                && %s", ImmutableGenerator.same(p, p.name, "other." + p.name));
+            src.println(";");
+            src.println("    }");
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+}
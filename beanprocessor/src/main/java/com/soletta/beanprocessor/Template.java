@@ -0,0 +1,101 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A format string that is parsed once, for the snippets written for every property. It accepts the
+ * part of java.util.Formatter that the generators use: %s and %d, with an explicit (%2$s) or previous
+ * (%&lt;s) argument index, and %%. Arguments are written with String.valueOf, so the output is what
+ * String.format would produce, without parsing the pattern on each call. Templates are immutable and
+ * can be shared by rendering threads.
+ *
+ * @author rjudson
+ *
+ */
+final class Template {
+
+    /** literals[i] comes before argument slots[i]; the last literal follows the final slot. */
+    private final String[] literals;
+    private final int[] slots;
+
+    private Template(String[] literals, int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    static Template compile(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        StringBuilder text = new StringBuilder();
+        int next = 0, last = -1, length = pattern.length();
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                text.append(c);
+                continue;
+            }
+            int j = i + 1;
+            if (j < length && pattern.charAt(j) == '%') {
+                text.append('%');
+                i = j;
+                continue;
+            }
+            int index;
+            if (j < length && pattern.charAt(j) == '<') {
+                if (last < 0)
+                    throw new IllegalArgumentException("No previous argument for %< in " + pattern);
+                index = last;
+                j++;
+            } else {
+                int k = j;
+                while (k < length && Character.isDigit(pattern.charAt(k)))
+                    k++;
+                if (k > j && k < length && pattern.charAt(k) == '$') {
+                    index = Integer.parseInt(pattern.substring(j, k)) - 1;
+                    j = k + 1;
+                } else {
+                    index = next++;
+                }
+            }
+            if (j >= length || (pattern.charAt(j) != 's' && pattern.charAt(j) != 'd'))
+                throw new IllegalArgumentException("Unsupported conversion at " + i + " in " + pattern);
+            literals.add(text.toString());
+            text.setLength(0);
+            slots.add(index);
+            last = index;
+            i = j;
+        }
+        literals.add(text.toString());
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++)
+            slotArray[i] = slots.get(i);
+        return new Template(literals.toArray(new String[literals.size()]), slotArray);
+    }
+
+    void print(PrintWriter out, Object... args) {
+        for (int i = 0; i < slots.length; i++) {
+            out.write(literals[i]);
+            out.write(String.valueOf(args[slots[i]]));
+        }
+        out.write(literals[slots.length]);
+    }
+
+    String format(Object... args) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < slots.length; i++)
+            b.append(literals[i]).append(args[slots[i]]);
+        return b.append(literals[slots.length]).toString();
+    }
+}
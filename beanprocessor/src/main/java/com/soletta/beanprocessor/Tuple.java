@@ -10,4 +10,13 @@ import java.lang.annotation.Target;
 public @interface Tuple {
   Class<?> [] value();
   String tupleTypeName() default "";
+  /** Also generate nnnMap&lt;V&gt; and nnnSet, open addressing collections keyed by this tuple's components. */
+  boolean map() default false;
+  /** The hashCode strategy for this tuple. */
+  TupleHash hash() default TupleHash.CLASSIC;
+  /** Compute the hash code once, in the constructor, and keep it in a field. */
+  boolean cacheHash() default false;
+  /** Also generate static sort and parallelSort methods, a radix sort over the components. parallelSort
+   *  runs on fork/join, so the generated code needs Java 7. */
+  boolean sort() default false;
 }
@@ -0,0 +1,190 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.PackageElement;
+import javax.tools.JavaFileObject;
+
+/** Generates nnnArray for a specialized tuple: a growable list of tuples held as one array per component,
+ * so rows cost no object header and a scan over one component reads contiguous memory. This is the
+ * tuple counterpart of the nnnColumns class generated for beans.
+ * <p>
+ * When java.util.stream is on the compilation classpath each primitive column can also be read as an
+ * IntStream, LongStream or DoubleStream. The streams are written with anonymous classes rather than
+ * lambdas, so they only need the Java 8 library, not Java 8 source.
+ *
+ * @author rjudson
+ *
+ */
+class TupleArrayGenerator {
+
+    private final String className;
+    private final String[] types;
+    private final String[] names;
+    private final boolean[] primitive;
+
+    TupleArrayGenerator(String className, String[] types, String[] names, boolean[] primitive) {
+        this.className = className;
+        this.types = types;
+        this.names = names;
+        this.primitive = primitive;
+    }
+
+    void generate(PackageElement packageElement, ProcessingEnvironment processingEnv) throws IOException {
+        String pkg = packageElement.getQualifiedName().toString();
+        String name = className + "Array";
+        boolean streams = processingEnv.getElementUtils().getTypeElement("java.util.stream.IntStream") != null;
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(pkg + "." + name, packageElement);
+        PrintWriter pw = new PrintWriter(source.openOutputStream());
+        try {
+            int n = names.length;
+            StringBuilder params = new StringBuilder(), args = new StringBuilder(), rowArgs = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                String sep = i > 0 ? ", " : "";
+                params.append(sep).append(types[i]).append(' ').append(names[i]);
+                args.append(sep).append("tuple.").append(names[i]);
+                rowArgs.append(sep).append('k').append(i + 1).append("[row]");
+            }
+
+            pw.format("package %s;\n", pkg);
+            pw.println();
+            pw.format("/** A growable list of %s rows, holding each component in its own array. Rows are addressed by\n", className);
+            pw.println(" * index, or through a reusable Cursor. */");
+            pw.format("public class %s {\n", name);
+            pw.println();
+            pw.println("  private int size;");
+            for (int i = 0; i < n; i++)
+                pw.format("  private %s[] k%d;\n", types[i], i + 1);
+            pw.println();
+            pw.format("  public %s() {\n", name);
+            pw.println("    this(16);");
+            pw.println("  }");
+            pw.println();
+            pw.format("  public %s(int initialCapacity) {\n", name);
+            pw.println("    int capacity = Math.max(initialCapacity, 1);");
+            for (int i = 0; i < n; i++)
+                pw.format("    k%d = new %s[capacity];\n", i + 1, types[i]);
+            pw.println("  }");
+            pw.println();
+            pw.println("  /** The number of rows currently held. */");
+            pw.println("  public int size() { return size; }");
+            pw.println();
+            pw.println("  /** Drops all rows. References are cleared so they can be collected; the arrays are retained. */");
+            pw.println("  public void clear() {");
+            for (int i = 0; i < n; i++)
+                if (!primitive[i])
+                    pw.format("    java.util.Arrays.fill(k%d, 0, size, null);\n", i + 1);
+            pw.println("    size = 0;");
+            pw.println("  }");
+            pw.println();
+            pw.println("  public void ensureCapacity(int minCapacity) {");
+            pw.println("    int capacity = k1.length;");
+            pw.println("    if (minCapacity <= capacity) return;");
+            pw.println("    int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));");
+            for (int i = 0; i < n; i++)
+                pw.format("    k%d = java.util.Arrays.copyOf(k%<d, newCapacity);\n", i + 1);
+            pw.println("  }");
+            pw.println();
+            pw.println("  private void checkRow(int row) {");
+            pw.println("    if (row < 0 || row >= size) throw new IndexOutOfBoundsException(\"Row \" + row + \", size \" + size);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  /** Appends a row, returning its index. */");
+            pw.format("  public int append(%s) {\n", params);
+            pw.println("    int row = size;");
+            pw.println("    if (row == k1.length) ensureCapacity(row + 1);");
+            for (int i = 0; i < n; i++)
+                pw.format("    k%d[row] = %s;\n", i + 1, names[i]);
+            pw.println("    size = row + 1;");
+            pw.println("    return row;");
+            pw.println("  }");
+            pw.println();
+            pw.format("  public int append(%s tuple) { return append(%s); }\n", className, args);
+            pw.println();
+            pw.format("  public void set(int row, %s) {\n", params);
+            pw.println("    checkRow(row);");
+            for (int i = 0; i < n; i++)
+                pw.format("    k%d[row] = %s;\n", i + 1, names[i]);
+            pw.println("  }");
+            pw.println();
+            pw.format("  public void set(int row, %s tuple) { set(row, %s); }\n", className, args);
+            pw.println();
+            pw.println("  /** Creates a tuple holding a row. */");
+            pw.format("  public %s get(int row) {\n", className);
+            pw.println("    checkRow(row);");
+            pw.format("    return new %s(%s);\n", className, rowArgs);
+            pw.println("  }");
+            pw.println();
+            for (int i = 0; i < n; i++) {
+                pw.format("  public %s getField%d(int row) { checkRow(row); return k%2$d[row]; }\n", types[i], i + 1);
+                pw.format("  public void setField%d(int row, %s value) { checkRow(row); k%1$d[row] = value; }\n", i + 1, types[i]);
+                if (primitive[i]) {
+                    pw.format("  /** The backing array for field %d; only the first size() entries are meaningful. */\n", i + 1);
+                    pw.format("  public %s[] field%dColumn() { return k%2$d; }\n", types[i], i + 1);
+                    if (streams)
+                        generateStream(pw, i);
+                }
+            }
+            pw.println();
+
+            pw.println("  /** Creates a new cursor, positioned before the first row. */");
+            pw.println("  public Cursor cursor() { return new Cursor(); }");
+            pw.println();
+            pw.println("  /** A flyweight view of one row at a time. A single cursor can be moved across every row without");
+            pw.println("   * allocating. */");
+            pw.println("  public final class Cursor {");
+            pw.println("    private int row = -1;");
+            pw.println();
+            pw.println("    public int row() { return row; }");
+            pw.println("    public Cursor at(int row) { checkRow(row); this.row = row; return this; }");
+            pw.println("    public boolean next() { if (row + 1 >= size) return false; row++; return true; }");
+            pw.println("    public void reset() { row = -1; }");
+            pw.println();
+            for (int i = 0; i < n; i++) {
+                pw.format("    public %s getField%d() { return k%2$d[row]; }\n", types[i], i + 1);
+                pw.format("    public void setField%d(%s value) { k%1$d[row] = value; }\n", i + 1, types[i]);
+            }
+            pw.format("    public %s get() { return new %<s(%s); }\n", className, rowArgs);
+            pw.println("  }");
+            pw.println("}");
+        } finally {
+            pw.close();
+        }
+    }
+
+    private void generateStream(PrintWriter pw, int i) {
+        String type = types[i];
+        int field = i + 1;
+        if (type.equals("int") || type.equals("long") || type.equals("double")) {
+            String stream = type.equals("int") ? "IntStream" : type.equals("long") ? "LongStream" : "DoubleStream";
+            pw.format("  public java.util.stream.%s field%dStream() { return java.util.Arrays.stream(k%2$d, 0, size); }\n", stream, field);
+        } else if (type.equals("float")) {
+            pw.format("  public java.util.stream.DoubleStream field%dStream() {\n", field);
+            pw.format("    final float[] column = k%d;\n", field);
+            pw.println("    return java.util.stream.IntStream.range(0, size).mapToDouble(new java.util.function.IntToDoubleFunction() {");
+            pw.println("      public double applyAsDouble(int row) { return column[row]; }");
+            pw.println("    });");
+            pw.println("  }");
+        } else if (!type.equals("boolean")) {
+            pw.format("  public java.util.stream.IntStream field%dStream() {\n", field);
+            pw.format("    final %s[] column = k%d;\n", type, field);
+            pw.println("    return java.util.stream.IntStream.range(0, size).map(new java.util.function.IntUnaryOperator() {");
+            pw.println("      public int applyAsInt(int row) { return column[row]; }");
+            pw.println("    });");
+            pw.println("  }");
+        }
+    }
+}
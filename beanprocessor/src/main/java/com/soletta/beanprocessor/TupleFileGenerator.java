@@ -0,0 +1,339 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import static java.lang.Character.toUpperCase;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.PackageElement;
+import javax.tools.JavaFileObject;
+
+/** Generates nnnFile for a specialized tuple whose components are all primitive. Rows are stored as
+ * fixed-width little-endian records after a 16 byte header holding a schema hash and the record size.
+ * The Writer appends records through a FileChannel; the Reader maps the file read-only and hands out
+ * View flyweights that read components straight from the mapping, so opening a file costs nothing
+ * per record.
+ * <p>
+ * Components are laid out widest first, as in the bean flyweights, and the record is padded to its
+ * widest component, so every component stays naturally aligned. A mapping is limited to 2GB, so the
+ * Reader maps the file in segments holding a whole number of records.
+ *
+ * @author rjudson
+ *
+ */
+class TupleFileGenerator {
+
+    private final String className;
+    private final String[] types;
+    private final String[] names;
+
+    TupleFileGenerator(String className, String[] types, String[] names) {
+        this.className = className;
+        this.types = types;
+        this.names = names;
+    }
+
+    static boolean fixedWidth(boolean[] primitive) {
+        for (boolean p : primitive)
+            if (!p)
+                return false;
+        return true;
+    }
+
+    static int sizeOf(String type) {
+        if (type.equals("long") || type.equals("double"))
+            return 8;
+        if (type.equals("int") || type.equals("float"))
+            return 4;
+        if (type.equals("short") || type.equals("char"))
+            return 2;
+        return 1;
+    }
+
+    /** FNV-1a over the tuple name and component types, checked when a file is opened. */
+    private long schemaHash() {
+        StringBuilder b = new StringBuilder(className);
+        for (String type : types)
+            b.append(',').append(type);
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < b.length(); i++) {
+            h ^= b.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    void generate(PackageElement packageElement, ProcessingEnvironment processingEnv) throws IOException {
+        String pkg = packageElement.getQualifiedName().toString();
+        String name = className + "File";
+        int n = names.length;
+        int[] offsets = new int[n];
+        int offset = 0, widest = 1;
+        for (int size = 8; size >= 1; size >>= 1) {
+            for (int i = 0; i < n; i++) {
+                if (sizeOf(types[i]) == size) {
+                    offsets[i] = offset;
+                    offset += size;
+                    widest = Math.max(widest, size);
+                }
+            }
+        }
+        int recordSize = (offset + widest - 1) / widest * widest;
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(pkg + "." + name, packageElement);
+        PrintWriter pw = new PrintWriter(source.openOutputStream());
+        try {
+            StringBuilder params = new StringBuilder(), args = new StringBuilder(), getters = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                String sep = i > 0 ? ", " : "";
+                params.append(sep).append(types[i]).append(' ').append(names[i]);
+                args.append(sep).append("tuple.").append(names[i]);
+                getters.append(sep).append("getField").append(i + 1).append("()");
+            }
+
+            pw.format("package %s;\n", pkg);
+            pw.println();
+            pw.format("/** Fixed-width %s record files. Write them with a Writer; read them with a Reader, which maps\n", className);
+            pw.println(" * the file and reads records in place through View flyweights. */");
+            pw.format("public final class %s {\n", name);
+            pw.println();
+            pw.format("  private %s() {}\n", name);
+            pw.println();
+            pw.format("  public static final long SCHEMA = 0x%xL;\n", schemaHash());
+            pw.println("  public static final int HEADER = 16;");
+            pw.println("  /** Size in bytes of one record. */");
+            pw.format("  public static final int RECORD = %d;\n", recordSize);
+            for (int i = 0; i < n; i++)
+                pw.format("  public static final int FIELD%d_OFFSET = %d;\n", i + 1, offsets[i]);
+            pw.println("  private static final long SEGMENT_RECORDS = (1 << 30) / RECORD;");
+            pw.println();
+
+            pw.println("  /** Creates or truncates a file and returns a writer positioned after its header. */");
+            pw.println("  public static Writer create(java.io.File file) throws java.io.IOException {");
+            pw.println("    return new Writer(file, false);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  /** Opens a file for appending, creating it if necessary. A partial record left at the end by an");
+            pw.println("   *  interrupted writer is dropped. */");
+            pw.println("  public static Writer append(java.io.File file) throws java.io.IOException {");
+            pw.println("    return new Writer(file, true);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  public static Reader open(java.io.File file) throws java.io.IOException {");
+            pw.println("    return new Reader(file);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  private static void checkHeader(java.nio.channels.FileChannel channel, java.io.File file) throws java.io.IOException {");
+            pw.println("    java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(HEADER).order(java.nio.ByteOrder.LITTLE_ENDIAN);");
+            pw.println("    while (header.hasRemaining())");
+            pw.println("      if (channel.read(header, header.position()) < 0)");
+            pw.println("        throw new java.io.IOException(file + \" is too short to hold a header\");");
+            pw.println("    if (header.getLong(0) != SCHEMA || header.getInt(8) != RECORD)");
+            pw.format("      throw new java.io.IOException(file + \" does not hold %s records\");\n", className);
+            pw.println("  }");
+            pw.println();
+
+            // Writer
+            pw.println("  /** Appends records through a buffer. Call flush() to push buffered records to the file. */");
+            pw.println("  public static final class Writer implements java.io.Closeable {");
+            pw.println("    private final java.io.RandomAccessFile file;");
+            pw.println("    private final java.nio.channels.FileChannel channel;");
+            pw.println("    private final java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(RECORD * Math.max(1, 65536 / RECORD))");
+            pw.println("        .order(java.nio.ByteOrder.LITTLE_ENDIAN);");
+            pw.println("    private long count;");
+            pw.println();
+            pw.println("    Writer(java.io.File path, boolean append) throws java.io.IOException {");
+            pw.println("      file = new java.io.RandomAccessFile(path, \"rw\");");
+            pw.println("      channel = file.getChannel();");
+            pw.println("      try {");
+            pw.println("        if (append && channel.size() > 0) {");
+            pw.println("          checkHeader(channel, path);");
+            pw.println("          count = (channel.size() - HEADER) / RECORD;");
+            pw.println("          channel.truncate(HEADER + count * RECORD);");
+            pw.println("        } else {");
+            pw.println("          channel.truncate(0);");
+            pw.println("          java.nio.ByteBuffer header = java.nio.ByteBuffer.allocate(HEADER).order(java.nio.ByteOrder.LITTLE_ENDIAN);");
+            pw.println("          header.putLong(SCHEMA).putInt(RECORD).putInt(0).flip();");
+            pw.println("          while (header.hasRemaining())");
+            pw.println("            channel.write(header, header.position());");
+            pw.println("        }");
+            pw.println("        channel.position(HEADER + count * RECORD);");
+            pw.println("      } catch (java.io.IOException e) {");
+            pw.println("        file.close();");
+            pw.println("        throw e;");
+            pw.println("      }");
+            pw.println("    }");
+            pw.println();
+            pw.println("    /** The number of records in the file, including buffered ones. */");
+            pw.println("    public long count() { return count; }");
+            pw.println();
+            pw.format("    public void append(%s) throws java.io.IOException {\n", params);
+            pw.println("      if (buffer.remaining() < RECORD) flush();");
+            pw.println("      int at = buffer.position();");
+            for (int i = 0; i < n; i++)
+                pw.format("      %s;\n", put(i, "at + FIELD" + (i + 1) + "_OFFSET", names[i]));
+            pw.println("      buffer.position(at + RECORD);");
+            pw.println("      count++;");
+            pw.println("    }");
+            pw.println();
+            pw.format("    public void append(%s tuple) throws java.io.IOException { append(%s); }\n", className, args);
+            pw.println();
+            pw.println("    public void flush() throws java.io.IOException {");
+            pw.println("      buffer.flip();");
+            pw.println("      while (buffer.hasRemaining())");
+            pw.println("        channel.write(buffer);");
+            pw.println("      buffer.clear();");
+            pw.println("    }");
+            pw.println();
+            pw.println("    public void close() throws java.io.IOException {");
+            pw.println("      try {");
+            pw.println("        flush();");
+            pw.println("      } finally {");
+            pw.println("        file.close();");
+            pw.println("      }");
+            pw.println("    }");
+            pw.println("  }");
+            pw.println();
+
+            // Reader
+            pw.println("  /** Maps a file read-only. Views and scans may be used from many threads at once. Closing the reader");
+            pw.println("   *  closes the file; the mappings themselves are released when they are garbage collected. */");
+            pw.println("  public static final class Reader implements java.io.Closeable {");
+            pw.println("    private final java.io.RandomAccessFile file;");
+            pw.println("    private final java.nio.ByteBuffer[] segments;");
+            pw.println("    private final long count;");
+            pw.println();
+            pw.println("    Reader(java.io.File path) throws java.io.IOException {");
+            pw.println("      file = new java.io.RandomAccessFile(path, \"r\");");
+            pw.println("      try {");
+            pw.println("        java.nio.channels.FileChannel channel = file.getChannel();");
+            pw.println("        checkHeader(channel, path);");
+            pw.println("        count = (channel.size() - HEADER) / RECORD;");
+            pw.println("        segments = new java.nio.ByteBuffer[(int) ((count + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];");
+            pw.println("        for (int i = 0; i < segments.length; i++) {");
+            pw.println("          long first = i * SEGMENT_RECORDS;");
+            pw.println("          long records = Math.min(SEGMENT_RECORDS, count - first);");
+            pw.println("          segments[i] = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, HEADER + first * RECORD, records * RECORD)");
+            pw.println("              .order(java.nio.ByteOrder.LITTLE_ENDIAN);");
+            pw.println("        }");
+            pw.println("      } catch (java.io.IOException e) {");
+            pw.println("        file.close();");
+            pw.println("        throw e;");
+            pw.println("      }");
+            pw.println("    }");
+            pw.println();
+            pw.println("    /** The number of complete records in the file when it was opened. */");
+            pw.println("    public long count() { return count; }");
+            pw.println();
+            pw.println("    /** Creates a view, positioned at no record. */");
+            pw.println("    public View view() { return new View(); }");
+            pw.println();
+            pw.format("    public %s get(long index) { return view().at(index).get(); }\n", className);
+            pw.println();
+            pw.println("    /** Visits the records in [from, to) in order, through a single view. */");
+            pw.println("    public void scan(long from, long to, Visitor visitor) {");
+            pw.println("      if (from < 0 || to > count || from > to) throw new IndexOutOfBoundsException(from + \"..\" + to + \" of \" + count);");
+            pw.println("      View view = new View();");
+            pw.println("      for (long i = from; i < to; i++)");
+            pw.println("        visitor.visit(view.at(i));");
+            pw.println("    }");
+            pw.println();
+            pw.println("    public void scan(Visitor visitor) { scan(0, count, visitor); }");
+            pw.println();
+            pw.println("    /** Splits [from, to) into tasks contiguous ranges, scans them on the executor and waits for them all.");
+            pw.println("     *  Each range has its own view, but the visitor is shared and must be safe to call concurrently. */");
+            pw.println("    public void parallelScan(long from, long to, int tasks, java.util.concurrent.ExecutorService executor,");
+            pw.println("        final Visitor visitor) throws InterruptedException {");
+            pw.println("      if (from < 0 || to > count || from > to) throw new IndexOutOfBoundsException(from + \"..\" + to + \" of \" + count);");
+            pw.println("      java.util.List<java.util.concurrent.Future<?>> futures = new java.util.ArrayList<java.util.concurrent.Future<?>>();");
+            pw.println("      long step = Math.max(1, (to - from + tasks - 1) / Math.max(1, tasks));");
+            pw.println("      for (long start = from; start < to; start += step) {");
+            pw.println("        final long first = start, last = Math.min(to, start + step);");
+            pw.println("        futures.add(executor.submit(new Runnable() {");
+            pw.println("          public void run() { scan(first, last, visitor); }");
+            pw.println("        }));");
+            pw.println("      }");
+            pw.println("      try {");
+            pw.println("        for (java.util.concurrent.Future<?> future : futures)");
+            pw.println("          future.get();");
+            pw.println("      } catch (java.util.concurrent.ExecutionException e) {");
+            pw.println("        for (java.util.concurrent.Future<?> future : futures)");
+            pw.println("          future.cancel(true);");
+            pw.println("        Throwable cause = e.getCause();");
+            pw.println("        if (cause instanceof RuntimeException) throw (RuntimeException) cause;");
+            pw.println("        if (cause instanceof Error) throw (Error) cause;");
+            pw.println("        throw new IllegalStateException(cause);");
+            pw.println("      }");
+            pw.println("    }");
+            pw.println();
+            pw.println("    public void close() throws java.io.IOException {");
+            pw.println("      file.close();");
+            pw.println("    }");
+            pw.println();
+            pw.println("    /** A flyweight over one record of the mapping. Move it with at(); it never allocates. */");
+            pw.println("    public final class View {");
+            pw.println("      private java.nio.ByteBuffer segment;");
+            pw.println("      private int offset;");
+            pw.println("      private long index = -1;");
+            pw.println();
+            pw.println("      public View at(long index) {");
+            pw.println("        if (index < 0 || index >= count) throw new IndexOutOfBoundsException(\"Record \" + index + \", count \" + count);");
+            pw.println("        segment = segments[(int) (index / SEGMENT_RECORDS)];");
+            pw.println("        offset = (int) (index % SEGMENT_RECORDS) * RECORD;");
+            pw.println("        this.index = index;");
+            pw.println("        return this;");
+            pw.println("      }");
+            pw.println();
+            pw.println("      public long index() { return index; }");
+            pw.println();
+            for (int i = 0; i < n; i++)
+                pw.format("      public %s getField%d() { return %s; }\n", types[i], i + 1, get(i, "offset + FIELD" + (i + 1) + "_OFFSET"));
+            pw.println();
+            pw.format("      /** Copies the record into a new %s. */\n", className);
+            pw.format("      public %s get() { return new %<s(%s); }\n", className, getters);
+            pw.println("    }");
+            pw.println("  }");
+            pw.println();
+            pw.println("  public interface Visitor {");
+            pw.println("    void visit(Reader.View record);");
+            pw.println("  }");
+            pw.println("}");
+        } finally {
+            pw.close();
+        }
+    }
+
+    private String put(int i, String at, String value) {
+        String type = types[i];
+        if (type.equals("boolean"))
+            return String.format("buffer.put(%s, (byte) (%s ? 1 : 0))", at, value);
+        if (type.equals("byte"))
+            return String.format("buffer.put(%s, %s)", at, value);
+        return String.format("buffer.put%s(%s, %s)", accessor(type), at, value);
+    }
+
+    private String get(int i, String at) {
+        String type = types[i];
+        if (type.equals("boolean"))
+            return String.format("segment.get(%s) != 0", at);
+        if (type.equals("byte"))
+            return String.format("segment.get(%s)", at);
+        return String.format("segment.get%s(%s)", accessor(type), at);
+    }
+
+    private static String accessor(String type) {
+        return toUpperCase(type.charAt(0)) + type.substring(1);
+    }
+}
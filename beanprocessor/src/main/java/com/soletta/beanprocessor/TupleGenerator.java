@@ -11,6 +11,7 @@ import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.type.MirroredTypesException;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.JavaFileObject;
 
@@ -54,7 +55,7 @@ class TupleGenerator {
                     String callString = "(" + join(paramNames) + ")";
                     
                     generateTupleSource(packageElement, processingEnv, tuples, dottedPackageName, false, letters, paramNames, params,
-                            primitives, className, paramString, typeVars, callString);
+                            primitives, className, paramString, typeVars, callString, tuples.hash(), tuples.cacheHash(), false, false);
                     
                     // Generate static builder for generic tuples
                     tw.format("public static %s %s of%s { return new %s%s; };\n", 
@@ -72,6 +73,7 @@ class TupleGenerator {
                     List<? extends TypeMirror> mirrors = mirrorTypes(tuple);
                     int n = mirrors.size();
                     String[] typeNames = new String[n];
+                    boolean comparable = true;
                     String [] paramNames = new String[n];
                     String [] params = new String[n];
                     boolean [] primitives = new boolean[n];
@@ -80,6 +82,7 @@ class TupleGenerator {
                         typeNames[i] = typeMirror.toString();//   tuple.value()[i].getName();
                         //System.out.println(typeNames[i]);
                         if (!typeMirror.getKind().isPrimitive()) {
+                            comparable &= isComparable(typeMirror, processingEnv);
                             // typeNames[i] = typeNames[i].substring(typeNames[i].lastIndexOf('.')+1, typeNames[i].length());
                         } else {
                             primitives[i] = true;
@@ -100,9 +103,21 @@ class TupleGenerator {
                     }
                     String paramString = "(" + join(params) + ")";
                     String callString = "(" + join(paramNames) + ")";
+                    
+                    if (tuple.sort() && !comparable) {
+                        processingEnv.getMessager().printMessage(Kind.ERROR, 
+                                "Sorting " + className + " needs every reference component to be Comparable.", packageElement);
+                        continue;
+                    }
     
                     generateTupleSource(packageElement, processingEnv, tuples, dottedPackageName, true, typeNames, paramNames, params,
-                            primitives, className, paramString, typeVars, callString);
+                            primitives, className, paramString, typeVars, callString, tuple.hash(), tuple.cacheHash(), comparable, tuple.sort());
+                    
+                    new TupleArrayGenerator(className, typeNames, paramNames, primitives).generate(packageElement, processingEnv);
+                    if (TupleFileGenerator.fixedWidth(primitives))
+                        new TupleFileGenerator(className, typeNames, paramNames).generate(packageElement, processingEnv);
+                    if (tuple.map())
+                        new TupleMapGenerator(className, typeNames, paramNames, primitives).generate(packageElement, processingEnv);
                     
                 }
             }
@@ -118,7 +133,8 @@ class TupleGenerator {
 
     private void generateTupleSource(PackageElement packageElement, ProcessingEnvironment processingEnv, Tuples tuples,
             String dottedPackageName, boolean specialize, String[] letters, String[] paramNames, String[] params, boolean [] primitive, String className,
-            String paramString, String typeVars, String callString) throws IOException {
+            String paramString, String typeVars, String callString, TupleHash hash, boolean cacheHash,
+            boolean comparable, boolean sort) throws IOException {
         
         int n = letters.length;
         int angle = className.indexOf('<');
@@ -128,14 +144,21 @@ class TupleGenerator {
         try {
             packageHeader(pw, packageElement);
             
-            pw.format("public class %s {\n", className);
+            if (comparable)
+                pw.format("public class %s implements Comparable<%<s> {\n", className);
+            else
+                pw.format("public class %s {\n", className);
             pw.println();
             for (String p: params) 
                 pw.format("  public final %s;\n", p);
+            if (cacheHash)
+                pw.println("  private final int hash;");
             pw.println();
             pw.format("  public %s%s {\n", nonParameterized, paramString);
             for (int i = 0; i < letters.length; i++)
                 pw.format("    this.%s = %<s;\n", paramNames[i]);
+            if (cacheHash)
+                pw.println("    this.hash = computeHash();");
             pw.println("  }");
             pw.println();
             
@@ -144,28 +167,29 @@ class TupleGenerator {
             pw.println();
             
             pw.println();
-            pw.println("  public int hashCode() {");
-            pw.println("    final int prime = 31; int result = 1;");
-            
-            for (int i = 0; i < paramNames.length; i++) {
-                if (primitive[i]) {
-                    if (letters[i].equals("long")) {
-                        pw.format("    result = prime * result + (int)(%s ^ (%<s >>> 32));\n", paramNames[i]);
-                    } else if (letters[i].equals("float")) {
-                        pw.format("    result = prime * result + Float.floatToIntBits(%s);\n", paramNames[i]);
-                    } else if (letters[i].equals("double")) {
-                        pw.format("    long temp_%s = Double.doubleToLongBits(%<s);\n", paramNames[i]);
-                        pw.format("    result = prime * result + (int)(temp_%s ^ (temp_%<s >>> 32));\n", paramNames[i]);
-                    } else {
-                        pw.format("    result = prime * result + (int)%s;\n", paramNames[i]);
-                    }
-                } else
-                    pw.format("    result = prime * result + ((%s == null) ? 0 : %<s.hashCode());\n", paramNames[i]);
+            if (cacheHash) {
+                pw.println("  public int hashCode() {");
+                pw.println("    return hash;");
+                pw.println("  }");
+                pw.println();
+                pw.println("  private int computeHash() {");
+            } else {
+                pw.println("  public int hashCode() {");
             }
-            
-            pw.println("    return result;");
+            if (hash == TupleHash.MIXED)
+                generateMixedHash(pw, letters, paramNames, primitive);
+            else
+                generateClassicHash(pw, letters, paramNames, primitive);
             pw.println("  }");
             pw.println();
+            if (hash == TupleHash.MIXED) {
+                pw.println("  private static long mix(long z) {");
+                pw.println("    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;");
+                pw.println("    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;");
+                pw.println("    return z ^ (z >>> 31);");
+                pw.println("  }");
+                pw.println();
+            }
 
             pw.println("  public boolean equals(Object obj) {");
             pw.println("    if (this == obj)\r\n" + 
@@ -217,6 +241,13 @@ class TupleGenerator {
             pw.println("  }");
             pw.println();
             
+            if (comparable) {
+                TupleSortGenerator sorter = new TupleSortGenerator(className, letters, paramNames, primitive);
+                sorter.generateComparisons(pw);
+                if (sort)
+                    sorter.generateSort(pw);
+            }
+            
             // Generate static builder
             pw.format("public static %s %s of%s { return new %s%s; };\n", 
                     typeVars, className, paramString, className, callString);
@@ -235,6 +266,49 @@ class TupleGenerator {
         }
     }
     
+    /** Folds each component, as a long, into the hash through the splitmix64 finalizer. */
+    private void generateMixedHash(PrintWriter pw, String[] letters, String[] paramNames, boolean[] primitive) {
+        pw.println("    long h = 0;");
+        for (int i = 0; i < paramNames.length; i++) {
+            String value;
+            String type = letters[i];
+            if (!primitive[i])
+                value = String.format("(%s == null ? 0 : %<s.hashCode())", paramNames[i]);
+            else if (type.equals("float"))
+                value = String.format("Float.floatToIntBits(%s)", paramNames[i]);
+            else if (type.equals("double"))
+                value = String.format("Double.doubleToLongBits(%s)", paramNames[i]);
+            else if (type.equals("boolean"))
+                value = String.format("(%s ? 1231 : 1237)", paramNames[i]);
+            else
+                value = paramNames[i];
+            pw.format("    h = mix((h + 0x9e3779b97f4a7c15L) ^ %s);\n", value);
+        }
+        pw.println("    return (int) (h ^ (h >>> 32));");
+    }
+
+    private void generateClassicHash(PrintWriter pw, String[] letters, String[] paramNames, boolean[] primitive) {
+        pw.println("    final int prime = 31; int result = 1;");
+        
+        for (int i = 0; i < paramNames.length; i++) {
+            if (primitive[i]) {
+                if (letters[i].equals("long")) {
+                    pw.format("    result = prime * result + (int)(%s ^ (%<s >>> 32));\n", paramNames[i]);
+                } else if (letters[i].equals("float")) {
+                    pw.format("    result = prime * result + Float.floatToIntBits(%s);\n", paramNames[i]);
+                } else if (letters[i].equals("double")) {
+                    pw.format("    long temp_%s = Double.doubleToLongBits(%<s);\n", paramNames[i]);
+                    pw.format("    result = prime * result + (int)(temp_%s ^ (temp_%<s >>> 32));\n", paramNames[i]);
+                } else {
+                    pw.format("    result = prime * result + (int)%s;\n", paramNames[i]);
+                }
+            } else
+                pw.format("    result = prime * result + ((%s == null) ? 0 : %<s.hashCode());\n", paramNames[i]);
+        }
+        
+        pw.println("    return result;");
+    }
+
     private String join(Object items) {
         return join(", ", items);
     }
@@ -265,6 +339,12 @@ class TupleGenerator {
         tw.println();
     }
     
+    private boolean isComparable(TypeMirror type, ProcessingEnvironment processingEnv) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror comparable = processingEnv.getElementUtils().getTypeElement("java.lang.Comparable").asType();
+        return types.isAssignable(types.erasure(type), types.erasure(comparable));
+    }
+    
     private List<? extends TypeMirror> mirrorTypes(Tuple sprop) {
         try {
             sprop.value()[0].getName();
@@ -0,0 +1,30 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package com.soletta.beanprocessor;
+
+/** How generated tuples compute hashCode.
+ * 
+ * @author rjudson
+ *
+ */
+public enum TupleHash {
+    /** The classic 31 * result + component chain (the default). Cheap, but small integer
+     * components produce few distinct hash codes.
+     * 
+     */
+    CLASSIC,
+    /** Each component is folded in through a 64-bit mixing finalizer, so every input bit
+     * affects every output bit. Costs a couple of multiplies per component.
+     * 
+     */
+    MIXED
+}
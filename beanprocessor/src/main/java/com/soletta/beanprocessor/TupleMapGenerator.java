@@ -0,0 +1,331 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.PackageElement;
+import javax.tools.JavaFileObject;
+
+/** Generates nnnMap&lt;V&gt; and nnnSet for a specialized tuple with map set. Both are open addressing
+ * tables with linear probing, holding each key component in its own array, so keys are stored without
+ * a tuple object or an entry object. Lookups take the components directly. Removal shifts later
+ * entries of the probe run back, so there are no tombstones.
+ * <p>
+ * Keys compare float and double components by their bits, as Float and Double do, so NaN can be a
+ * key and 0.0 and -0.0 are different keys.
+ *
+ * @author rjudson
+ *
+ */
+class TupleMapGenerator {
+
+    private final String className;
+    private final String[] types;
+    private final String[] names;
+    private final boolean[] primitive;
+
+    TupleMapGenerator(String className, String[] types, String[] names, boolean[] primitive) {
+        this.className = className;
+        this.types = types;
+        this.names = names;
+        this.primitive = primitive;
+    }
+
+    void generate(PackageElement packageElement, ProcessingEnvironment processingEnv) throws IOException {
+        generate(packageElement, processingEnv, true);
+        generate(packageElement, processingEnv, false);
+    }
+
+    private void generate(PackageElement packageElement, ProcessingEnvironment processingEnv, boolean map) throws IOException {
+        String pkg = packageElement.getQualifiedName().toString();
+        String name = className + (map ? "Map" : "Set");
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(pkg + "." + name, packageElement);
+        PrintWriter pw = new PrintWriter(source.openOutputStream());
+        try {
+            String params = params();
+            String args = join(names);
+            String keyArgs = keyArgs("key");
+            String v = map ? "V" : "";
+
+            pw.format("package %s;\n", pkg);
+            pw.println();
+            if (map)
+                pw.format("/** An open addressing map from %s keys to values, storing each key component in its own array. */\n", className);
+            else
+                pw.format("/** An open addressing set of %s values, storing each component in its own array. */\n", className);
+            pw.format("public class %s%s {\n", name, map ? "<V>" : "");
+            pw.println();
+            for (int i = 0; i < names.length; i++)
+                pw.format("  private %s[] k%d;\n", types[i], i + 1);
+            if (map)
+                pw.println("  private Object[] values;");
+            pw.println("  private boolean[] used;");
+            pw.println("  private int size, mask, resizeAt;");
+            pw.println();
+            pw.format("  public %s() {\n", name);
+            pw.println("    this(16);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  /** Sizes the table so that expected entries fit without rehashing. */");
+            pw.format("  public %s(int expected) {\n", name);
+            pw.println("    int capacity = 8;");
+            pw.println("    while (capacity < (1 << 30) && capacity * 3 / 4 < expected)");
+            pw.println("      capacity <<= 1;");
+            pw.println("    allocate(capacity);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  private void allocate(int capacity) {");
+            for (int i = 0; i < names.length; i++)
+                pw.format("    k%d = new %s[capacity];\n", i + 1, types[i]);
+            if (map)
+                pw.println("    values = new Object[capacity];");
+            pw.println("    used = new boolean[capacity];");
+            pw.println("    mask = capacity - 1;");
+            pw.println("    resizeAt = capacity * 3 / 4;");
+            pw.println("  }");
+            pw.println();
+            pw.println("  public int size() { return size; }");
+            pw.println("  public boolean isEmpty() { return size == 0; }");
+            pw.println();
+            pw.println("  public void clear() {");
+            pw.println("    java.util.Arrays.fill(used, false);");
+            for (int i = 0; i < names.length; i++)
+                if (!primitive[i])
+                    pw.format("    java.util.Arrays.fill(k%d, null);\n", i + 1);
+            if (map)
+                pw.println("    java.util.Arrays.fill(values, null);");
+            pw.println("    size = 0;");
+            pw.println("  }");
+            pw.println();
+
+            pw.format("  static int hash(%s) {\n", params);
+            pw.println("    int h = 1;");
+            for (int i = 0; i < names.length; i++)
+                pw.format("    h = 31 * h + %s;\n", hashOf(types[i], names[i]));
+            pw.println("    // Finish with the murmur3 mixer, so that every key bit reaches the low bits used for the slot.");
+            pw.println("    h ^= h >>> 16;");
+            pw.println("    h *= 0x85ebca6b;");
+            pw.println("    h ^= h >>> 13;");
+            pw.println("    h *= 0xc2b2ae35;");
+            pw.println("    return h ^ (h >>> 16);");
+            pw.println("  }");
+            pw.println();
+            pw.println("  /** The slot holding the key, or the complement of the free slot where it would go. */");
+            pw.format("  private int find(%s) {\n", params);
+            pw.format("    int i = hash(%s) & mask;\n", args);
+            pw.println("    while (used[i]) {");
+            StringBuilder match = new StringBuilder();
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0)
+                    match.append(" && ");
+                match.append(equal(types[i], primitive[i], "k" + (i + 1) + "[i]", names[i]));
+            }
+            pw.format("      if (%s) return i;\n", match);
+            pw.println("      i = (i + 1) & mask;");
+            pw.println("    }");
+            pw.println("    return ~i;");
+            pw.println("  }");
+            pw.println();
+            pw.format("  private void store(int i, %s%s) {\n", params, map ? ", Object value" : "");
+            for (int i = 0; i < names.length; i++)
+                pw.format("    k%d[i] = %s;\n", i + 1, names[i]);
+            if (map)
+                pw.println("    values[i] = value;");
+            pw.println("    used[i] = true;");
+            pw.println("  }");
+            pw.println();
+
+            if (map) {
+                pw.println("  @SuppressWarnings(\"unchecked\")");
+                pw.format("  public V get(%s) {\n", params);
+                pw.format("    int i = find(%s);\n", args);
+                pw.println("    return i < 0 ? null : (V) values[i];");
+                pw.println("  }");
+                pw.println();
+                pw.format("  public V get(%s key) { return get(%s); }\n", className, keyArgs);
+                pw.println();
+                pw.format("  public boolean containsKey(%s) { return find(%s) >= 0; }\n", params, args);
+                pw.format("  public boolean containsKey(%s key) { return containsKey(%s); }\n", className, keyArgs);
+                pw.println();
+                pw.println("  /** Associates value with the key, returning the previous value or null. */");
+                pw.println("  @SuppressWarnings(\"unchecked\")");
+                pw.format("  public V put(%s, V value) {\n", params);
+                pw.format("    int i = find(%s);\n", args);
+                pw.println("    if (i >= 0) {");
+                pw.println("      V old = (V) values[i];");
+                pw.println("      values[i] = value;");
+                pw.println("      return old;");
+                pw.println("    }");
+                pw.format("    store(~i, %s, value);\n", args);
+                pw.println("    if (++size > resizeAt) rehash();");
+                pw.println("    return null;");
+                pw.println("  }");
+                pw.println();
+                pw.format("  public V put(%s key, V value) { return put(%s, value); }\n", className, keyArgs);
+                pw.println();
+                pw.println("  @SuppressWarnings(\"unchecked\")");
+                pw.format("  public V remove(%s) {\n", params);
+                pw.format("    int i = find(%s);\n", args);
+                pw.println("    if (i < 0) return null;");
+                pw.println("    V old = (V) values[i];");
+                pw.println("    delete(i);");
+                pw.println("    return old;");
+                pw.println("  }");
+                pw.println();
+                pw.format("  public V remove(%s key) { return remove(%s); }\n", className, keyArgs);
+            } else {
+                pw.format("  public boolean contains(%s) { return find(%s) >= 0; }\n", params, args);
+                pw.format("  public boolean contains(%s key) { return contains(%s); }\n", className, keyArgs);
+                pw.println();
+                pw.println("  /** Adds the key, returning false if it was already present. */");
+                pw.format("  public boolean add(%s) {\n", params);
+                pw.format("    int i = find(%s);\n", args);
+                pw.println("    if (i >= 0) return false;");
+                pw.format("    store(~i, %s);\n", args);
+                pw.println("    if (++size > resizeAt) rehash();");
+                pw.println("    return true;");
+                pw.println("  }");
+                pw.println();
+                pw.format("  public boolean add(%s key) { return add(%s); }\n", className, keyArgs);
+                pw.println();
+                pw.format("  public boolean remove(%s) {\n", params);
+                pw.format("    int i = find(%s);\n", args);
+                pw.println("    if (i < 0) return false;");
+                pw.println("    delete(i);");
+                pw.println("    return true;");
+                pw.println("  }");
+                pw.println();
+                pw.format("  public boolean remove(%s key) { return remove(%s); }\n", className, keyArgs);
+            }
+            pw.println();
+
+            pw.println("  /** Empties slot i, then moves back any later entry of the probe run that could no longer be found. */");
+            pw.println("  private void delete(int i) {");
+            pw.println("    size--;");
+            pw.println("    int gap = i;");
+            pw.println("    for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {");
+            pw.format("      int home = hash(%s) & mask;\n", slotArgs("j"));
+            pw.println("      if (((j - home) & mask) >= ((j - gap) & mask)) {");
+            pw.format("        store(gap, %s%s);\n", slotArgs("j"), map ? ", values[j]" : "");
+            pw.println("        gap = j;");
+            pw.println("      }");
+            pw.println("    }");
+            pw.println("    used[gap] = false;");
+            for (int i = 0; i < names.length; i++)
+                if (!primitive[i])
+                    pw.format("    k%d[gap] = null;\n", i + 1);
+            if (map)
+                pw.println("    values[gap] = null;");
+            pw.println("  }");
+            pw.println();
+            pw.println("  private void rehash() {");
+            for (int i = 0; i < names.length; i++)
+                pw.format("    %s[] o%d = k%d;\n", types[i], i + 1, i + 1);
+            if (map)
+                pw.println("    Object[] oldValues = values;");
+            pw.println("    boolean[] oldUsed = used;");
+            pw.println("    allocate(oldUsed.length * 2);");
+            pw.println("    for (int j = 0; j < oldUsed.length; j++) {");
+            pw.println("      if (!oldUsed[j]) continue;");
+            StringBuilder old = new StringBuilder();
+            for (int i = 0; i < names.length; i++)
+                old.append(i > 0 ? ", " : "").append("o").append(i + 1).append("[j]");
+            pw.format("      int i = hash(%s) & mask;\n", old);
+            pw.println("      while (used[i]) i = (i + 1) & mask;");
+            pw.format("      store(i, %s%s);\n", old, map ? ", oldValues[j]" : "");
+            pw.println("    }");
+            pw.println("  }");
+            pw.println();
+
+            pw.println("  /** Visits the entries in table order. The cursor is invalid once the table is modified. */");
+            pw.println("  public Cursor cursor() { return new Cursor(); }");
+            pw.println();
+            pw.println("  public final class Cursor {");
+            pw.println("    private int index = -1;");
+            pw.println();
+            pw.println("    public boolean next() {");
+            pw.println("      while (++index < used.length)");
+            pw.println("        if (used[index]) return true;");
+            pw.println("      return false;");
+            pw.println("    }");
+            pw.println();
+            for (int i = 0; i < names.length; i++)
+                pw.format("    public %s %s() { return k%d[index]; }\n", types[i], names[i], i + 1);
+            if (map) {
+                pw.println("    @SuppressWarnings(\"unchecked\")");
+                pw.println("    public V value() { return (V) values[index]; }");
+                pw.println("    public void setValue(V value) { values[index] = value; }");
+            }
+            pw.format("    public %s key() { return new %1$s(%s); }\n", className, slotArgs("index"));
+            pw.println("  }");
+            pw.println("}");
+        } finally {
+            pw.close();
+        }
+    }
+
+    private String params() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < names.length; i++)
+            b.append(i > 0 ? ", " : "").append(types[i]).append(' ').append(names[i]);
+        return b.toString();
+    }
+
+    private String keyArgs(String key) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < names.length; i++)
+            b.append(i > 0 ? ", " : "").append(key).append('.').append(names[i]);
+        return b.toString();
+    }
+
+    private String slotArgs(String index) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < names.length; i++)
+            b.append(i > 0 ? ", " : "").append('k').append(i + 1).append('[').append(index).append(']');
+        return b.toString();
+    }
+
+    private static String join(String[] items) {
+        StringBuilder b = new StringBuilder();
+        for (String item : items)
+            b.append(b.length() > 0 ? ", " : "").append(item);
+        return b.toString();
+    }
+
+    /** An int expression for the hash of one component. */
+    static String hashOf(String type, String value) {
+        if (type.equals("long"))
+            return String.format("(int) (%s ^ (%1$s >>> 32))", value);
+        if (type.equals("float"))
+            return String.format("Float.floatToIntBits(%s)", value);
+        if (type.equals("double"))
+            return String.format("(int) (Double.doubleToLongBits(%s) ^ (Double.doubleToLongBits(%1$s) >>> 32))", value);
+        if (type.equals("boolean"))
+            return String.format("(%s ? 1231 : 1237)", value);
+        if (type.equals("byte") || type.equals("short") || type.equals("char") || type.equals("int"))
+            return value;
+        return String.format("(%s == null ? 0 : %1$s.hashCode())", value);
+    }
+
+    private static String equal(String type, boolean primitive, String a, String b) {
+        if (type.equals("float"))
+            return String.format("Float.floatToIntBits(%s) == Float.floatToIntBits(%s)", a, b);
+        if (type.equals("double"))
+            return String.format("Double.doubleToLongBits(%s) == Double.doubleToLongBits(%s)", a, b);
+        if (primitive)
+            return a + " == " + b;
+        return String.format("(%s == null ? %s == null : %1$s.equals(%2$s))", a, b);
+    }
+}
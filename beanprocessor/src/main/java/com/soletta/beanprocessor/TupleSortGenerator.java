@@ -0,0 +1,268 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.PrintWriter;
+
+/** Writes the comparison and sorting members of a specialized tuple class. Every tuple whose components
+ * are primitive or Comparable gets compareTo and a BY_FIELDn comparator per component; with sort set it
+ * also gets static sort and parallelSort methods.
+ * <p>
+ * sort is a least significant digit radix sort. Components are taken from last to first; each primitive
+ * component is turned into an unsigned key that orders as compareTo does, copied into a long array
+ * alongside the tuples, and distributed one byte at a time, skipping bytes that are the same for every
+ * element. A reference component is sorted with a stable comparison sort instead, which keeps the
+ * order established by the components after it. parallelSort radix sorts slices on a fork/join pool
+ * and merges them.
+ *
+ * @author rjudson
+ *
+ */
+class TupleSortGenerator {
+
+    private final String className;
+    private final String[] types;
+    private final String[] names;
+    private final boolean[] primitive;
+
+    TupleSortGenerator(String className, String[] types, String[] names, boolean[] primitive) {
+        this.className = className;
+        this.types = types;
+        this.names = names;
+        this.primitive = primitive;
+    }
+
+    void generateComparisons(PrintWriter pw) {
+        int n = names.length;
+        for (int i = 0; i < n; i++) {
+            pw.format("  private static int compare%d(%s a, %<s b) {\n", i + 1, className);
+            pw.format("    return %s;\n", compareExpression(i, "a." + names[i], "b." + names[i]));
+            pw.println("  }");
+            pw.println();
+        }
+
+        pw.format("  public int compareTo(%s other) {\n", className);
+        pw.println("    int c;");
+        for (int i = 0; i < n - 1; i++)
+            pw.format("    if ((c = compare%d(this, other)) != 0) return c;\n", i + 1);
+        pw.format("    return compare%d(this, other);\n", n);
+        pw.println("  }");
+        pw.println();
+
+        for (int i = 0; i < n; i++) {
+            pw.format("  /** Orders by field %d, then by the other fields in declaration order. */\n", i + 1);
+            pw.format("  public static final java.util.Comparator<%1$s> BY_FIELD%2$d = new java.util.Comparator<%1$s>() {\n", className, i + 1);
+            pw.format("    public int compare(%s a, %<s b) {\n", className);
+            pw.println("      int c;");
+            pw.format("      if ((c = compare%d(a, b)) != 0) return c;\n", i + 1);
+            for (int j = 0; j < n; j++) {
+                if (j != i)
+                    pw.format("      if ((c = compare%d(a, b)) != 0) return c;\n", j + 1);
+            }
+            pw.println("      return 0;");
+            pw.println("    }");
+            pw.println("  };");
+            pw.println();
+        }
+    }
+
+    private String compareExpression(int i, String a, String b) {
+        String type = types[i];
+        if (!primitive[i])
+            return String.format("%s == null ? (%s == null ? 0 : -1) : %2$s == null ? 1 : %1$s.compareTo(%2$s)", a, b);
+        if (type.equals("float"))
+            return String.format("Float.compare(%s, %s)", a, b);
+        if (type.equals("double"))
+            return String.format("Double.compare(%s, %s)", a, b);
+        if (type.equals("boolean"))
+            return String.format("%s == %s ? 0 : %1$s ? 1 : -1", a, b);
+        return String.format("%s < %s ? -1 : %1$s == %2$s ? 0 : 1", a, b);
+    }
+
+    /** The expression for a component's unsigned radix key, and the key's width in bytes. */
+    private String radixKey(int i, String value) {
+        String type = types[i];
+        if (type.equals("boolean"))
+            return String.format("(%s ? 1L : 0L)", value);
+        if (type.equals("byte"))
+            return String.format("((%s ^ 0x80) & 0xffL)", value);
+        if (type.equals("short"))
+            return String.format("((%s ^ 0x8000) & 0xffffL)", value);
+        if (type.equals("char"))
+            return String.format("((long) %s)", value);
+        if (type.equals("int"))
+            return String.format("((%s ^ 0x80000000) & 0xffffffffL)", value);
+        if (type.equals("long"))
+            return String.format("(%s ^ Long.MIN_VALUE)", value);
+        if (type.equals("float"))
+            return String.format("floatKey(%s)", value);
+        return String.format("doubleKey(%s)", value);
+    }
+
+    private int radixBytes(int i) {
+        String type = types[i];
+        if (type.equals("boolean") || type.equals("byte"))
+            return 1;
+        if (type.equals("short") || type.equals("char"))
+            return 2;
+        if (type.equals("int") || type.equals("float"))
+            return 4;
+        return 8;
+    }
+
+    void generateSort(PrintWriter pw) {
+        int n = names.length;
+        String c = className;
+
+        pw.println("  private static final int RADIX_THRESHOLD = 512;");
+        pw.println("  private static final int PARALLEL_THRESHOLD = 1 << 16;");
+        pw.println();
+        pw.format("  /** Sorts into compareTo order. The sort is stable. */\n");
+        pw.format("  public static void sort(%s[] a) {\n", c);
+        pw.println("    sort(a, 0, a.length);");
+        pw.println("  }");
+        pw.println();
+        pw.format("  /** Sorts a[from, to) into compareTo order. The sort is stable. */\n");
+        pw.format("  public static void sort(%s[] a, int from, int to) {\n", c);
+        pw.println("    int n = to - from;");
+        pw.println("    if (n < RADIX_THRESHOLD) {");
+        pw.println("      java.util.Arrays.sort(a, from, to);");
+        pw.println("      return;");
+        pw.println("    }");
+        pw.format("    %s[] src = java.util.Arrays.copyOfRange(a, from, to), dst = new %<s[n], t;\n", c);
+        boolean anyPrimitive = false;
+        for (boolean p : primitive)
+            anyPrimitive |= p;
+        if (anyPrimitive) {
+            pw.println("    long[] keys = new long[n], keyBuf = new long[n], k;");
+            pw.println("    int[] count = new int[256];");
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            if (primitive[i]) {
+                pw.format("    for (int i = 0; i < n; i++) keys[i] = %s;\n", radixKey(i, "src[i]." + names[i]));
+                pw.format("    for (int shift = 0; shift < %d; shift += 8) {\n", radixBytes(i) * 8);
+                pw.println("      if (radixPass(src, dst, keys, keyBuf, count, shift)) {");
+                pw.println("        t = src; src = dst; dst = t;");
+                pw.println("        k = keys; keys = keyBuf; keyBuf = k;");
+                pw.println("      }");
+                pw.println("    }");
+            } else {
+                pw.format("    java.util.Arrays.sort(src, ONLY_FIELD%d);\n", i + 1);
+            }
+        }
+        pw.println("    System.arraycopy(src, 0, a, from, n);");
+        pw.println("  }");
+        pw.println();
+
+        if (anyPrimitive) {
+            pw.println("  /** Distributes src into dst by one byte of each key. Returns false, leaving both untouched, when");
+            pw.println("   *  every key has the same byte. */");
+            pw.format("  private static boolean radixPass(%s[] src, %<s[] dst, long[] keys, long[] keyBuf, int[] count, int shift) {\n", c);
+            pw.println("    int n = src.length;");
+            pw.println("    java.util.Arrays.fill(count, 0);");
+            pw.println("    for (int i = 0; i < n; i++)");
+            pw.println("      count[(int) (keys[i] >>> shift) & 0xff]++;");
+            pw.println("    if (count[(int) (keys[0] >>> shift) & 0xff] == n)");
+            pw.println("      return false;");
+            pw.println("    for (int b = 0, sum = 0; b < 256; b++) {");
+            pw.println("      int size = count[b];");
+            pw.println("      count[b] = sum;");
+            pw.println("      sum += size;");
+            pw.println("    }");
+            pw.println("    for (int i = 0; i < n; i++) {");
+            pw.println("      long key = keys[i];");
+            pw.println("      int p = count[(int) (key >>> shift) & 0xff]++;");
+            pw.println("      dst[p] = src[i];");
+            pw.println("      keyBuf[p] = key;");
+            pw.println("    }");
+            pw.println("    return true;");
+            pw.println("  }");
+            pw.println();
+        }
+        if (contains("float")) {
+            pw.println("  private static long floatKey(float f) {");
+            pw.println("    int bits = Float.floatToIntBits(f);");
+            pw.println("    return (bits ^ ((bits >> 31) | 0x80000000)) & 0xffffffffL;");
+            pw.println("  }");
+            pw.println();
+        }
+        if (contains("double")) {
+            pw.println("  private static long doubleKey(double d) {");
+            pw.println("    long bits = Double.doubleToLongBits(d);");
+            pw.println("    return bits ^ ((bits >> 63) | Long.MIN_VALUE);");
+            pw.println("  }");
+            pw.println();
+        }
+        for (int i = 0; i < n; i++) {
+            if (!primitive[i]) {
+                pw.format("  private static final java.util.Comparator<%1$s> ONLY_FIELD%2$d = new java.util.Comparator<%1$s>() {\n", c, i + 1);
+                pw.format("    public int compare(%s a, %<s b) {\n", c);
+                pw.format("      return compare%d(a, b);\n", i + 1);
+                pw.println("    }");
+                pw.println("  };");
+                pw.println();
+            }
+        }
+
+        pw.println("  /** Sorts into compareTo order, radix sorting slices of the array in parallel and merging them. */");
+        pw.format("  public static void parallelSort(%s[] a) {\n", c);
+        pw.println("    if (a.length <= PARALLEL_THRESHOLD)");
+        pw.println("      sort(a);");
+        pw.println("    else");
+        pw.format("      SortPool.POOL.invoke(new SortTask(a, new %s[a.length], 0, a.length));\n", c);
+        pw.println("  }");
+        pw.println();
+        pw.println("  private static final class SortPool {");
+        pw.println("    static final java.util.concurrent.ForkJoinPool POOL = new java.util.concurrent.ForkJoinPool();");
+        pw.println("  }");
+        pw.println();
+        pw.println("  private static final class SortTask extends java.util.concurrent.RecursiveAction {");
+        pw.println("    private static final long serialVersionUID = 1L;");
+        pw.format("    private final %s[] a, buf;\n", c);
+        pw.println("    private final int from, to;");
+        pw.println();
+        pw.format("    SortTask(%s[] a, %<s[] buf, int from, int to) {\n", c);
+        pw.println("      this.a = a;");
+        pw.println("      this.buf = buf;");
+        pw.println("      this.from = from;");
+        pw.println("      this.to = to;");
+        pw.println("    }");
+        pw.println();
+        pw.println("    protected void compute() {");
+        pw.println("      if (to - from <= PARALLEL_THRESHOLD) {");
+        pw.println("        sort(a, from, to);");
+        pw.println("        return;");
+        pw.println("      }");
+        pw.println("      int mid = (from + to) >>> 1;");
+        pw.println("      invokeAll(new SortTask(a, buf, from, mid), new SortTask(a, buf, mid, to));");
+        pw.println("      if (a[mid - 1].compareTo(a[mid]) <= 0)");
+        pw.println("        return;");
+        pw.println("      System.arraycopy(a, from, buf, from, to - from);");
+        pw.println("      int i = from, j = mid, o = from;");
+        pw.println("      while (i < mid && j < to)");
+        pw.println("        a[o++] = buf[j].compareTo(buf[i]) < 0 ? buf[j++] : buf[i++];");
+        pw.println("      while (i < mid)");
+        pw.println("        a[o++] = buf[i++];");
+        pw.println("      while (j < to)");
+        pw.println("        a[o++] = buf[j++];");
+        pw.println("    }");
+        pw.println("  }");
+        pw.println();
+    }
+
+    private boolean contains(String type) {
+        for (int i = 0; i < types.length; i++)
+            if (primitive[i] && types[i].equals(type))
+                return true;
+        return false;
+    }
+}
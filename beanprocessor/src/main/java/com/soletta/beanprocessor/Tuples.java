@@ -15,5 +15,9 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.SOURCE)
 public @interface Tuples {
   int value();
+  /** The hashCode strategy for the generic tuples. */
+  TupleHash hash() default TupleHash.CLASSIC;
+  /** Compute the hash code once, in the constructor, and keep it in a field. */
+  boolean cacheHash() default false;
 }
 
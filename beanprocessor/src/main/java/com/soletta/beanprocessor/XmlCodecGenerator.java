@@ -0,0 +1,426 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.soletta.beanprocessor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/** Generates the nnnXmlCodec class for an SBean with xmlCodec set. The codec reads and writes the bean
+ * through StAX, making the same attribute, element, list and transient decisions as the JAXB
+ * annotations generated by createJAXB, so the two are interchangeable on the wire.
+ *
+ * @author rjudson
+ *
+ */
+class XmlCodecGenerator {
+
+    private static final String[] PRIMITIVES = { "boolean", "byte", "short", "char", "int", "long", "float", "double" };
+    private static final String[] BOXES = { "java.lang.Boolean", "java.lang.Byte", "java.lang.Short", "java.lang.Character",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double" };
+
+    /** How a single property appears in the XML. */
+    static class XmlProperty {
+        final BeanProperty property;
+        final boolean attribute;
+        /** Whitespace separated list (XmlList, or a list in an attribute), rather than a repeated element. */
+        final boolean joined;
+        /** The type of a single value: the property type, or the list element type. */
+        final String valueType;
+
+        XmlProperty(BeanProperty property, boolean attribute, boolean joined) {
+            this.property = property;
+            this.attribute = attribute;
+            this.joined = joined;
+            this.valueType = property.element != null ? property.element : property.type;
+        }
+
+        boolean list() {
+            return property.element != null;
+        }
+    }
+
+    void generateXmlCodec(TypeElement beanTypeElement, SBean sbean, List<BeanProperty> properties, ProcessingEnvironment processingEnv)
+            throws IOException {
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanTypeElement).getQualifiedName().toString();
+        String beanName = beanTypeElement.getSimpleName().toString();
+        String className = beanName + "XmlCodec";
+
+        List<XmlProperty> xml = new ArrayList<XmlProperty>();
+        for (BeanProperty p : properties) {
+            JAXBMemberType jaxb = p.prop.jaxbType() != JAXBMemberType.UNSET ? p.prop.jaxbType() : sbean.jaxbType();
+            if (jaxb == JAXBMemberType.TRANSIENT)
+                continue;
+            // JAXB only binds getter/setter pairs unless the getter is annotated.
+            if (p.final_ && jaxb != JAXBMemberType.ATTRIBUTE && jaxb != JAXBMemberType.LIST)
+                continue;
+            String valueType = p.element != null ? p.element : p.type;
+            if ((p.element == null && p.prop.kind() != SKind.SIMPLE) || !supported(valueType)) {
+                processingEnv.getMessager().printMessage(Kind.WARNING,
+                        String.format("Property %s of type %s has no XML codec mapping and is left out of the XML codec.", p.name, p.type),
+                        beanTypeElement);
+                continue;
+            }
+            boolean attribute = jaxb == JAXBMemberType.ATTRIBUTE;
+            xml.add(new XmlProperty(p, attribute, p.element != null && (attribute || jaxb == JAXBMemberType.LIST)));
+        }
+
+        boolean instantiable = instantiable(beanTypeElement);
+
+        JavaFileObject source = processingEnv.getFiler().createSourceFile(packageName + "." + className, beanTypeElement);
+        PrintWriter src = new PrintWriter(source.openOutputStream());
+        try {
+            src.format("package %s;\n", packageName);
+            src.println();
+            src.format("/** Reads and writes %s as XML through StAX, with the same attributes and elements as its JAXB binding. */\n", beanName);
+            src.println("@javax.annotation.Generated(value=\"com.soletta.processor.BeanProcessor\")");
+            src.format("public final class %s {\n", className);
+            src.println();
+            src.format("    private %s() {}\n", className);
+            src.println();
+            src.println("    /** The name of the root element, as JAXB would choose it. */");
+            src.format("    public static final String ELEMENT = \"%s\";\n", rootName(beanTypeElement));
+            src.println();
+            src.println("    private static final javax.xml.datatype.DatatypeFactory DATATYPES;");
+            src.println("    static {");
+            src.println("        try {");
+            src.println("            DATATYPES = javax.xml.datatype.DatatypeFactory.newInstance();");
+            src.println("        } catch (javax.xml.datatype.DatatypeConfigurationException e) {");
+            src.println("            throw new ExceptionInInitializerError(e);");
+            src.println("        }");
+            src.println("    }");
+            src.println();
+
+            // Writing
+            src.format("    public static void write(javax.xml.stream.XMLStreamWriter out, %sBase bean) throws javax.xml.stream.XMLStreamException {\n", beanName);
+            src.println("        write(out, ELEMENT, bean);");
+            src.println("    }");
+            src.println();
+            src.println("    /** Writes the bean as an element with the given name. */");
+            src.format("    public static void write(javax.xml.stream.XMLStreamWriter out, String element, %sBase bean) throws javax.xml.stream.XMLStreamException {\n", beanName);
+            src.println("        out.writeStartElement(element);");
+            for (XmlProperty x : xml) {
+                if (!x.attribute)
+                    continue;
+                BeanProperty p = x.property;
+                src.println("        {");
+                src.format("            %s value = bean.%s();\n", p.type, p.getter());
+                if (x.list()) {
+                    src.println("            if (value != null && !value.isEmpty()) out.writeAttribute(\"" + p.name + "\", join(value));");
+                } else if (p.primitive) {
+                    src.format("            out.writeAttribute(\"%s\", %s);\n", p.name, print(x.valueType, "value"));
+                } else {
+                    src.format("            if (value != null) out.writeAttribute(\"%s\", %s);\n", p.name, print(x.valueType, "value"));
+                }
+                src.println("        }");
+            }
+            for (XmlProperty x : xml) {
+                if (x.attribute)
+                    continue;
+                BeanProperty p = x.property;
+                src.println("        {");
+                src.format("            %s value = bean.%s();\n", p.type, p.getter());
+                if (x.joined) {
+                    src.format("            if (value != null && !value.isEmpty()) writeElement(out, \"%s\", join(value));\n", p.name);
+                } else if (x.list()) {
+                    src.println("            if (value != null)");
+                    src.format("                for (%s item : value)\n", x.valueType);
+                    src.format("                    if (item != null) writeElement(out, \"%s\", %s);\n", p.name, print(x.valueType, "item"));
+                } else if (p.primitive) {
+                    src.format("            writeElement(out, \"%s\", %s);\n", p.name, print(x.valueType, "value"));
+                } else {
+                    src.format("            if (value != null) writeElement(out, \"%s\", %s);\n", p.name, print(x.valueType, "value"));
+                }
+                src.println("        }");
+            }
+            src.println("        out.writeEndElement();");
+            src.println("    }");
+            src.println();
+
+            src.println("    /** Streams beans inside a wrapper element, one at a time. */");
+            src.format("    public static void writeAll(javax.xml.stream.XMLStreamWriter out, String wrapper, Iterable<? extends %sBase> beans) throws javax.xml.stream.XMLStreamException {\n", beanName);
+            src.println("        out.writeStartElement(wrapper);");
+            src.format("        for (%sBase bean : beans)\n", beanName);
+            src.println("            write(out, ELEMENT, bean);");
+            src.println("        out.writeEndElement();");
+            src.println("    }");
+            src.println();
+
+            // Reading
+            src.println("    /** Reads the element the reader is positioned on into the bean, leaving the reader on its end tag. */");
+            src.format("    public static void read(javax.xml.stream.XMLStreamReader in, %sBase bean) throws javax.xml.stream.XMLStreamException {\n", beanName);
+            src.println("        for (int i = 0, n = in.getAttributeCount(); i < n; i++) {");
+            src.println("            String name = in.getAttributeLocalName(i);");
+            src.println("            String text = in.getAttributeValue(i);");
+            boolean first = true;
+            for (XmlProperty x : xml) {
+                if (!x.attribute || x.property.final_)
+                    continue;
+                src.format("            %sif (name.equals(\"%s\")) bean.%s(%s);\n", first ? "" : "else ", x.property.name, x.property.setter(),
+                        x.list() ? "split" + x.property.capName + "(text)" : parse(x.valueType, "text"));
+                first = false;
+            }
+            src.println("        }");
+            for (XmlProperty x : xml)
+                if (!x.attribute && x.list() && !x.joined)
+                    src.format("        %s %sValues = null;\n", x.property.type, x.property.name);
+            src.println("        while (in.nextTag() == javax.xml.stream.XMLStreamConstants.START_ELEMENT) {");
+            src.println("            String name = in.getLocalName();");
+            first = true;
+            for (XmlProperty x : xml) {
+                if (x.attribute || x.property.final_)
+                    continue;
+                BeanProperty p = x.property;
+                String test = String.format("%sif (name.equals(\"%s\")) ", first ? "" : "else ", p.name);
+                if (x.joined) {
+                    src.format("            %sbean.%s(split%s(in.getElementText()));\n", test, p.setter(), p.capName);
+                } else if (x.list()) {
+                    src.format("            %s{\n", test);
+                    src.format("                if (%sValues == null) %1$sValues = new java.util.ArrayList<%s>();\n", p.name, x.valueType);
+                    src.format("                %sValues.add(%s);\n", p.name, parse(x.valueType, "in.getElementText()"));
+                    src.println("            }");
+                } else {
+                    src.format("            %sbean.%s(%s);\n", test, p.setter(), parse(x.valueType, "in.getElementText()"));
+                }
+                first = false;
+            }
+            src.format("            %sskip(in);\n", first ? "" : "else ");
+            src.println("        }");
+            for (XmlProperty x : xml)
+                if (!x.attribute && x.list() && !x.joined && !x.property.final_)
+                    src.format("        if (%sValues != null) bean.%s(%1$sValues);\n", x.property.name, x.property.setter());
+            src.println("    }");
+            src.println();
+
+            if (instantiable) {
+                src.println("    /** Reads the element the reader is positioned on into a new bean. */");
+                src.format("    public static %s read(javax.xml.stream.XMLStreamReader in) throws javax.xml.stream.XMLStreamException {\n", beanName);
+                src.format("        %s bean = new %1$s();\n", beanName);
+                src.println("        read(in, bean);");
+                src.println("        return bean;");
+                src.println("    }");
+                src.println();
+                src.println("    /** Lazily reads successive bean elements inside the wrapper element the reader is positioned on (or the");
+                src.println("     * document element, if the reader is at the start of a document). Only one bean is held at a time, so");
+                src.println("     * arbitrarily large collections can be processed. Other elements are skipped. */");
+                src.format("    public static java.util.Iterator<%s> iterate(final javax.xml.stream.XMLStreamReader in) throws javax.xml.stream.XMLStreamException {\n", beanName);
+                src.println("        while (in.getEventType() != javax.xml.stream.XMLStreamConstants.START_ELEMENT)");
+                src.println("            in.next();");
+                src.format("        return new java.util.Iterator<%s>() {\n", beanName);
+                src.format("            private %s next;\n", beanName);
+                src.println("            private boolean done;");
+                src.println();
+                src.println("            public boolean hasNext() {");
+                src.println("                if (next != null) return true;");
+                src.println("                if (done) return false;");
+                src.println("                try {");
+                src.println("                    while (in.nextTag() == javax.xml.stream.XMLStreamConstants.START_ELEMENT) {");
+                src.println("                        if (ELEMENT.equals(in.getLocalName())) {");
+                src.println("                            next = read(in);");
+                src.println("                            return true;");
+                src.println("                        }");
+                src.println("                        skip(in);");
+                src.println("                    }");
+                src.println("                } catch (javax.xml.stream.XMLStreamException e) {");
+                src.println("                    throw new IllegalStateException(e);");
+                src.println("                }");
+                src.println("                done = true;");
+                src.println("                return false;");
+                src.println("            }");
+                src.println();
+                src.format("            public %s next() {\n", beanName);
+                src.println("                if (!hasNext()) throw new java.util.NoSuchElementException();");
+                src.format("                %s bean = next;\n", beanName);
+                src.println("                next = null;");
+                src.println("                return bean;");
+                src.println("            }");
+                src.println();
+                src.println("            public void remove() { throw new UnsupportedOperationException(); }");
+                src.println("        };");
+                src.println("    }");
+                src.println();
+            }
+
+            createHelpers(src, xml);
+            src.println("} // end of class definition");
+        } finally {
+            src.close();
+        }
+    }
+
+    private void createHelpers(PrintWriter src, List<XmlProperty> xml) {
+        src.println("    private static void writeElement(javax.xml.stream.XMLStreamWriter out, String name, String text) throws javax.xml.stream.XMLStreamException {");
+        src.println("        out.writeStartElement(name);");
+        src.println("        out.writeCharacters(text);");
+        src.println("        out.writeEndElement();");
+        src.println("    }");
+        src.println();
+        src.println("    private static void skip(javax.xml.stream.XMLStreamReader in) throws javax.xml.stream.XMLStreamException {");
+        src.println("        for (int depth = 1; depth > 0;) {");
+        src.println("            int event = in.next();");
+        src.println("            if (event == javax.xml.stream.XMLStreamConstants.START_ELEMENT) depth++;");
+        src.println("            else if (event == javax.xml.stream.XMLStreamConstants.END_ELEMENT) depth--;");
+        src.println("        }");
+        src.println("    }");
+        src.println();
+        src.println("    private static String join(java.util.List<?> values) {");
+        src.println("        StringBuilder b = new StringBuilder();");
+        src.println("        for (Object value : values) {");
+        src.println("            if (value == null) continue;");
+        src.println("            if (b.length() > 0) b.append(' ');");
+        src.println("            b.append(printValue(value));");
+        src.println("        }");
+        src.println("        return b.toString();");
+        src.println("    }");
+        src.println();
+        src.println("    private static String printValue(Object value) {");
+        src.println("        if (value instanceof Double) return printDouble((Double) value);");
+        src.println("        if (value instanceof Float) return printFloat((Float) value);");
+        src.println("        if (value instanceof java.util.Date) return printDate((java.util.Date) value);");
+        src.println("        if (value instanceof Character) return Integer.toString((Character) value);");
+        src.println("        return value.toString();");
+        src.println("    }");
+        src.println();
+        src.println("    private static String printDouble(double value) {");
+        src.println("        if (Double.isNaN(value)) return \"NaN\";");
+        src.println("        if (value == Double.POSITIVE_INFINITY) return \"INF\";");
+        src.println("        if (value == Double.NEGATIVE_INFINITY) return \"-INF\";");
+        src.println("        return Double.toString(value);");
+        src.println("    }");
+        src.println();
+        src.println("    private static String printFloat(float value) {");
+        src.println("        if (Float.isNaN(value)) return \"NaN\";");
+        src.println("        if (value == Float.POSITIVE_INFINITY) return \"INF\";");
+        src.println("        if (value == Float.NEGATIVE_INFINITY) return \"-INF\";");
+        src.println("        return Float.toString(value);");
+        src.println("    }");
+        src.println();
+        src.println("    private static double parseDouble(String text) {");
+        src.println("        text = text.trim();");
+        src.println("        if (text.equals(\"INF\")) return Double.POSITIVE_INFINITY;");
+        src.println("        if (text.equals(\"-INF\")) return Double.NEGATIVE_INFINITY;");
+        src.println("        return Double.parseDouble(text);");
+        src.println("    }");
+        src.println();
+        src.println("    private static String printDate(java.util.Date date) {");
+        src.println("        java.util.GregorianCalendar calendar = new java.util.GregorianCalendar();");
+        src.println("        calendar.setTime(date);");
+        src.println("        return DATATYPES.newXMLGregorianCalendar(calendar).toXMLFormat();");
+        src.println("    }");
+        src.println();
+        src.println("    private static java.util.Date parseDate(String text) {");
+        src.println("        return DATATYPES.newXMLGregorianCalendar(text.trim()).toGregorianCalendar().getTime();");
+        src.println("    }");
+        src.println();
+        for (XmlProperty x : xml) {
+            if (!x.joined || x.property.final_)
+                continue;
+            BeanProperty p = x.property;
+            src.format("    private static %s split%s(String text) {\n", p.type, p.capName);
+            src.format("        %s values = new java.util.ArrayList<%s>();\n", p.type, x.valueType);
+            src.println("        for (String item : text.trim().split(\"\\\\s+\"))");
+            src.format("            if (item.length() > 0) values.add(%s);\n", parse(x.valueType, "item"));
+            src.println("        return values;");
+            src.println("    }");
+            src.println();
+        }
+    }
+
+    /** The XML schema lexical form JAXB uses for each type. */
+    private static String print(String type, String value) {
+        if (type.equals("java.lang.String"))
+            return value;
+        if (type.equals("java.util.Date"))
+            return "printDate(" + value + ")";
+        if (type.equals("double") || type.equals("java.lang.Double"))
+            return "printDouble(" + value + ")";
+        if (type.equals("float") || type.equals("java.lang.Float"))
+            return "printFloat(" + value + ")";
+        if (type.equals("char") || type.equals("java.lang.Character"))
+            return "Integer.toString(" + value + ")";
+        return "String.valueOf(" + value + ")";
+    }
+
+    private static String parse(String type, String text) {
+        if (type.equals("java.lang.String"))
+            return text;
+        if (type.equals("java.util.Date"))
+            return "parseDate(" + text + ")";
+        int box = index(BOXES, type);
+        String primitive = box >= 0 ? PRIMITIVES[box] : type;
+        String parsed;
+        if (primitive.equals("double"))
+            parsed = "parseDouble(" + text + ")";
+        else if (primitive.equals("float"))
+            parsed = "(float) parseDouble(" + text + ")";
+        else if (primitive.equals("char"))
+            parsed = "(char) Integer.parseInt(" + text + ".trim())";
+        else if (primitive.equals("boolean"))
+            parsed = "Boolean.parseBoolean(" + text + ".trim())";
+        else if (primitive.equals("int"))
+            parsed = "Integer.parseInt(" + text + ".trim())";
+        else
+            parsed = String.format("%s.parse%s(%s.trim())", BOXES[index(PRIMITIVES, primitive)],
+                    Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1), text);
+        return box >= 0 ? BOXES[box] + ".valueOf(" + parsed + ")" : parsed;
+    }
+
+    private static boolean supported(String type) {
+        return index(PRIMITIVES, type) >= 0 || index(BOXES, type) >= 0 || type.equals("java.lang.String") || type.equals("java.util.Date");
+    }
+
+    /** True if generated code can create the bean with a public no-argument constructor. */
+    static boolean instantiable(TypeElement beanTypeElement) {
+        if (beanTypeElement.getModifiers().contains(Modifier.ABSTRACT))
+            return false;
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(beanTypeElement.getEnclosedElements());
+        if (constructors.isEmpty())
+            return beanTypeElement.getModifiers().contains(Modifier.PUBLIC);
+        for (ExecutableElement constructor : constructors)
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+                return true;
+        return false;
+    }
+
+    /** Uses the name from an XmlRootElement annotation if there is one, otherwise the JAXB default. */
+    private static String rootName(TypeElement beanTypeElement) {
+        for (AnnotationMirror mirror : beanTypeElement.getAnnotationMirrors()) {
+            if (!mirror.getAnnotationType().toString().equals("javax.xml.bind.annotation.XmlRootElement"))
+                continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : mirror.getElementValues().entrySet())
+                if (e.getKey().getSimpleName().contentEquals("name") && !e.getValue().getValue().equals("##default"))
+                    return e.getValue().getValue().toString();
+        }
+        String name = beanTypeElement.getSimpleName().toString();
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static int index(String[] values, String value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i].equals(value))
+                return i;
+        return -1;
+    }
+}
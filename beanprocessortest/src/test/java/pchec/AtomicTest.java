@@ -0,0 +1,180 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ptest.Status;
+
+public class AtomicTest {
+
+    @Test
+    public void compareAndSet() {
+        Status status = new Status();
+        assertTrue(status.compareAndSetActive(0, 3));
+        assertFalse(status.compareAndSetActive(0, 4));
+        assertEquals(3, status.getActive());
+        assertEquals(3, status.getAndSetActive(5));
+        assertEquals(5, status.getAndAddActive(-2));
+        assertEquals(3, status.getActive());
+        assertEquals(30, status.accumulateActive(10, (a, b) -> a * b));
+
+        List<String> hosts = Arrays.asList("a", "b");
+        assertTrue(status.compareAndSetHosts(null, hosts));
+        assertFalse(status.compareAndSetHosts(new ArrayList<String>(hosts), null));
+        status.lazySetProcessed(7);
+        assertEquals(7, status.getProcessed());
+    }
+
+    @Test
+    public void boundUpdatesNotify() {
+        Status status = new Status();
+        final List<String> changes = new ArrayList<String>();
+        status.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                changes.add(evt.getOldValue() + ">" + evt.getNewValue());
+            }
+        });
+        status.setPhase("starting");
+        assertTrue(status.compareAndSetPhase("starting", "running"));
+        assertFalse(status.compareAndSetPhase("starting", "stopped"));
+        assertEquals("running", status.getAndSetPhase("stopping"));
+        assertEquals(Arrays.asList("null>starting", "starting>running", "running>stopping"), changes);
+    }
+
+    @Test
+    public void boundUpdatesFromManyThreads() throws Exception {
+        final Status status = new Status();
+        final AtomicInteger events = new AtomicInteger();
+        status.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                assertTrue(evt.getNewValue() != null && !evt.getNewValue().equals(evt.getOldValue()));
+                events.incrementAndGet();
+            }
+        });
+        // A batch open on this thread must not swallow the other threads' changes.
+        status.beginUpdate();
+        final int threads = 4, sets = 10000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String name = "t" + t + ":";
+            workers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < sets; i++)
+                        status.getAndSetPhase(name + i);
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(threads * sets, events.get());
+        status.endUpdate();
+        assertEquals(threads * sets, events.get());
+
+        status.update(() -> status.setPhase("done"));
+        assertEquals(threads * sets + 1, events.get());
+    }
+
+    @Test
+    public void updatesMarkDirty() {
+        Status status = new Status();
+        status.getAndAddProcessed(1);
+        assertTrue(status.isDirty());
+        status.clearDirty();
+        assertFalse(status.compareAndSetActive(1, 2));
+        assertFalse(status.isDirty());
+    }
+
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final Status status = new Status();
+        final int threads = 4, adds = 250000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < adds; i++) {
+                        status.getAndAddProcessed(1);
+                        status.accumulateActive(1, Math::max);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals((long) threads * adds, status.getProcessed());
+        assertEquals(1, status.getActive());
+    }
+
+    @Test
+    public void concurrentUpdatesKeepDirtyBits() throws Exception {
+        final Status status = new Status();
+        final int rounds = 10000;
+        // Each round, two threads mark different properties at about the same moment.
+        final CyclicBarrier barrier = new CyclicBarrier(3);
+        Thread[] workers = new Thread[2];
+        for (int t = 0; t < workers.length; t++) {
+            final boolean processed = t == 0;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < rounds; i++) {
+                            barrier.await();
+                            if (processed)
+                                status.getAndAddProcessed(1);
+                            else
+                                status.getAndAddActive(1);
+                            barrier.await();
+                        }
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        int lost = 0;
+        for (int i = 0; i < rounds; i++) {
+            status.clearDirty();
+            barrier.await(10, TimeUnit.SECONDS);
+            barrier.await(10, TimeUnit.SECONDS);
+            if (status.dirtyMask() != 3L)
+                lost++;
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(0, lost);
+    }
+}
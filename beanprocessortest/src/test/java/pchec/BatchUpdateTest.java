@@ -0,0 +1,89 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.TestJob;
+
+public class BatchUpdateTest {
+
+    static class Recorder implements PropertyChangeListener {
+        final List<PropertyChangeEvent> events = new ArrayList<PropertyChangeEvent>();
+        
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            events.add(evt);
+        }
+    }
+    
+    @Test
+    public void coalescesChanges() {
+        TestJob job = new TestJob().title("before");
+        Recorder recorder = new Recorder();
+        job.addPropertyChangeListener(recorder);
+        
+        job.beginUpdate();
+        for (int i = 1; i <= 15; i++) {
+            job.setNumber(i);
+            job.setTitle("during " + i);
+        }
+        job.setRunning(true);
+        job.setRunning(false);
+        assertEquals(0, recorder.events.size());
+        job.endUpdate();
+        
+        assertEquals(2, recorder.events.size());
+        PropertyChangeEvent title = recorder.events.get(0);
+        assertEquals("title", title.getPropertyName());
+        assertEquals("before", title.getOldValue());
+        assertEquals("during 15", title.getNewValue());
+        PropertyChangeEvent number = recorder.events.get(1);
+        assertEquals(0.0, number.getOldValue());
+        assertEquals(15.0, number.getNewValue());
+    }
+    
+    @Test
+    public void nestedUpdates() {
+        final TestJob job = new TestJob();
+        Recorder recorder = new Recorder();
+        job.addPropertyChangeListener(recorder);
+        
+        job.update(new Runnable() {
+            public void run() {
+                job.setTitle("outer");
+                job.update(new Runnable() {
+                    public void run() {
+                        job.setTitle("inner");
+                    }
+                });
+                job.setNumber(2);
+            }
+        });
+        
+        assertEquals(2, recorder.events.size());
+        assertEquals(null, recorder.events.get(0).getOldValue());
+        assertEquals("inner", recorder.events.get(0).getNewValue());
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void unbalancedEnd() {
+        new TestJob().endUpdate();
+    }
+}
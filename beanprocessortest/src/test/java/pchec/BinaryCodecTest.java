@@ -0,0 +1,127 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.junit.Test;
+
+import ptest.Position;
+
+public class BinaryCodecTest {
+
+    static Position sample() {
+        return new Position().account("ACC-1").symbol("\u00e9t\u00e9 \u20ac \ud83d\ude00").quantity(1500).averagePrice(101.25)
+                .open(true).opened(new Date(1330000000000L)).tags(asList("core", null, "hedge")).fills(asList(100.5, null, 102.0));
+    }
+    
+    static void assertSame(Position expected, Position actual) {
+        assertEquals(expected.getAccount(), actual.getAccount());
+        assertEquals(expected.getSymbol(), actual.getSymbol());
+        assertEquals(expected.getQuantity(), actual.getQuantity());
+        assertEquals(expected.getAveragePrice(), actual.getAveragePrice(), 0);
+        assertEquals(expected.isOpen(), actual.isOpen());
+        assertEquals(expected.getOpened(), actual.getOpened());
+        assertEquals(expected.getTags(), actual.getTags());
+        assertEquals(expected.getFills(), actual.getFills());
+    }
+    
+    @Test
+    public void roundTrip() {
+        Position position = sample();
+        ByteBuffer buffer = ByteBuffer.allocate(position.binarySize());
+        position.writeTo(buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        
+        buffer.flip();
+        Position read = new Position();
+        read.readFrom(buffer);
+        assertSame(position, read);
+    }
+    
+    @Test
+    public void nulls() {
+        Position position = new Position();
+        ByteBuffer buffer = ByteBuffer.allocate(position.binarySize());
+        position.writeTo(buffer);
+        buffer.flip();
+        
+        Position read = sample();
+        read.readFrom(buffer);
+        assertNull(read.getSymbol());
+        assertNull(read.getOpened());
+        assertNull(read.getTags());
+    }
+    
+    @Test
+    public void streams() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        sample().writeTo(out);
+        new Position().symbol("second").writeTo(out);
+        
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Position first = new Position(), second = new Position();
+        first.readFrom(in);
+        second.readFrom(in);
+        assertSame(sample(), first);
+        assertEquals("second", second.getSymbol());
+    }
+    
+    @Test
+    public void skipsUnknownFields() {
+        // Hand-build a record from a "newer" schema: an unknown string field, then a known one.
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putInt(Position.BINARY_SCHEMA_HASH + 1);
+        buffer.putShort((short) 2);
+        buffer.putInt("comment".hashCode()).put((byte) 0).putInt(3).put("abc".getBytes());
+        buffer.putInt("quantity".hashCode()).put((byte) 8).putLong(42);
+        buffer.flip();
+        
+        Position read = new Position();
+        read.readFrom(buffer);
+        assertEquals(42, read.getQuantity());
+        assertEquals(buffer.limit(), buffer.position());
+    }
+    
+    @Test
+    public void agreesWithJaxb() throws Exception {
+        Position position = sample();
+        
+        JAXBContext context = JAXBContext.newInstance(Position.class);
+        Marshaller marshaller = context.createMarshaller();
+        Unmarshaller unmarshaller = context.createUnmarshaller();
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshaller.marshal(position, xml);
+        Position viaJaxb = (Position) unmarshaller.unmarshal(new ByteArrayInputStream(xml.toByteArray()));
+        
+        ByteBuffer buffer = ByteBuffer.allocate(position.binarySize());
+        position.writeTo(buffer);
+        buffer.flip();
+        Position read = new Position();
+        read.readFrom(buffer);
+        assertSame(viaJaxb, read);
+    }
+}
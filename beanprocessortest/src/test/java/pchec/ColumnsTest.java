@@ -0,0 +1,76 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ptest.TestJob;
+import ptest.TestJobColumns;
+
+public class ColumnsTest {
+
+    @Test
+    public void appendAndRead() {
+        TestJobColumns columns = new TestJobColumns(2);
+        for (int i = 0; i < 200; i++)
+            columns.append(new TestJob().title("Job " + i).running(i % 3 == 0).number(i * 0.5));
+        
+        assertEquals(200, columns.size());
+        assertEquals("Job 150", columns.getTitle(150));
+        assertTrue(columns.isRunning(99));
+        assertFalse(columns.isRunning(100));
+        assertEquals(75.0, columns.getNumber(150), 0);
+        
+        double total = 0;
+        double [] number = columns.numberColumn();
+        for (int i = 0; i < columns.size(); i++)
+            total += number[i];
+        assertEquals(199 * 200 / 2 * 0.5, total, 0);
+    }
+    
+    @Test
+    public void cursor() {
+        TestJobColumns columns = new TestJobColumns();
+        columns.append(new TestJob().title("a").running(true));
+        int row = columns.append();
+        assertNull(columns.getTitle(row));
+        
+        TestJobColumns.Cursor cursor = columns.cursor();
+        int running = 0;
+        while (cursor.next()) {
+            if (cursor.isRunning())
+                running++;
+            cursor.setNumber(cursor.row() + 1);
+        }
+        assertEquals(1, running);
+        assertEquals(2.0, columns.getNumber(1), 0);
+        
+        cursor.at(1).setRunning(true);
+        TestJob job = new TestJob();
+        columns.copyTo(1, job);
+        assertTrue(job.isRunning());
+        assertEquals(2.0, job.getNumber(), 0);
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void rowBounds() {
+        TestJobColumns columns = new TestJobColumns();
+        columns.append();
+        columns.clear();
+        columns.getTitle(0);
+    }
+}
@@ -0,0 +1,136 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.TestJob;
+import ptest.TestJobBase;
+
+public class CopyTest {
+
+    static TestJob working() {
+        return new TestJob().title("Nightly").running(true).started(new Date(1330000000000L)).number(22.5)
+                .listOfStrings(asList("a", "b"));
+    }
+
+    @Test
+    public void copiesEverything() {
+        TestJob published = new TestJob();
+        published.copyFrom(working());
+        assertEquals("Nightly", published.getTitle());
+        assertTrue(published.isRunning());
+        assertEquals(new Date(1330000000000L), published.getStarted());
+        assertEquals(22.5, published.getNumber(), 0);
+        assertEquals(asList("a", "b"), published.getListOfStrings());
+    }
+
+    @Test
+    public void copiesMaskedProperties() {
+        TestJob published = new TestJob();
+        published.copyFrom(working(), TestJobBase.Properties.TITLE.mask() | TestJobBase.Properties.NUMBER.mask());
+        assertEquals("Nightly", published.getTitle());
+        assertEquals(22.5, published.getNumber(), 0);
+        assertNull(published.getStarted());
+        assertNull(published.getListOfStrings());
+    }
+
+    @Test
+    public void leavesCallersListsAlone() {
+        TestJob working = working();
+        TestJob published = new TestJob();
+        List<String> existing = new ArrayList<String>(asList("old"));
+        published.setListOfStrings(existing);
+
+        published.copyFrom(working);
+        assertEquals(asList("old"), existing);
+        assertEquals(asList("a", "b"), published.getListOfStrings());
+        assertNotSame(existing, published.getListOfStrings());
+        assertNotSame(working.getListOfStrings(), published.getListOfStrings());
+    }
+
+    @Test
+    public void reusesListsItCopied() {
+        TestJob published = new TestJob();
+        published.copyFrom(working());
+        List<String> copied = published.getListOfStrings();
+
+        published.copyFrom(working().listOfStrings(asList("c")));
+        assertSame(copied, published.getListOfStrings());
+        assertEquals(asList("c"), copied);
+
+        List<String> mine = new ArrayList<String>(asList("mine"));
+        published.setListOfStrings(mine);
+        published.copyFrom(working());
+        assertEquals(asList("mine"), mine);
+        assertNotSame(copied, published.getListOfStrings());
+    }
+
+    @Test
+    public void copiesCreatedFieldsByContent() {
+        TestJob working = working();
+        working.getBuilder().append("log");
+        TestJob published = new TestJob();
+        StringBuilder builder = published.getBuilder();
+        builder.append("old");
+
+        published.copyFrom(working);
+        assertSame(builder, published.getBuilder());
+        assertEquals("log", builder.toString());
+        working.getBuilder().append(" more");
+        assertEquals("log", builder.toString());
+    }
+
+    @Test
+    public void coalescesEvents() {
+        TestJob published = working();
+        published.setListOfStrings(new ArrayList<String>(asList("a")));
+        final List<String> changed = new ArrayList<String>();
+        published.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                changed.add(evt.getPropertyName());
+            }
+        });
+
+        // The delegate is a separate instance in each bean, so leave it out.
+        published.copyFrom(working().title("Weekly"), ~TestJobBase.Properties.DEL.mask());
+        assertEquals(asList("title", "listOfStrings"), changed);
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        final TestJob working = working(), published = new TestJob();
+        final long mask = ~TestJobBase.Properties.LISTOFSTRINGS.mask();
+        for (int i = 0; i < 10000; i++)
+            published.copyFrom(working, mask);
+        long allocated = PoolTest.allocated(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 100000; i++)
+                    published.copyFrom(working, mask);
+            }
+        });
+        assertTrue(allocated < 10000);
+    }
+}
@@ -0,0 +1,92 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import ptest.Position;
+
+public class DirtyTest {
+
+    @Test
+    public void settersMarkOrdinals() {
+        Position position = new Position();
+        assertFalse(position.isDirty());
+        position.setSymbol("IBM");
+        position.setOpen(true);
+        assertEquals((1L << 1) | (1L << 4), position.dirtyMask());
+        position.clearDirty();
+        assertEquals(0, position.dirtyMask());
+    }
+
+    @Test
+    public void deltaCarriesOnlyDirtyFields() {
+        Position source = BinaryCodecTest.sample();
+        Position replica = new Position();
+        ByteBuffer buffer = ByteBuffer.allocate(source.binarySize());
+        source.writeTo(buffer);
+        buffer.flip();
+        replica.readFrom(buffer);
+        source.clearDirty();
+
+        source.setQuantity(2000);
+        source.setTags(asList("rebalanced"));
+        buffer.clear();
+        source.writeDelta(buffer);
+        int deltaSize = buffer.position();
+        assertTrue(deltaSize < source.binarySize() / 2);
+
+        buffer.flip();
+        replica.clearDirty();
+        replica.setOpen(!replica.isOpen());
+        replica.setQuantity(1);
+        replica.applyDelta(buffer);
+        assertEquals(2000, replica.getQuantity());
+        assertEquals(asList("rebalanced"), replica.getTags());
+        assertTrue(source.isDirty());
+
+        // Only the replica's own change is left to send back.
+        assertEquals(1L << 4, replica.dirtyMask());
+        replica.setOpen(source.isOpen());
+        BinaryCodecTest.assertSame(source, replica);
+        replica.clearDirty();
+        buffer.clear();
+        source.writeDelta(buffer);
+        buffer.flip();
+        replica.applyDelta(buffer);
+        assertFalse(replica.isDirty());
+    }
+
+    @Test
+    public void deltaOverStreams() throws Exception {
+        Position source = new Position();
+        source.setAveragePrice(99.5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        source.writeDelta(new DataOutputStream(bytes));
+
+        Position replica = BinaryCodecTest.sample();
+        replica.applyDelta(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(99.5, replica.getAveragePrice(), 0);
+        assertEquals(BinaryCodecTest.sample().getSymbol(), replica.getSymbol());
+    }
+}
@@ -0,0 +1,117 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.junit.Test;
+
+import ptest.Trade;
+import ptest.TradeFlyweight;
+
+public class FlyweightTest {
+
+    @Test
+    public void layoutIsAligned() {
+        assertEquals(0, TradeFlyweight.SIZE % 8);
+        assertEquals(0, TradeFlyweight.PRICE_OFFSET % 8);
+        assertEquals(0, TradeFlyweight.SEQUENCE_OFFSET % 8);
+        assertEquals(0, TradeFlyweight.QUANTITY_OFFSET % 4);
+        assertEquals(0, TradeFlyweight.VENUE_OFFSET % 2);
+    }
+    
+    @Test
+    public void walkRecords() {
+        int count = 1000;
+        ByteBuffer records = ByteBuffer.allocateDirect(count * TradeFlyweight.SIZE);
+        ByteBuffer strings = ByteBuffer.allocateDirect(count * 32);
+        TradeFlyweight flyweight = new TradeFlyweight().wrap(records, strings);
+        
+        Date when = new Date();
+        for (int i = 0; i < count; i++) {
+            flyweight.record(i).clear();
+            flyweight.setPrice(i * 0.25);
+            flyweight.setQuantity(i);
+            flyweight.setBuy(i % 2 == 0);
+            flyweight.setSequence(i * 1000000000L);
+            flyweight.setVenue('X');
+            if (i % 10 == 0)
+                flyweight.setSymbol("SYM" + i);
+            if (i == 7)
+                flyweight.setExecuted(when);
+        }
+        
+        double total = 0;
+        for (int i = 0; i < count; i++)
+            total += flyweight.record(i).getPrice();
+        assertEquals((count - 1) * count / 2 * 0.25, total, 0);
+        
+        flyweight.record(500);
+        assertEquals("SYM500", flyweight.getSymbol());
+        assertTrue(flyweight.isBuy());
+        assertEquals(500000000000L, flyweight.getSequence());
+        assertEquals('X', flyweight.getVenue());
+        assertNull(flyweight.record(501).getSymbol());
+        assertFalse(flyweight.isBuy());
+        assertNull(flyweight.getExecuted());
+        assertEquals(when, flyweight.record(7).getExecuted());
+    }
+    
+    @Test
+    public void copyToAndFromBean() {
+        TradeFlyweight flyweight = new TradeFlyweight().wrap(ByteBuffer.allocate(TradeFlyweight.SIZE * 2), ByteBuffer.allocate(64));
+        flyweight.record(1).copyFrom(new Trade().symbol("ABC").price(12.5).quantity(100).trader("rj"));
+        
+        Trade trade = new Trade();
+        flyweight.copyTo(trade);
+        assertEquals("ABC", trade.getSymbol());
+        assertEquals("rj", trade.getTrader());
+        assertEquals(12.5, trade.getPrice(), 0);
+        assertEquals(100, trade.getQuantity());
+    }
+    
+    @Test
+    public void stringsNeedBuffer() {
+        TradeFlyweight flyweight = new TradeFlyweight().wrap(ByteBuffer.allocate(TradeFlyweight.SIZE));
+        flyweight.clear();
+        flyweight.setSymbol(null);
+        assertNull(flyweight.getSymbol());
+        try {
+            flyweight.setSymbol("ABC");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("wrap(buffer, strings)"));
+        }
+    }
+    
+    @Test
+    public void stringSpaceIsReused() {
+        ByteBuffer strings = ByteBuffer.allocate(64);
+        TradeFlyweight flyweight = new TradeFlyweight().wrap(ByteBuffer.allocate(TradeFlyweight.SIZE), strings);
+        flyweight.clear();
+        for (int i = 0; i < 10000; i++)
+            flyweight.setSymbol(i % 2 == 0 ? "ABCD" : i % 3 == 0 ? "" : "XY");
+        flyweight.setSymbol("XY");
+        assertEquals("XY", flyweight.getSymbol());
+        assertEquals(8, strings.position());
+        flyweight.setSymbol("LONGER");
+        assertEquals("LONGER", flyweight.getSymbol());
+        assertEquals(20, strings.position());
+    }
+}
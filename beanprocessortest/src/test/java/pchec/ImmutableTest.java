@@ -0,0 +1,114 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.Quote;
+
+public class ImmutableTest {
+
+    @Test
+    public void builder() {
+        Quote empty = Quote.builder().build();
+        assertEquals(100, empty.getSize());
+        assertTrue(empty.getVenues().isEmpty());
+
+        Quote q = Quote.builder().symbol("ABC").bid(9.5).venues(Arrays.asList("X", "Y")).build();
+        assertEquals("ABC", q.getSymbol());
+        assertEquals(9.5, q.getBid(), 0);
+        assertEquals(100, q.getSize());
+        assertEquals(Arrays.asList("X", "Y"), q.getVenues());
+    }
+
+    @Test
+    public void withers() {
+        Quote q = Quote.builder().symbol("ABC").bid(9.5).build();
+        assertSame(q, q.withSymbol("ABC"));
+        assertSame(q, q.withSymbol(new String("ABC")));
+        assertSame(q, q.withBid(9.5));
+
+        Quote r = q.withBid(9.75);
+        assertNotSame(q, r);
+        assertEquals(9.5, q.getBid(), 0);
+        assertEquals(9.75, r.getBid(), 0);
+        assertEquals("ABC", r.getSymbol());
+        assertSame(q.getVenues(), r.getVenues());
+    }
+
+    @Test
+    public void serializes() throws Exception {
+        Quote q = Quote.builder().symbol("ABC").bid(9.5).venues(Arrays.asList("X", "Y")).build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(q);
+        out.close();
+        Quote read = (Quote) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(q.hashCode(), read.hashCode());
+        assertEquals(q, read);
+        assertEquals(read, q);
+    }
+
+    @Test
+    public void bulkWith() {
+        Quote q = Quote.builder().symbol("ABC").venues(Arrays.asList("X")).build();
+        assertSame(q, q.with().build());
+        assertSame(q, q.with().symbol("ABC").size(100).build());
+
+        Quote r = q.with().bid(1).size(5).live(true).build();
+        assertEquals("ABC", r.getSymbol());
+        assertEquals(1, r.getBid(), 0);
+        assertEquals(5, r.getSize());
+        assertTrue(r.isLive());
+        assertFalse(q.isLive());
+        assertSame(q.getVenues(), r.getVenues());
+    }
+
+    @Test
+    public void unmodifiableLists() {
+        List<String> venues = new ArrayList<String>(Arrays.asList("X", "Y"));
+        Quote q = Quote.builder().venues(venues).build();
+        venues.add("Z");
+        assertEquals(2, q.getVenues().size());
+        try {
+            q.getVenues().add("Z");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void equality() {
+        Quote a = Quote.builder().symbol("ABC").bid(9.5).venues(Arrays.asList("X")).build();
+        Quote b = Quote.builder().venues(new ArrayList<String>(Arrays.asList("X"))).bid(9.5).symbol("ABC").build();
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(a.withLive(true)));
+        assertFalse(a.equals(a.withBid(-9.5)));
+        assertTrue(Quote.HAS_SYMBOL.apply(a));
+    }
+}
@@ -0,0 +1,115 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+import ptest.Portfolio;
+import ptest.PortfolioJsonCodec;
+import ptest.Position;
+import ptest.PositionJsonCodec;
+import ptest.PositionXmlCodec;
+
+public class JsonCodecTest {
+
+    static Position sample() {
+        return new Position().account("ACC-1").symbol("q\"uote\\ \n \u00e9 \ud83d\ude00").quantity(-1500).averagePrice(101.25)
+                .open(true).opened(new Date(1330000000123L)).tags(asList("core", null, "hedge"))
+                .fills(asList(100.5, null, Double.NaN, Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void roundTrip() {
+        String json = PositionJsonCodec.toJson(sample());
+        BinaryCodecTest.assertSame(sample(), PositionJsonCodec.read(json));
+    }
+
+    @Test
+    public void nullsAndEmpty() {
+        assertEquals("{\"quantity\":0,\"averagePrice\":0.0,\"open\":false,\"weight\":0.0}", PositionJsonCodec.toJson(new Position()));
+        assertNull(PositionJsonCodec.read(" null "));
+        Position read = PositionJsonCodec.read("{\"symbol\":null,\"tags\":[],\"quantity\":null}");
+        assertNull(read.getSymbol());
+        assertEquals(0, read.getTags().size());
+    }
+
+    @Test
+    public void skipsUnknownProperties() {
+        Position read = PositionJsonCodec.read(
+                " { \"extra\" : {\"a\":[1,2.5e3,true,false,null,\"x\\u0041\"]}, \"quantity\" : 7 , \"sym\\u0062ol\":\"ABC\" } ");
+        assertEquals(7, read.getQuantity());
+        assertEquals("ABC", read.getSymbol());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformed() {
+        PositionJsonCodec.read("{\"quantity\":7");
+    }
+
+    @Test
+    public void nestedBeans() {
+        Portfolio portfolio = new Portfolio().name("Main").updated(new Date(1330000000000L)).cash(-2.5).currency('$')
+                .largest(sample()).positions(asList(sample(), null, new Position().symbol("IBM")));
+        Portfolio read = PortfolioJsonCodec.read(PortfolioJsonCodec.toJson(portfolio));
+        assertEquals("Main", read.getName());
+        assertEquals(portfolio.getUpdated(), read.getUpdated());
+        assertEquals(-2.5, read.getCash(), 0);
+        assertEquals('$', read.getCurrency());
+        BinaryCodecTest.assertSame(sample(), read.getLargest());
+        assertEquals(3, read.getPositions().size());
+        BinaryCodecTest.assertSame(sample(), read.getPositions().get(0));
+        assertNull(read.getPositions().get(1));
+        assertEquals("IBM", read.getPositions().get(2).getSymbol());
+    }
+
+    @Test
+    public void agreesWithXmlCodec() throws Exception {
+        int count = 10000;
+        List<Position> positions = new ArrayList<Position>();
+        for (int i = 0; i < count; i++)
+            positions.add(sample().symbol("S" + i).quantity(i).tags(asList("core", "hedge")).fills(asList(100.5, 101.0)));
+
+        StringBuilder json = new StringBuilder();
+        PositionJsonCodec.writeAll(json, positions);
+        int n = 0;
+        for (Iterator<Position> it = PositionJsonCodec.iterate(json); it.hasNext(); n++)
+            assertEquals(n, it.next().getQuantity());
+        assertEquals(count, n);
+
+        StringWriter xml = new StringWriter();
+        XMLStreamWriter out = XMLOutputFactory.newInstance().createXMLStreamWriter(xml);
+        PositionXmlCodec.writeAll(out, "positions", positions);
+        out.close();
+        XMLStreamReader in = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml.toString()));
+        Iterator<Position> fromJson = PositionJsonCodec.iterate(json);
+        for (Iterator<Position> it = PositionXmlCodec.iterate(in); it.hasNext();)
+            BinaryCodecTest.assertSame(it.next(), fromJson.next());
+        assertFalse(fromJson.hasNext());
+    }
+}
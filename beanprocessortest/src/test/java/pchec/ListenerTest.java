@@ -0,0 +1,105 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeListenerProxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.TestJob;
+import ptest.TestJobBase;
+
+public class ListenerTest {
+
+    static class Recorder implements PropertyChangeListener {
+        final List<String> names = new ArrayList<String>();
+        
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            names.add(evt.getPropertyName());
+        }
+    }
+    
+    @Test
+    public void namedListeners() {
+        TestJob job = new TestJob();
+        Recorder all = new Recorder(), number = new Recorder(), running = new Recorder();
+        job.addPropertyChangeListener(all);
+        job.addPropertyChangeListener("number", number);
+        job.addPropertyChangeListener(TestJobBase.Properties.RUNNING, running);
+        
+        job.setNumber(1);
+        job.setRunning(true);
+        job.setTitle("t");
+        
+        assertEquals(3, all.names.size());
+        assertEquals(1, number.names.size());
+        assertEquals("running", running.names.get(0));
+        assertTrue(job.hasListeners("number"));
+        assertEquals(3, job.getPropertyChangeListeners().length);
+        assertEquals(1, job.getPropertyChangeListeners("running").length);
+    }
+    
+    @Test
+    public void unchangedValuesDoNotFire() {
+        TestJob job = new TestJob().title("same");
+        Recorder recorder = new Recorder();
+        job.addPropertyChangeListener(recorder);
+        
+        job.setNumber(0);
+        job.setRunning(false);
+        job.setTitle("same");
+        job.setNumber(Double.NaN);
+        job.setNumber(Double.NaN);
+        
+        assertEquals(1, recorder.names.size());
+    }
+    
+    @Test
+    public void removeListeners() {
+        TestJob job = new TestJob();
+        Recorder all = new Recorder(), number = new Recorder();
+        job.addPropertyChangeListener(all);
+        job.addPropertyChangeListener(new PropertyChangeListenerProxy("number", number));
+        
+        job.removePropertyChangeListener(all);
+        job.removePropertyChangeListener("number", number);
+        job.setNumber(3);
+        
+        assertEquals(0, all.names.size());
+        assertEquals(0, number.names.size());
+        assertFalse(job.hasListeners(null));
+        assertFalse(job.hasListeners("number"));
+        assertEquals(0, job.getPropertyChangeListeners().length);
+    }
+    
+    @Test
+    public void unknownPropertyNames() {
+        TestJob job = new TestJob();
+        Recorder custom = new Recorder();
+        job.addPropertyChangeListener("custom", custom);
+        
+        job.setNumber(2);
+        assertTrue(job.hasListeners("custom"));
+        assertFalse(job.hasListeners("number"));
+        assertEquals(1, job.getPropertyChangeListeners("custom").length);
+        assertEquals(0, custom.names.size());
+    }
+}
@@ -0,0 +1,114 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import ptest.TestJob;
+import ptest.TestJobBaseMXBean;
+
+public class MXBeanTest {
+
+    @Test
+    public void attributes() throws Exception {
+        TestJob job = new TestJob();
+        job.setTitle("nightly");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = job.registerMXBean();
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals("ptest", name.getDomain());
+            assertEquals("TestJob", name.getKeyProperty("type"));
+            assertEquals("nightly", server.getAttribute(name, "Title"));
+            assertEquals(Boolean.TRUE, server.getAttribute(name, "Perm"));
+
+            server.setAttribute(name, new Attribute("Number", 2.5));
+            assertEquals(2.5, job.getNumber(), 0);
+
+            // Left out with nomxbean.
+            assertFalse(hasAttribute(server, name, "Builder"));
+            assertFalse(hasAttribute(server, name, "Del"));
+        } finally {
+            job.unregisterMXBean();
+        }
+        assertFalse(server.isRegistered(name));
+        job.unregisterMXBean();
+    }
+
+    @Test
+    public void counters() throws Exception {
+        TestJob job = new TestJob();
+        final int[] events = new int[1];
+        job.addPropertyChangeListener("running", new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                events[0]++;
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            job.setRunning(i % 2 == 0);
+            job.isRunning();
+            job.isRunning();
+        }
+        job.setTitle("t");
+
+        TestJobBaseMXBean mx = job;
+        assertEquals(20, mx.getRunningReads());
+        assertEquals(10, mx.getRunningWrites());
+        assertEquals(events[0], mx.getRunningListenerCalls());
+        assertEquals(10, events[0]);
+        assertEquals(0, mx.getTitleReads());
+        assertEquals(1, mx.getTitleWrites());
+
+        mx.resetMXBeanCounters();
+        assertEquals(0, mx.getRunningReads());
+        assertEquals(0, mx.getRunningWrites());
+
+        ObjectName name = job.registerMXBean();
+        try {
+            job.setNumber(1);
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "NumberWrites"));
+        } finally {
+            job.unregisterMXBean();
+        }
+    }
+
+    @Test
+    public void countsEveryAccess() {
+        TestJob job = new TestJob();
+        int n = 10000;
+        for (int i = 0; i < n; i++) {
+            job.setNumber(i);
+            assertEquals(i, job.getNumber(), 0);
+        }
+        assertEquals(n, job.getNumberWrites());
+        assertEquals(n, job.getNumberReads());
+    }
+
+    private static boolean hasAttribute(MBeanServer server, ObjectName name, String attribute) throws Exception {
+        for (javax.management.MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes())
+            if (info.getName().equals(attribute))
+                return true;
+        return false;
+    }
+}
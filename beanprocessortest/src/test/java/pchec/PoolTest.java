@@ -0,0 +1,139 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.Session;
+import ptest.SessionPool;
+import ptest.TestJob;
+import ptest.Trade;
+import ptest.TradePool;
+
+public class PoolTest {
+
+    @Test
+    public void resetRestoresInitialValues() {
+        final int[] events = new int[1];
+        TestJob job = new TestJob().title("Nightly").running(true).started(new Date()).number(22.5)
+                .listOfStrings(asList("a", "b"));
+        job.getBuilder().append("text");
+        job.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                events[0]++;
+            }
+        });
+        
+        job.reset();
+        assertNull(job.getTitle());
+        assertFalse(job.isRunning());
+        assertNull(job.getStarted());
+        assertEquals(0, job.getNumber(), 0);
+        assertNull(job.getListOfStrings());
+        assertEquals(0, job.getBuilder().length());
+        assertTrue(job.isPerm());
+        assertEquals(0, events[0]);
+        
+        job.setTitle("again");
+        assertEquals(1, events[0]);
+    }
+
+    @Test
+    public void resetLeavesListsItDidNotCreate() {
+        TestJob job = new TestJob();
+        List<String> shared = new ArrayList<String>(asList("x", "y"));
+        job.setLabels(shared);
+        job.reset();
+        assertEquals(asList("x", "y"), shared);
+        assertNotSame(shared, job.getLabels());
+        assertTrue(job.getLabels().isEmpty());
+
+        job.setLabels(Collections.unmodifiableList(shared));
+        job.reset();
+        job.getLabels().add("z");
+        assertEquals(asList("z"), job.getLabels());
+    }
+
+    @Test
+    public void recyclesInstances() {
+        TradePool pool = new TradePool(2, 2);
+        Trade a = pool.acquire(), b = pool.acquire(), c = pool.acquire(), d = pool.acquire();
+        a.setSymbol("IBM");
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        pool.release(d);
+        assertEquals(2, pool.sharedSize());
+        
+        assertSame(b, pool.acquire());
+        assertSame(a, pool.acquire());
+        assertNull(a.getSymbol());
+        assertSame(c, pool.acquire());
+        assertNotSame(a, pool.acquire());
+    }
+
+    @Test
+    public void releaseForgetsListenersAndCounts() {
+        final int[] events = new int[1];
+        SessionPool pool = new SessionPool(1, 1);
+        Session session = pool.acquire();
+        session.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                events[0]++;
+            }
+        });
+        session.setUser("alice");
+        session.setRequests(session.getRequests() + 1);
+        assertEquals(1, events[0]);
+        assertEquals(1, session.getUserWrites());
+        assertTrue(session.isDirty());
+
+        pool.release(session);
+        Session next = pool.acquire();
+        assertSame(session, next);
+        next.setUser("bob");
+        assertEquals(1, events[0]);
+        assertEquals(1, next.getUserWrites());
+        assertEquals(0, next.getRequestsReads());
+        assertEquals(1L, next.dirtyMask());
+    }
+
+    /** Bytes allocated by the current thread while running r, where the JVM can tell us; otherwise -1. */
+    static long allocated(Runnable r) {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            r.run();
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        long id = Thread.currentThread().getId();
+        long before = hotspot.getThreadAllocatedBytes(id);
+        r.run();
+        return hotspot.getThreadAllocatedBytes(id) - before;
+    }
+}
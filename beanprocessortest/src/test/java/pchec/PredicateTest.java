@@ -49,6 +49,27 @@ public class PredicateTest {
         assertEquals(1, filter(asList(new TestJob(), new TestJob().running(true), new TestJob()), TestJob.IS_RUNNING).size());
     }
     
+    @Test
+    public void comparisonPredicates() {
+        List<TestJob> jobs = asList(new TestJob().number(1), new TestJob().number(2), new TestJob().number(3));
+        
+        assertEquals(1, filter(jobs, TestJob.NUMBER_GT(2)).size());
+        assertEquals(2, filter(jobs, TestJob.NUMBER_GE(2)).size());
+        assertEquals(1, filter(jobs, TestJob.NUMBER_LT(2)).size());
+        assertEquals(2, filter(jobs, TestJob.NUMBER_LE(2)).size());
+        assertEquals(1, filter(jobs, TestJob.NUMBER_EQ(3)).size());
+    }
+    
+    @Test
+    public void primitiveExtractors() {
+        List<TestJob> jobs = asList(new TestJob().number(1), new TestJob().number(2.5));
+        
+        double total = 0;
+        for (TestJob job: jobs)
+            total += TestJob.NUMBER_AS_DOUBLE.applyAsDouble(job);
+        assertEquals(3.5, total, 0);
+    }
+    
     @Test
     public void usePropertyChange() {
         final TestJob job = new TestJob();
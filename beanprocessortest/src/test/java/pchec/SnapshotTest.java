@@ -0,0 +1,164 @@
+/* BeanProcessor -- a JavaBean generator.
+ *
+ * Copyright 2012 Ross Judson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import ptest.Feed;
+import ptest.FeedSnapshot;
+
+public class SnapshotTest {
+
+    @Test
+    public void snapshot() {
+        Feed feed = new Feed();
+        feed.setStarted(5);
+        feed.setRunning(true);
+        feed.setSource("tcp");
+        List<String> hosts = new ArrayList<String>(Arrays.asList("a", "b"));
+        feed.setHosts(hosts);
+
+        FeedSnapshot s = feed.snapshot();
+        assertEquals(5, s.getStarted());
+        assertTrue(s.isRunning());
+        assertEquals("tcp", s.getSource());
+        assertEquals(Arrays.asList("a", "b"), s.getHosts());
+
+        hosts.add("c");
+        feed.setStarted(6);
+        assertEquals(2, s.getHosts().size());
+        assertEquals(5, s.getStarted());
+        try {
+            s.getHosts().add("c");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        assertEquals(feed.snapshot(), feed.snapshot());
+        assertEquals(feed.snapshot().hashCode(), feed.snapshot().hashCode());
+        assertFalse(s.equals(feed.snapshot()));
+    }
+
+    @Test
+    public void updateDefersEvents() {
+        final Feed feed = new Feed();
+        final List<FeedSnapshot> seen = new ArrayList<FeedSnapshot>();
+        feed.addPropertyChangeListener("running", new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                // Runs after the write lock is released, so taking a snapshot here can't deadlock.
+                seen.add(feed.snapshot());
+            }
+        });
+        feed.update(() -> {
+            feed.setRunning(true);
+            feed.setStarted(42);
+        });
+        assertEquals(1, seen.size());
+        assertTrue(seen.get(0).isRunning());
+        assertEquals(42, seen.get(0).getStarted());
+    }
+
+    @Test
+    public void snapshotInsideUpdate() {
+        final Feed feed = new Feed();
+        final List<FeedSnapshot> seen = new ArrayList<FeedSnapshot>();
+        feed.update(() -> {
+            feed.setStarted(7);
+            seen.add(feed.snapshot());
+            feed.setReceived(8);
+        });
+        assertEquals(7, seen.get(0).getStarted());
+        assertEquals(0, seen.get(0).getReceived());
+        assertEquals(8, feed.snapshot().getReceived());
+    }
+
+    @Test
+    public void consistentUnderWrites() throws Exception {
+        final Feed feed = new Feed();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread() {
+            public void run() {
+                for (long i = 1; !done.get(); i++) {
+                    final long n = i;
+                    feed.update(() -> {
+                        feed.setStarted(n);
+                        feed.setReceived(n);
+                        feed.setRunning((n & 1) == 0);
+                    });
+                }
+            }
+        };
+        writer.start();
+        try {
+            for (int i = 0; i < 100000; i++) {
+                FeedSnapshot s = feed.snapshot();
+                assertEquals(s.getStarted(), s.getReceived());
+                assertEquals(s.getStarted() != 0 && (s.getStarted() & 1) == 0, s.isRunning());
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void copyAndReset() {
+        Feed a = new Feed();
+        a.setStarted(7);
+        a.setSource("udp");
+        Feed b = new Feed();
+        b.copyFrom(a);
+        assertEquals(a.snapshot(), b.snapshot());
+        b.reset();
+        assertEquals(new Feed().snapshot(), b.snapshot());
+    }
+
+    @Test
+    public void listsCantChangeInPlace() {
+        Feed feed = new Feed();
+        List<String> hosts = new ArrayList<String>(Arrays.asList("a", "b"));
+        feed.setHosts(hosts);
+        hosts.add("c");
+        assertEquals(Arrays.asList("a", "b"), feed.getHosts());
+        try {
+            feed.getHosts().add("c");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(Arrays.asList("a", "b"), feed.snapshot().getHosts());
+    }
+
+    @Test
+    public void copyReplacesLists() {
+        Feed a = new Feed();
+        a.setHosts(Arrays.asList("a", "b"));
+        Feed b = new Feed();
+        b.copyFrom(a);
+        List<String> copied = b.getHosts();
+        a.setHosts(Arrays.asList("c"));
+        b.copyFrom(a);
+        assertEquals(Arrays.asList("a", "b"), copied);
+        assertEquals(Arrays.asList("c"), b.snapshot().getHosts());
+    }
+}
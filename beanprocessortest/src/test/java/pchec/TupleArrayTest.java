@@ -0,0 +1,105 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ptest.AllPrims;
+import ptest.AllPrimsArray;
+import ptest.DoubleStringArray;
+
+public class TupleArrayTest {
+
+    static AllPrims row(int i) {
+        return new AllPrims((byte) i, (short) (i * 3), i, i * 1000L, (char) ('a' + i % 26), i * 0.25f, i / 8.0);
+    }
+
+    @Test
+    public void appendGetSet() {
+        AllPrimsArray rows = new AllPrimsArray(1);
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, rows.append(row(i)));
+        assertEquals(1000, rows.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(row(i), rows.get(i));
+        rows.setField3(10, -1);
+        assertEquals(-1, rows.getField3(10));
+        assertEquals(-1, rows.get(10)._3);
+        rows.set(11, row(5));
+        assertEquals(row(5), rows.get(11));
+        rows.clear();
+        assertEquals(0, rows.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowsPastSizeAreRejected() {
+        AllPrimsArray rows = new AllPrimsArray();
+        rows.append(row(1));
+        rows.get(1);
+    }
+
+    @Test
+    public void cursor() {
+        DoubleStringArray rows = new DoubleStringArray();
+        rows.append(1.5, "a");
+        rows.append(2.5, null);
+        DoubleStringArray.Cursor cursor = rows.cursor();
+        assertTrue(cursor.next());
+        assertEquals("a", cursor.getField2());
+        cursor.setField1(3.5);
+        assertTrue(cursor.next());
+        assertNull(cursor.getField2());
+        assertFalse(cursor.next());
+        assertEquals(3.5, rows.getField1(0), 0);
+        assertEquals(6.0, rows.field1Stream().sum(), 0);
+    }
+
+    @Test
+    public void columnStreams() {
+        AllPrimsArray rows = new AllPrimsArray();
+        for (int i = 0; i < 100; i++)
+            rows.append(row(i));
+        assertEquals(4950, rows.field3Stream().sum());
+        assertEquals(4950000L, rows.field4Stream().sum());
+        assertEquals(4950 * 3, rows.field2Stream().sum());
+        assertEquals(4950 * 0.25, rows.field6Stream().sum(), 1e-9);
+        assertEquals(99, rows.field1Stream().max().getAsInt());
+    }
+
+    @Test
+    public void columnMatchesObjects() {
+        int n = 100000;
+        List<AllPrims> objects = new ArrayList<AllPrims>(n);
+        AllPrimsArray rows = new AllPrimsArray(n);
+        for (int i = 0; i < n; i++) {
+            AllPrims r = row(i);
+            objects.add(r);
+            rows.append(r);
+        }
+        double a = 0;
+        for (AllPrims r : objects)
+            a += r._7;
+        double b = 0;
+        double[] column = rows.field7Column();
+        for (int i = 0; i < rows.size(); i++)
+            b += column[i];
+        assertEquals(a, b, 0);
+    }
+}
@@ -0,0 +1,141 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import ptest.AllPrims;
+import ptest.AllPrimsFile;
+import ptest.IntPairFile;
+
+public class TupleFileTest {
+
+    static AllPrims row(int i) {
+        return new AllPrims((byte) i, (short) (i * 3), i, i * 1000L, (char) ('a' + i % 26), i * 0.25f, i / 8.0);
+    }
+
+    static File temp() throws IOException {
+        File file = File.createTempFile("tuples", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void layoutIsAligned() {
+        // long, double, int, float, short, char, byte: 29 bytes, padded to 32.
+        assertEquals(32, AllPrimsFile.RECORD);
+        assertEquals(0, AllPrimsFile.FIELD4_OFFSET);
+        assertEquals(16, AllPrimsFile.FIELD3_OFFSET);
+        assertEquals(28, AllPrimsFile.FIELD1_OFFSET);
+        assertEquals(8, IntPairFile.RECORD);
+    }
+
+    @Test
+    public void writeAndMap() throws Exception {
+        File file = temp();
+        AllPrimsFile.Writer writer = AllPrimsFile.create(file);
+        for (int i = 0; i < 10000; i++)
+            writer.append(row(i));
+        writer.close();
+        assertEquals(AllPrimsFile.HEADER + 10000L * AllPrimsFile.RECORD, file.length());
+
+        AllPrimsFile.Reader reader = AllPrimsFile.open(file);
+        try {
+            assertEquals(10000, reader.count());
+            AllPrimsFile.Reader.View view = reader.view();
+            for (int i = 0; i < 10000; i++) {
+                view.at(i);
+                assertEquals(i, view.getField3());
+                assertEquals(row(i), view.get());
+            }
+            assertEquals(row(1234), reader.get(1234));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void appendKeepsExistingRecords() throws Exception {
+        File file = temp();
+        AllPrimsFile.Writer writer = AllPrimsFile.create(file);
+        writer.append(row(1));
+        writer.close();
+        // A torn record at the end is dropped.
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() + 5);
+        raw.close();
+        writer = AllPrimsFile.append(file);
+        assertEquals(1, writer.count());
+        writer.append(row(2));
+        writer.close();
+        AllPrimsFile.Reader reader = AllPrimsFile.open(file);
+        assertEquals(2, reader.count());
+        assertEquals(row(1), reader.get(0));
+        assertEquals(row(2), reader.get(1));
+        reader.close();
+    }
+
+    @Test
+    public void rejectsOtherSchemas() throws Exception {
+        File file = temp();
+        IntPairFile.create(file).close();
+        try {
+            AllPrimsFile.open(file);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void scans() throws Exception {
+        File file = temp();
+        int n = 1000000;
+        AllPrimsFile.Writer writer = AllPrimsFile.create(file);
+        for (int i = 0; i < n; i++)
+            writer.append(row(i));
+        writer.close();
+
+        AllPrimsFile.Reader reader = AllPrimsFile.open(file);
+        final long[] sum = new long[1];
+        reader.scan(new AllPrimsFile.Visitor() {
+            public void visit(AllPrimsFile.Reader.View record) {
+                sum[0] += record.getField3();
+            }
+        });
+        long expected = (long) n * (n - 1) / 2;
+        assertEquals(expected, sum[0]);
+
+        final AtomicLong total = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            reader.parallelScan(0, reader.count(), 8, executor, new AllPrimsFile.Visitor() {
+                public void visit(AllPrimsFile.Reader.View record) {
+                    total.addAndGet(record.getField3());
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(expected, total.get());
+        reader.close();
+    }
+}
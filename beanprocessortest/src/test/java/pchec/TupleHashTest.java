@@ -0,0 +1,96 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ptest.CachedIntPair;
+import ptest.IntPair;
+import ptest.MixedIntPair;
+
+public class TupleHashTest {
+
+    static final int SIDE = 256;
+
+    static List<Object> grid(int kind) {
+        List<Object> keys = new ArrayList<Object>(SIDE * SIDE);
+        for (int a = 0; a < SIDE; a++)
+            for (int b = 0; b < SIDE; b++)
+                keys.add(kind == 0 ? new IntPair(a, b) : kind == 1 ? new MixedIntPair(a, b) : new CachedIntPair(a, b));
+        return keys;
+    }
+
+    static int distinctHashes(List<Object> keys) {
+        Set<Integer> hashes = new HashSet<Integer>();
+        for (Object key : keys)
+            hashes.add(key.hashCode());
+        return hashes.size();
+    }
+
+    /** Keys landing in an already occupied bucket of a HashMap-sized table. */
+    static int bucketCollisions(List<Object> keys) {
+        int buckets = Integer.highestOneBit(keys.size() * 4 / 3) * 2;
+        boolean[] used = new boolean[buckets];
+        int collisions = 0;
+        for (Object key : keys) {
+            int h = key.hashCode();
+            int slot = (h ^ (h >>> 16)) & (buckets - 1);
+            if (used[slot])
+                collisions++;
+            used[slot] = true;
+        }
+        return collisions;
+    }
+
+    @Test
+    public void equalTuplesHashEqually() {
+        assertEquals(new MixedIntPair(3, 4), new MixedIntPair(3, 4));
+        assertEquals(new MixedIntPair(3, 4).hashCode(), new MixedIntPair(3, 4).hashCode());
+        assertEquals(new CachedIntPair(3, 4).hashCode(), new MixedIntPair(3, 4).hashCode());
+        assertTrue(new MixedIntPair(3, 4).hashCode() != new MixedIntPair(4, 3).hashCode());
+        // The classic strategy is unchanged.
+        assertEquals(31 * (31 + 3) + 4, new IntPair(3, 4).hashCode());
+    }
+
+    @Test
+    public void mixedHashSpreadsSmallGrid() {
+        List<Object> classic = grid(0), mixed = grid(1);
+        int classicDistinct = distinctHashes(classic), mixedDistinct = distinctHashes(mixed);
+        int classicCollisions = bucketCollisions(classic), mixedCollisions = bucketCollisions(mixed);
+        assertTrue(mixedDistinct > classic.size() * 99 / 100);
+        assertTrue(mixedCollisions < classicCollisions);
+    }
+
+    @Test
+    public void lookupsFindEveryKey() {
+        for (int kind = 0; kind < 3; kind++) {
+            List<Object> keys = grid(kind);
+            Map<Object, Integer> map = new HashMap<Object, Integer>();
+            for (int i = 0; i < keys.size(); i++)
+                map.put(keys.get(i), i);
+            long sum = 0;
+            for (Object key : keys)
+                sum += map.get(key);
+            assertEquals((long) keys.size() * (keys.size() - 1) / 2, sum);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ptest.AllPrims;
+import ptest.AllPrimsMap;
+import ptest.DoubleString;
+import ptest.DoubleStringMap;
+import ptest.DoubleStringSet;
+
+public class TupleMapTest {
+
+    static AllPrims key(int i) {
+        return new AllPrims((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0);
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42);
+        Map<AllPrims, Integer> expected = new HashMap<AllPrims, Integer>();
+        AllPrimsMap<Integer> map = new AllPrimsMap<Integer>();
+        for (int step = 0; step < 200000; step++) {
+            int i = random.nextInt(5000);
+            AllPrims key = key(i);
+            switch (random.nextInt(3)) {
+            case 0:
+                assertEquals(expected.put(key, step), map.put(key._1, key._2, key._3, key._4, key._5, key._6, key._7, step));
+                break;
+            case 1:
+                assertEquals(expected.remove(key), map.remove(key));
+                break;
+            default:
+                assertEquals(expected.get(key), map.get(key._1, key._2, key._3, key._4, key._5, key._6, key._7));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        int visited = 0;
+        for (AllPrimsMap<Integer>.Cursor cursor = map.cursor(); cursor.next(); visited++)
+            assertEquals(expected.get(cursor.key()), cursor.value());
+        assertEquals(expected.size(), visited);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(key(1)));
+    }
+
+    @Test
+    public void referenceComponents() {
+        DoubleStringMap<String> map = new DoubleStringMap<String>(2);
+        map.put(1.0, "a", "first");
+        map.put(1.0, null, "null key");
+        map.put(Double.NaN, "a", "nan");
+        assertEquals("first", map.get(1.0, "a"));
+        assertEquals("null key", map.get(1.0, null));
+        assertEquals("nan", map.get(Double.NaN, "a"));
+        assertNull(map.get(1.0, "b"));
+        assertEquals("first", map.remove(new DoubleString(1.0, "a")));
+        assertEquals(2, map.size());
+
+        DoubleStringSet set = new DoubleStringSet();
+        assertTrue(set.add(2.5, "x"));
+        assertFalse(set.add(new DoubleString(2.5, "x")));
+        assertTrue(set.contains(2.5, "x"));
+        assertTrue(set.remove(2.5, "x"));
+        assertFalse(set.contains(2.5, "x"));
+    }
+
+    @Test
+    public void agreesWithHashSet() {
+        int count = 100000;
+        AllPrims[] keys = new AllPrims[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = key(i);
+
+        Set<AllPrims> hashed = new HashSet<AllPrims>();
+        for (AllPrims key : keys)
+            hashed.add(key);
+        int found = 0;
+        for (int i = 0; i < count; i++)
+            if (hashed.contains(new AllPrims((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0)))
+                found++;
+
+        AllPrimsMap<Boolean> map = new AllPrimsMap<Boolean>();
+        for (AllPrims key : keys)
+            map.put(key, Boolean.TRUE);
+        int mapFound = 0;
+        for (int i = 0; i < count; i++)
+            if (map.containsKey((byte) i, (short) (i >> 3), i % 97, i * 31L, (char) (i & 7), i * 0.5f, i / 3.0))
+                mapFound++;
+
+        assertEquals(count, found);
+        assertEquals(count, mapFound);
+    }
+}
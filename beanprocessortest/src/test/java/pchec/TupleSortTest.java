@@ -0,0 +1,103 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ptest.AllPrims;
+import ptest.DoubleString;
+
+public class TupleSortTest {
+
+    static final float[] FLOATS = { Float.NaN, -0.0f, 0.0f, Float.NEGATIVE_INFINITY, 1.5f, -1.5f };
+    static final String[] NAMES = { null, "IBM", "AAPL", "MSFT", "" };
+
+    static AllPrims[] prims(int n, long seed) {
+        Random random = new Random(seed);
+        AllPrims[] a = new AllPrims[n];
+        for (int i = 0; i < n; i++)
+            a[i] = new AllPrims((byte) random.nextInt(4), (short) (random.nextInt(8) - 4), random.nextInt(), random.nextLong(),
+                    (char) random.nextInt(3), FLOATS[random.nextInt(FLOATS.length)], random.nextGaussian());
+        return a;
+    }
+
+    static DoubleString[] doubleStrings(int n, long seed) {
+        Random random = new Random(seed);
+        DoubleString[] a = new DoubleString[n];
+        for (int i = 0; i < n; i++)
+            a[i] = new DoubleString(random.nextInt(50) - 25.5, NAMES[random.nextInt(NAMES.length)]);
+        return a;
+    }
+
+    @Test
+    public void radixSortMatchesComparisonSort() {
+        for (int n : new int[] { 0, 1, 100, 5000 }) {
+            AllPrims[] expected = prims(n, n), actual = expected.clone();
+            Arrays.sort(expected);
+            AllPrims.sort(actual);
+            assertSameOrder(expected, actual);
+        }
+    }
+
+    @Test
+    public void referenceComponentsFallBackToComparison() {
+        DoubleString[] expected = doubleStrings(5000, 3), actual = expected.clone();
+        Arrays.sort(expected);
+        DoubleString.sort(actual);
+        assertSameOrder(expected, actual);
+    }
+
+    /** Both sorts are stable, so they must leave the very same instances in the same places. NaN
+     * components make equals unusable here. */
+    static void assertSameOrder(Object[] expected, Object[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertSame(expected[i], actual[i]);
+    }
+
+    @Test
+    public void sortRange() {
+        AllPrims[] actual = prims(2000, 7), expected = actual.clone();
+        AllPrims.sort(actual, 500, 1500);
+        Arrays.sort(expected, 500, 1500);
+        assertSameOrder(expected, actual);
+    }
+
+    @Test
+    public void comparators() {
+        DoubleString[] a = doubleStrings(1000, 11);
+        Arrays.sort(a, DoubleString.BY_FIELD2);
+        for (int i = 1; i < a.length; i++) {
+            String p = a[i - 1]._2, q = a[i]._2;
+            assertTrue(p == null || (q != null && p.compareTo(q) <= 0));
+            if (p == null ? q == null : p.equals(q))
+                assertTrue(a[i - 1]._1 <= a[i]._1);
+        }
+    }
+
+    @Test
+    public void parallelSort() {
+        AllPrims[] a = prims(500000, 13), expected = a.clone(), radix = a.clone();
+        Arrays.sort(expected);
+        AllPrims.sort(radix);
+        AllPrims.parallelSort(a);
+        assertSameOrder(expected, radix);
+        assertSameOrder(expected, a);
+    }
+}
@@ -0,0 +1,150 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.junit.Test;
+
+import ptest.Position;
+import ptest.PositionXmlCodec;
+import ptest.TestJob;
+import ptest.TestJobXmlCodec;
+
+public class XmlCodecTest {
+
+    static final XMLOutputFactory OUTPUT = XMLOutputFactory.newInstance();
+    static final XMLInputFactory INPUT = XMLInputFactory.newInstance();
+
+    static Position sample() {
+        return new Position().account("ACC-1").symbol("A&B <\u00e9>").quantity(1500).averagePrice(101.25)
+                .open(true).opened(new Date(1330000000123L)).tags(asList("core", "hedge")).fills(asList(100.5, Double.POSITIVE_INFINITY));
+    }
+
+    static String write(Position position) throws Exception {
+        StringWriter text = new StringWriter();
+        XMLStreamWriter out = OUTPUT.createXMLStreamWriter(text);
+        PositionXmlCodec.write(out, position);
+        out.close();
+        return text.toString();
+    }
+
+    static XMLStreamReader reader(String xml) throws Exception {
+        XMLStreamReader in = INPUT.createXMLStreamReader(new StringReader(xml));
+        in.nextTag();
+        return in;
+    }
+
+    @Test
+    public void jaxbReadsCodecOutput() throws Exception {
+        Unmarshaller unmarshaller = JAXBContext.newInstance(Position.class).createUnmarshaller();
+        Position read = (Position) unmarshaller.unmarshal(new StringReader(write(sample())));
+        BinaryCodecTest.assertSame(sample(), read);
+    }
+
+    @Test
+    public void codecReadsJaxbOutput() throws Exception {
+        StringWriter xml = new StringWriter();
+        JAXBContext.newInstance(Position.class).createMarshaller().marshal(sample(), xml);
+        BinaryCodecTest.assertSame(sample(), PositionXmlCodec.read(reader(xml.toString())));
+
+        TestJob job = new TestJob().title("Nightly").running(true).started(new Date(1330000000000L)).number(22.5)
+                .listOfStrings(asList("a", "b"));
+        xml = new StringWriter();
+        JAXBContext.newInstance(TestJob.class).createMarshaller().marshal(job, xml);
+        TestJob read = TestJobXmlCodec.read(reader(xml.toString()));
+        assertEquals("Nightly", read.getTitle());
+        assertTrue(read.isRunning());
+        assertEquals(job.getStarted(), read.getStarted());
+        assertEquals(0, read.getNumber(), 0);
+        assertEquals(job.getListOfStrings(), read.getListOfStrings());
+    }
+
+    @Test
+    public void floatsMatchJaxb() throws Exception {
+        Position position = new Position().weight(0.1f);
+        StringWriter jaxb = new StringWriter();
+        JAXBContext.newInstance(Position.class).createMarshaller().marshal(position, jaxb);
+        assertTrue(jaxb.toString().contains("weight=\"0.1\""));
+        assertTrue(write(position).contains("weight=\"0.1\""));
+        assertEquals(0.1f, PositionXmlCodec.read(reader(write(position))).getWeight(), 0);
+    }
+
+    @Test
+    public void omitsNulls() throws Exception {
+        String xml = write(new Position());
+        assertFalse(xml.contains("symbol"));
+        assertFalse(xml.contains("opened"));
+        Position read = PositionXmlCodec.read(reader(xml));
+        assertNull(read.getSymbol());
+        assertNull(read.getTags());
+    }
+
+    @Test
+    public void skipsUnknownElements() throws Exception {
+        Position read = PositionXmlCodec.read(reader(
+                "<position quantity='7' extra='x'><comment><b>ignored</b></comment><tags>one</tags></position>"));
+        assertEquals(7, read.getQuantity());
+        assertEquals(asList("one"), read.getTags());
+    }
+
+    @Test
+    public void streamsCollections() throws Exception {
+        int count = 10000;
+        List<Position> positions = new ArrayList<Position>();
+        for (int i = 0; i < count; i++)
+            positions.add(sample().quantity(i));
+
+        StringWriter text = new StringWriter();
+        XMLStreamWriter out = OUTPUT.createXMLStreamWriter(text);
+        out.writeStartDocument();
+        PositionXmlCodec.writeAll(out, "positions", positions);
+        out.writeEndDocument();
+        out.close();
+
+        Iterator<Position> it = PositionXmlCodec.iterate(INPUT.createXMLStreamReader(new StringReader(text.toString())));
+        int n = 0;
+        while (it.hasNext()) {
+            Position position = it.next();
+            assertEquals(n++, position.getQuantity());
+            assertEquals(sample().getTags(), position.getTags());
+        }
+        assertEquals(count, n);
+
+        Unmarshaller unmarshaller = JAXBContext.newInstance(Position.class).createUnmarshaller();
+        XMLStreamReader in = INPUT.createXMLStreamReader(new StringReader(text.toString()));
+        in.nextTag();
+        in.nextTag();
+        n = 0;
+        while (in.getEventType() == XMLStreamReader.START_ELEMENT) // unmarshal leaves the reader on the next sibling
+            assertEquals(n++, unmarshaller.unmarshal(in, Position.class).getValue().getQuantity());
+        assertEquals(count, n);
+    }
+}
@@ -0,0 +1,81 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.soletta.beanprocessor.SBean;
+
+/** Runs the processor twice over the same bean and output directories, as an incremental build does. Runs on
+ * JDK 11 and later only; see the jdk11 profile. */
+public class FingerprintTest {
+
+    static final String BEAN = "package p;\n"
+            + "@com.soletta.beanprocessor.SBean(properties = @com.soletta.beanprocessor.SProperty(name = \"level\", type = int.class), jfr = true)\n"
+            + "public class Probe extends ProbeBase {}\n";
+
+    @Test
+    public void regeneratesWhenTheReleaseChanges() throws Exception {
+        Path dir = Files.createTempDirectory("fingerprint");
+        Path source = dir.resolve("Probe.java"), classes = dir.resolve("classes"), generated = dir.resolve("generated");
+        Files.write(source, BEAN.getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(classes);
+        Files.createDirectories(generated);
+        Path base = generated.resolve("p").resolve("ProbeBase.java");
+
+        compile("8", source, classes, generated);
+        assertFalse(new String(Files.readAllBytes(base), StandardCharsets.UTF_8).contains("jdk.jfr"));
+
+        String output = compile("11", source, classes, generated);
+        assertFalse(output, output.contains("Skipped"));
+        assertTrue(new String(Files.readAllBytes(base), StandardCharsets.UTF_8).contains("jdk.jfr.Event"));
+
+        // The same release again leaves the source alone.
+        output = compile("11", source, classes, generated);
+        assertTrue(output, output.contains("Skipped 1 generated sources"));
+    }
+
+    /** Compiles source against the previous build's classes, returning the messages javac printed. */
+    private static String compile(String release, Path source, Path classes, Path generated) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        String processor = location(SBean.class), generatedAnnotation = location(javax.annotation.Generated.class);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        boolean ok = javac.getTask(null, null, diagnostics, Arrays.asList("--release", release, "-Xlint:-options",
+                "-cp", String.join(File.pathSeparator, classes.toString(), processor, generatedAnnotation), "-processorpath", processor,
+                "-d", classes.toString(), "-s", generated.toString()), null,
+                javac.getStandardFileManager(null, null, StandardCharsets.UTF_8).getJavaFileObjects(source.toFile())).call();
+        StringBuilder messages = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+            messages.append(d.getKind()).append(": ").append(d.getMessage(null)).append('\n');
+        assertTrue(messages.toString(), ok);
+        return messages.toString();
+    }
+
+    private static String location(Class<?> c) {
+        return new File(c.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+    }
+}
@@ -0,0 +1,79 @@
+/* BeanProcessor -- a JavaBean generator.
+ * 
+ * Copyright 2012 Ross Judson
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in 
+ * compliance with the License. You may obtain a copy of the license at http://www.apache.org/licenses/LICENSE-2.0.
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. 
+ */
+package pchec;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import ptest.Probe;
+
+/** Runs on JDK 11 and later only; see the jdk11 profile. */
+public class JfrTest {
+
+    static final String SET = "ptest.ProbeBase.PropertySet", DISPATCH = "ptest.ProbeBase.PropertyChangeDispatch";
+
+    @Test
+    public void recordsSettersAndDispatch() throws Exception {
+        Probe probe = new Probe();
+        probe.addPropertyChangeListener(new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+            }
+        });
+        probe.addPropertyChangeListener("level", new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+            }
+        });
+
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("probe", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(SET).withThreshold(Duration.ZERO);
+            recording.enable(DISPATCH).withThreshold(Duration.ZERO);
+            recording.start();
+            probe.setLevel(3);
+            probe.setLabel("untraced");
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+
+        List<String> sets = new ArrayList<String>(), dispatches = new ArrayList<String>();
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals(SET)) {
+                sets.add(event.getString("property"));
+                assertEquals(Probe.class.getName(), event.getClass("beanType").getName());
+            } else if (name.equals(DISPATCH)) {
+                dispatches.add(event.getString("property"));
+                assertEquals(2, event.getInt("listeners"));
+            }
+        }
+        assertEquals(asList("level"), sets);
+        assertEquals(asList("level"), dispatches);
+    }
+}